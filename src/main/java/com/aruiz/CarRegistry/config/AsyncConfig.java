@@ -1,26 +1,40 @@
 package com.aruiz.CarRegistry.config;
 
+import com.aruiz.CarRegistry.service.concurrent.AdmissionControlledExecutor;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
 import org.springframework.scheduling.annotation.EnableAsync;
+import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 
-import java.util.concurrent.Executor;
-
+/**
+ * Habilita los métodos @Async y configura el ejecutor en el que se ejecutan.
+ * Los endpoints masivos consultan el ejecutor antes de encolar trabajo y responden 429 si está saturado.
+ * Los trabajos de importación de coches tienen su propio ejecutor.
+ * También habilita los métodos @Scheduled, como la limpieza de los trabajos de importación terminados.
+ */
+@Configuration
 @EnableAsync
+@EnableScheduling
 public class AsyncConfig {
 
     @Bean(name = "taskExecutor")
-    public Executor taskExecutor() {
-        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+    public AdmissionControlledExecutor taskExecutor(@Value("${async.pool-size:8}") int poolSize,
+                                                    @Value("${async.queue-capacity:200}") int queueCapacity,
+                                                    @Value("${async.admission.max-queue-depth:100}") int maxQueueDepth,
+                                                    @Value("${async.admission.max-wait-ms:10000}") long maxWaitMillis) {
+        AdmissionControlledExecutor executor = new AdmissionControlledExecutor(maxQueueDepth, maxWaitMillis);
 
-        // Numero de hilos que se podran ejecutar
-        executor.setCorePoolSize(10);
+        // Numero de hilos que se podran ejecutar; el pool solo crece por encima del mínimo con la cola llena,
+        // por lo que se usa el mismo valor para ambos
+        executor.setCorePoolSize(poolSize);
 
         // Maximo de hilos que se ejecutan a la vez
-        executor.setMaxPoolSize(5);
+        executor.setMaxPoolSize(poolSize);
 
-        // Capacidad que tendra la cola
-        executor.setQueueCapacity(50);
+        // Capacidad que tendra la cola; el control de admisión rechaza las peticiones antes de llenarla
+        executor.setQueueCapacity(queueCapacity);
 
         // Nombre del hilo
         executor.setThreadNamePrefix("ThreadCarRegistry-");
@@ -31,4 +45,21 @@ public class AsyncConfig {
         return executor;
     }
 
+    /**
+     * Ejecutor de los trabajos de importación de coches. Las importaciones son largas, por lo que tienen
+     * sus propios hilos y no ocupan los del ejecutor de las tareas asíncronas.
+     */
+    @Bean(name = "importJobExecutor")
+    public ThreadPoolTaskExecutor importJobExecutor(@Value("${car.import.jobs.concurrency:2}") int concurrency,
+                                                    @Value("${car.import.jobs.queue-capacity:20}") int queueCapacity) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(concurrency);
+        executor.setMaxPoolSize(concurrency);
+        // Con la cola llena se rechazan los trabajos nuevos
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("CarImportJob-");
+        executor.initialize();
+        return executor;
+    }
+
 }
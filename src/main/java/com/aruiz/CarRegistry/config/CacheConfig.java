@@ -0,0 +1,17 @@
+package com.aruiz.CarRegistry.config;
+
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Habilita la caché en memoria de la aplicación.
+ * El tamaño máximo y la expiración de las entradas se configuran con spring.cache.caffeine.spec.
+ */
+@Configuration
+@EnableCaching
+public class CacheConfig {
+
+    // Caché de coches por ID utilizada por CarServiceImpl.findById
+    public static final String CARS_CACHE = "cars";
+
+}
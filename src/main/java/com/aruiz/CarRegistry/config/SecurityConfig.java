@@ -97,6 +97,8 @@ public class SecurityConfig {
                         .requestMatchers(HttpMethod.POST, "/api/**").permitAll()
                         // Permite el acceso sin autenticación a las solicitudes PUT en la ruta "/api/**".
                         .requestMatchers(HttpMethod.PUT, "/api/**").permitAll()
+                        // Permite el acceso sin autenticación a las solicitudes PATCH en la ruta "/api/**".
+                        .requestMatchers(HttpMethod.PATCH, "/api/**").permitAll()
                         // Permite el acceso sin autenticación a las solicitudes DELETE en la ruta "/api/**".
                         .requestMatchers(HttpMethod.DELETE, "/api/**").permitAll()
                         // Requiere autenticación para cualquier otra solicitud
@@ -3,16 +3,22 @@ package com.aruiz.CarRegistry.controller;
 import com.aruiz.CarRegistry.controller.dto.BrandRequest;
 import com.aruiz.CarRegistry.controller.mapper.BrandMapper;
 import com.aruiz.CarRegistry.service.BrandService;
+import com.aruiz.CarRegistry.service.concurrent.AdmissionControlledExecutor;
+import com.aruiz.CarRegistry.service.impl.IdempotencyService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.server.ResponseStatusException;
 
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 /**
  * Controlador que gestiona las operaciones relacionadas con las marcas de automóviles.
@@ -28,65 +34,102 @@ public class BrandController {
     @Autowired
     private BrandMapper brandMapper;
 
+    @Autowired
+    private IdempotencyService idempotencyService;
+
+    @Autowired
+    private AdmissionControlledExecutor taskExecutor;
+
     /**
      * Endpoint para agregar una nueva marca.
+     * Si se envía la cabecera Idempotency-Key, una petición repetida con la misma clave
+     * devuelve la respuesta original sin volver a guardar la marca.
      *
-     * @param brandRequest Objeto de solicitud que representa la marca a agregar.
+     * @param brandRequest   Objeto de solicitud que representa la marca a agregar.
+     * @param idempotencyKey Clave de idempotencia de la petición (opcional).
      * @return ResponseEntity con el objeto BrandRequest agregado en caso de éxito.
      */
     @PostMapping("/addBrand")
     @PreAuthorize("hasRole('VENDOR')")
-    public ResponseEntity<?> addBrand(@RequestBody BrandRequest brandRequest) {
-        try {
-            log.info("successfully created brand");
-            // Guarda la marca utilizando el servicio
-            // Convirtiendo a model
-            brandService.save(brandMapper.toBrandModel(brandRequest));
-            System.out.println(brandRequest);
-            return ResponseEntity.ok().body(brandRequest);
-        } catch (Exception e) {
-            log.error("Server Error -> " + e);
-            return ResponseEntity.internalServerError().build();
-        }
+    public ResponseEntity<?> addBrand(@RequestBody BrandRequest brandRequest,
+                                      @RequestHeader(value = IdempotencyService.HEADER, required = false) String idempotencyKey) throws Exception {
+        return idempotencyService.execute("addBrand", idempotencyKey, brandRequest, () -> {
+            try {
+                log.info("successfully created brand");
+                // Guarda la marca utilizando el servicio
+                // Convirtiendo a model
+                brandService.save(brandMapper.toBrandModel(brandRequest));
+                return ResponseEntity.ok().body(brandRequest);
+            } catch (Exception e) {
+                log.error("Server Error -> " + e);
+                return ResponseEntity.internalServerError().build();
+            }
+        });
 
     }
 
     /**
      * Endpoint para agregar una nueva lista de marcas.
+     * Si se envía la cabecera Idempotency-Key, una petición repetida con la misma clave
+     * devuelve la respuesta original sin volver a insertar las marcas.
+     * Si la cola de tareas asíncronas está saturada se responde 429 con la cabecera Retry-After.
      *
      * @param brandRequestList Objeto de solicitud que representa la lista de marcas a agregar.
+     * @param idempotencyKey   Clave de idempotencia de la petición (opcional).
      * @return
      */
     @PostMapping("/addBrands")
     @PreAuthorize("hasRole('VENDOR')")
-    public CompletableFuture<?> addBrands(@RequestBody List<BrandRequest> brandRequestList) throws Exception {
-        // Llama al método saveAll() del servicio de marcas para guardar la lista de marcas
-        return brandService.saveAll(brandRequestList)
-                // Utiliza thenApply() para transformar el resultado del CompletableFuture
-                .thenApply(brands -> {
-                    // Devuelve un ResponseEntity con estado 200 (OK) si la operación de guardado es exitosa
-                    return ResponseEntity.ok().body(brands);
-                })
-                // Maneja cualquier excepción que ocurra durante el procesamiento
-                .exceptionally(ex -> {
-                    // Lanza una nueva RuntimeException con un mensaje descriptivo y estado 500 (Internal Server Error)
-                    throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Error saving brands", ex);
-                });
+    public CompletableFuture<?> addBrands(@RequestBody List<BrandRequest> brandRequestList,
+                                          @RequestHeader(value = IdempotencyService.HEADER, required = false) String idempotencyKey) throws Exception {
+        return idempotencyService.executeAsync("addBrands", idempotencyKey, brandRequestList, () -> {
+            // Rechaza la petición con 429 si la cola de tareas asíncronas está saturada; una repetición
+            // con una clave ya usada recibe la respuesta guardada sin pasar por aquí
+            taskExecutor.admit();
+
+            // Llama al método saveAll() del servicio de marcas para guardar la lista de marcas
+            return brandService.saveAll(brandRequestList)
+                    // Utiliza thenApply() para transformar el resultado del CompletableFuture
+                    .<ResponseEntity<?>>thenApply(brands -> {
+                        // Devuelve un ResponseEntity con estado 200 (OK) si la operación de guardado es exitosa
+                        return ResponseEntity.ok().body(brands);
+                    })
+                    // Maneja cualquier excepción que ocurra durante el procesamiento
+                    .exceptionally(ex -> {
+                        // Lanza una nueva RuntimeException con un mensaje descriptivo y estado 500 (Internal Server Error)
+                        throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Error saving brands", ex);
+                    });
+        });
 
 
     }
 
     /**
      * Endpoint para obtener una marca por su ID.
+     * La respuesta incluye un ETag con la versión de la marca; si la cabecera If-None-Match coincide
+     * se responde 304 sin cargar ni serializar la marca.
      *
-     * @param id ID de la marca a recuperar.
+     * @param id         ID de la marca a recuperar.
+     * @param webRequest La petición, utilizada para comprobar la cabecera If-None-Match.
      * @return ResponseEntity con la marca recuperada en caso de éxito.
      */
     @GetMapping("/getBrand/{id}")
     @PreAuthorize("hasRole('CLIENT')")
-    public ResponseEntity<?> getBrandById(@PathVariable Integer id) {
+    public ResponseEntity<?> getBrandById(@PathVariable Integer id, WebRequest webRequest) {
         try {
             log.info("Looking for brand with ID -> " + id);
+            String eTag = brandService.findETagById(id);
+
+            if (eTag == null) {
+                log.warn("The brand with ID " + id + " is not found in the database.");
+                return ResponseEntity.notFound().build();
+            }
+
+            // Responde 304 si el cliente ya tiene la versión actual; también añade la cabecera ETag
+            if (webRequest.checkNotModified(eTag)) {
+                return null;
+            }
+
             return ResponseEntity.ok().body(brandService.findById(id));
         } catch (Exception e) {
             log.warn("The brand with ID " + id + " is not found in the database.");
@@ -94,6 +137,31 @@ public class BrandController {
         }
     }
 
+    /**
+     * Endpoint para obtener varias marcas por ID con una sola consulta.
+     * El resultado mantiene el orden de la petición e indica qué IDs no existen.
+     *
+     * @param ids Lista de IDs de las marcas, como máximo IdLookups.MAX_IDS.
+     * @return ResponseEntity con un resultado por cada ID, o 400 si la lista no es válida.
+     */
+    @PostMapping("/getBrandsByIds")
+    @PreAuthorize("hasRole('CLIENT')")
+    public CompletableFuture<?> getBrandsByIds(@RequestBody List<Integer> ids) {
+        try {
+            return brandService.findByIds(ids)
+                    .thenApply(brands -> ResponseEntity.ok().body(brandMapper.toBrandLookupResponse(brands)))
+                    .exceptionally(ex -> {
+                        Throwable cause = ex instanceof CompletionException ? ex.getCause() : ex;
+                        if (cause instanceof IllegalArgumentException) {
+                            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, cause.getMessage(), cause);
+                        }
+                        throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Error retrieving brands", ex);
+                    });
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e);
+        }
+    }
+
     /**
      * Endpoint para obtener todas las marcas de forma asíncrona.
      *
@@ -124,16 +192,24 @@ public class BrandController {
 
     /**
      * Endpoint para eliminar una marca por su ID.
+     * Si se envía la cabecera If-Match con el ETag de la marca, solo se elimina si no ha cambiado.
      *
      * @param id ID de la marca a eliminar.
-     * @return ResponseEntity con un mensaje indicando el resultado de la operación.
+     * @param ifMatch ETag que el cliente leyó de la marca (opcional).
+     * @return ResponseEntity con un mensaje indicando el resultado de la operación, o 409 si la marca ha cambiado.
      */
     @DeleteMapping("/deleteBrand/{id}")
     @PreAuthorize("hasRole('VENDOR')")
-    public ResponseEntity<?> deleteBrandById(@PathVariable Integer id) {
+    public ResponseEntity<?> deleteBrandById(@PathVariable Integer id,
+                                             @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
         try {
             log.info("Brand with ID -> " + id +  " successfully deleted");
-            return ResponseEntity.ok().body(brandService.delete(id));
+            return ResponseEntity.ok().body(brandService.delete(id, ETags.expectedVersion(ifMatch)));
+        } catch (OptimisticLockingFailureException e) {
+            log.info("Brand with ID -> " + id + " was modified by another request");
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(e.getMessage());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
         } catch (Exception e) {
             log.info("Brand with ID -> " + id +  " not found in the database.");
             return ResponseEntity.notFound().build();
@@ -142,21 +218,49 @@ public class BrandController {
 
     /**
      * Endpoint para actualizar una marca por su ID.
+     * Si se envía la cabecera If-Match con el ETag de la marca, solo se actualiza si no ha cambiado.
      *
      * @param id ID de la marca a actualizar.
      * @param brandRequest Objeto de solicitud que representa la marca actualizada.
-     * @return ResponseEntity con la marca actualizada en caso de éxito.
+     * @param ifMatch ETag que el cliente leyó de la marca (opcional).
+     * @return ResponseEntity con la marca actualizada en caso de éxito, o 409 si la marca ha cambiado.
      */
     @PutMapping("/updateBrand/{id}")
     @PreAuthorize("hasRole('VENDOR')")
-    public ResponseEntity<?> updateBrandByID(@PathVariable Integer id, @RequestBody BrandRequest brandRequest) {
+    public ResponseEntity<?> updateBrandByID(@PathVariable Integer id, @RequestBody BrandRequest brandRequest,
+                                             @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
         try {
             log.info("Brand with ID -> " + id + " updated successfully");
-            return ResponseEntity.ok().body(brandService.updateBrand(id, brandMapper.toBrandModel(brandRequest)));
+            return ResponseEntity.ok().body(brandService.updateBrand(id, brandMapper.toBrandModel(brandRequest),
+                    ETags.expectedVersion(ifMatch)));
+        } catch (OptimisticLockingFailureException e) {
+            log.info("Brand with ID -> " + id + " was modified by another request");
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(e.getMessage());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
         } catch (Exception e) {
             log.info("Brand with ID -> " + id +  " not found in the database.");
             return ResponseEntity.notFound().build();
         }
     }
 
+    /**
+     * Endpoint para actualizar parcialmente una marca.
+     * Solo se modifican los campos enviados, con una única sentencia UPDATE y sin leer antes la marca.
+     *
+     * @param id    ID de la marca a actualizar.
+     * @param patch Campos a modificar.
+     * @return 204 si la marca se ha actualizado o 404 si no existe.
+     */
+    @PatchMapping("/updateBrand/{id}")
+    @PreAuthorize("hasRole('VENDOR')")
+    public ResponseEntity<?> patchBrandById(@PathVariable Integer id, @RequestBody BrandRequest patch) {
+        if (brandService.patchBrand(id, patch)) {
+            log.info("Brand with ID -> " + id + " patched successfully");
+            return ResponseEntity.noContent().build();
+        }
+        log.info("Brand with ID -> " + id +  " not found in the database.");
+        return ResponseEntity.notFound().build();
+    }
+
 }
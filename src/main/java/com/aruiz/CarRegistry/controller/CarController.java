@@ -1,22 +1,57 @@
 package com.aruiz.CarRegistry.controller;
 
+import com.aruiz.CarRegistry.controller.dto.AffectedRowsResponse;
+import com.aruiz.CarRegistry.controller.dto.BulkImportReport;
+import com.aruiz.CarRegistry.controller.dto.CarPatchRequest;
+import com.aruiz.CarRegistry.controller.dto.CarPriceUpdateRequest;
 import com.aruiz.CarRegistry.controller.dto.CarRequest;
+import com.aruiz.CarRegistry.controller.dto.CarResponse;
+import com.aruiz.CarRegistry.controller.dto.ImportJobResponse;
 import com.aruiz.CarRegistry.controller.mapper.CarMapper;
+import com.aruiz.CarRegistry.domain.CarImportMode;
+import com.aruiz.CarRegistry.domain.CarSearchCriteria;
+import com.aruiz.CarRegistry.domain.ImportJobStatus;
+import com.aruiz.CarRegistry.repository.CarFields;
+import com.aruiz.CarRegistry.service.CarImportResult;
 import com.aruiz.CarRegistry.service.CarService;
+import com.aruiz.CarRegistry.service.concurrent.AdmissionControlledExecutor;
+import com.aruiz.CarRegistry.service.impl.CarImportJobService;
+import com.aruiz.CarRegistry.service.impl.IdempotencyService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.http.ContentDisposition;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.multipart.MultipartFile;
 import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Callable;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Function;
 
 /**
  * Controlador REST que gestiona las operaciones relacionadas con la entidad Car.
@@ -32,59 +67,111 @@ public class CarController {
     @Autowired
     private CarMapper carMapper;
 
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private IdempotencyService idempotencyService;
+
+    @Autowired
+    private AdmissionControlledExecutor taskExecutor;
+
+    @Autowired
+    private CarImportJobService carImportJobService;
+
+    // Tipo de contenido de las respuestas en formato JSON delimitado por saltos de línea
+    private static final MediaType APPLICATION_NDJSON = MediaType.parseMediaType("application/x-ndjson");
+
 
     /**
      * Endpoint para agregar un nuevo automóvil a la base de datos.
+     * Si se envía la cabecera Idempotency-Key, una petición repetida con la misma clave
+     * devuelve la respuesta original sin volver a guardar el coche.
      *
-     * @param carRequest La solicitud de creación de un automóvil.
+     * @param carRequest     La solicitud de creación de un automóvil.
+     * @param idempotencyKey Clave de idempotencia de la petición (opcional).
      * @return ResponseEntity que indica el éxito o el error de la operación.
      */
     @PostMapping("/addCar")
     @PreAuthorize("hasRole('VENDOR')")
-    public ResponseEntity<?> addCar(@RequestBody CarRequest carRequest) {
-        try {
-            log.info("Car -> " + carRequest.getIdBrand());
-            carService.save(carMapper.toCarModel(carRequest));
-            return ResponseEntity.ok().body(carRequest);
-        } catch (Exception e) {
-            log.error("Error -> " + e);
-            log.info("" + carRequest);
-            return ResponseEntity.internalServerError().build();
-        }
+    public ResponseEntity<?> addCar(@RequestBody CarRequest carRequest,
+                                    @RequestHeader(value = IdempotencyService.HEADER, required = false) String idempotencyKey) throws Exception {
+        return idempotencyService.execute("addCar", idempotencyKey, carRequest, () -> {
+            try {
+                log.info("Car -> " + carRequest.getIdBrand());
+                carService.save(carMapper.toCarModel(carRequest));
+                return ResponseEntity.ok().body(carRequest);
+            } catch (Exception e) {
+                log.error("Error -> " + e);
+                log.info("" + carRequest);
+                return ResponseEntity.internalServerError().build();
+            }
+        });
     }
 
     /**
-     * Endpoint para añadir una lista de autos de forma asíncrona
+     * Endpoint para añadir una lista de autos de forma asíncrona.
+     * Si se envía la cabecera Idempotency-Key, una petición repetida con la misma clave
+     * devuelve el informe original sin volver a insertar los coches.
+     * Si la cola de tareas asíncronas está saturada se responde 429 con la cabecera Retry-After.
+     *
      * @param carRequestList
+     * @param idempotencyKey Clave de idempotencia de la petición (opcional).
      * @return
      */
     @PostMapping("/addCars")
     @PreAuthorize("hasRole('VENDOR')")
-    public CompletableFuture<?> addCards(@RequestBody List<CarRequest> carRequestList) throws Exception {
-        // Llama al método saveAll() del servicio de coches para guardar la lista de coches
-        return carService.saveAll(carRequestList)
-                // Utiliza thenApply() para transformar el resultado del CompletableFuture
-                .thenApply(cars -> {
-                    // Devuelve un ResponseEntity con estado 200 (OK) si la operación de guardado es exitosa
-                    return ResponseEntity.ok().body(cars);
-                })
-                // Maneja cualquier excepción que ocurra durante el procesamiento
-                .exceptionally(ex -> {
-                    // Lanza una nueva RuntimeException con un mensaje descriptivo y estado 500 (Internal Server Error)
-                    throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Error saving cars", ex);
-                });
+    public CompletableFuture<?> addCards(@RequestBody List<CarRequest> carRequestList,
+                                         @RequestHeader(value = IdempotencyService.HEADER, required = false) String idempotencyKey) throws Exception {
+        return idempotencyService.executeAsync("addCars", idempotencyKey, carRequestList, () -> {
+            // Rechaza la petición con 429 si la cola de tareas asíncronas está saturada; una repetición
+            // con una clave ya usada recibe la respuesta guardada sin pasar por aquí
+            taskExecutor.admit();
 
+            // Llama al método saveAll() del servicio de coches para guardar la lista de coches
+            return carService.saveAll(carRequestList)
+                    // Utiliza thenApply() para transformar el resultado del CompletableFuture
+                    .<ResponseEntity<?>>thenApply(report -> {
+                        // Devuelve un ResponseEntity con estado 200 (OK) y el informe con los coches guardados y las filas rechazadas
+                        return ResponseEntity.ok().body(report);
+                    })
+                    // Maneja cualquier excepción que ocurra durante el procesamiento
+                    .exceptionally(ex -> {
+                        // Lanza una nueva RuntimeException con un mensaje descriptivo y estado 500 (Internal Server Error)
+                        throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Error saving cars", ex);
+                    });
+        });
 
     }
 
     /**
-     * Endpoint para recuperar todos los autos de la base de datos de forma asíncrona
+     * Endpoint para recuperar todos los autos de la base de datos de forma asíncrona.
+     * Si se indica "after" o "limit" se devuelve una única página (paginación por clave)
+     * junto con el cursor para pedir la siguiente.
+     *
+     * Con "fields" solo se devuelven los campos indicados, por ejemplo "model,price,id_brand.name_brand".
+     *
+     * @param after  ID del último coche recibido en la página anterior (opcional).
+     * @param limit  Número máximo de coches por página (opcional).
+     * @param fields Lista de campos a devolver separada por comas (opcional).
      * @return
      * @throws Exception
      */
     @GetMapping("/getCars")
     @PreAuthorize("hasRole('CLIENT')")
-    public CompletableFuture<?> getCards() throws Exception {
+    public CompletableFuture<?> getCards(@RequestParam(required = false) Integer after,
+                                         @RequestParam(required = false) Integer limit,
+                                         @RequestParam(required = false) String fields) throws Exception {
+        if (fields != null) {
+            return okResponse(() -> carService.searchFields(new CarSearchCriteria(), after, limit, fields)
+                    .thenApply(page -> carMapper.toCarPageResponse(page, Function.identity())), "Error retrieving cars");
+        }
+
+        if (after != null || limit != null) {
+            return okResponse(() -> carService.findPage(after, limit)
+                    .thenApply(page -> carMapper.toCarPageResponse(page, carMapper::toCarResponse)), "Error retrieving cars");
+        }
+
         // Llama al método findAll() del servicio de coches para obtener una lista de coches
         return carService.findAll().
                 // Utiliza thenApply() para transformar el resultado del CompletableFuture
@@ -105,33 +192,189 @@ public class CarController {
 
     }
 
+    /**
+     * Endpoint para descargar todos los autos en formato NDJSON (un objeto JSON por línea).
+     * Cada coche se escribe en la respuesta según se lee de la base de datos, por lo que la memoria
+     * utilizada no depende del número de coches. Con "fields" solo se devuelven los campos indicados.
+     *
+     * @param fields Campos a devolver separados por comas (opcional).
+     * @return ResponseEntity con el cuerpo que se escribe de forma progresiva.
+     */
+    @GetMapping(value = "/streamCars", produces = "application/x-ndjson")
+    @PreAuthorize("hasRole('CLIENT')")
+    public ResponseEntity<StreamingResponseBody> streamCars(@RequestParam(required = false) String fields) {
+        if (fields != null) {
+            // Se comprueban los campos antes de empezar a escribir para poder responder 400
+            try {
+                CarFields.parse(fields);
+            } catch (IllegalArgumentException e) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e);
+            }
+
+            ObjectWriter writer = objectMapper.writer();
+            return ResponseEntity.ok().contentType(APPLICATION_NDJSON)
+                    .body(outputStream -> carService.streamFields(fields, car -> writeLine(outputStream, writer, car)));
+        }
+
+        ObjectWriter writer = objectMapper.writerFor(CarResponse.class);
+        return ResponseEntity.ok().contentType(APPLICATION_NDJSON)
+                .body(outputStream -> carService.streamAll(
+                        car -> writeLine(outputStream, writer, carMapper.toCarResponse(car))));
+    }
+
+    private static void writeLine(OutputStream outputStream, ObjectWriter writer, Object value) {
+        try {
+            outputStream.write(writer.writeValueAsBytes(value));
+            outputStream.write('\n');
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Endpoint para buscar automóviles por varios criterios de forma asíncrona.
+     * Todos los filtros son opcionales y el resultado se pagina por clave con "after" y "limit".
+     * Con "fields" solo se devuelven los campos indicados.
+     *
+     * @return ResponseEntity con la página de coches que cumplen los criterios y el cursor de la siguiente.
+     * @throws Exception
+     */
+    @GetMapping("/searchCars")
+    @PreAuthorize("hasRole('CLIENT')")
+    public CompletableFuture<?> searchCars(@RequestParam(name = "id_brand", required = false) Integer brandId,
+                                           @RequestParam(name = "min_price", required = false) Double minPrice,
+                                           @RequestParam(name = "max_price", required = false) Double maxPrice,
+                                           @RequestParam(name = "min_year", required = false) Integer minYear,
+                                           @RequestParam(name = "max_year", required = false) Integer maxYear,
+                                           @RequestParam(name = "fuel_type", required = false) String fuelType,
+                                           @RequestParam(name = "colour", required = false) String colour,
+                                           @RequestParam(name = "num_doors", required = false) Integer numDoors,
+                                           @RequestParam(required = false) Integer after,
+                                           @RequestParam(required = false) Integer limit,
+                                           @RequestParam(required = false) String fields) throws Exception {
+        CarSearchCriteria criteria = CarSearchCriteria.builder()
+                .brandId(brandId)
+                .minPrice(minPrice)
+                .maxPrice(maxPrice)
+                .minYear(minYear)
+                .maxYear(maxYear)
+                .fuelType(fuelType)
+                .colour(colour)
+                .numDoors(numDoors)
+                .build();
+
+        if (fields != null) {
+            return okResponse(() -> carService.searchFields(criteria, after, limit, fields)
+                    .thenApply(page -> carMapper.toCarPageResponse(page, Function.identity())), "Error searching cars");
+        }
+
+        return okResponse(() -> carService.search(criteria, after, limit)
+                .thenApply(page -> carMapper.toCarPageResponse(page, carMapper::toCarResponse)), "Error searching cars");
+    }
+
+    /**
+     * Convierte el resultado calculado por el servicio en la respuesta HTTP.
+     * Un parámetro no válido (IllegalArgumentException) se responde con 400 y cualquier otro error con 500.
+     *
+     * @param call    Llamada al servicio que devuelve el resultado.
+     * @param message Mensaje del error 500.
+     * @return ResponseEntity con el resultado.
+     */
+    private CompletableFuture<?> okResponse(Callable<CompletableFuture<?>> call, String message) throws Exception {
+        try {
+            return call.call()
+                    .thenApply(ResponseEntity::ok)
+                    .exceptionally(ex -> {
+                        Throwable cause = ex instanceof CompletionException ? ex.getCause() : ex;
+                        if (cause instanceof IllegalArgumentException) {
+                            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, cause.getMessage(), cause);
+                        }
+                        throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, message, ex);
+                    });
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e);
+        }
+    }
+
     /**
      * Endpoint para obtener un automóvil por su ID.
+     * La respuesta incluye un ETag con la versión del coche; si la cabecera If-None-Match coincide
+     * se responde 304 sin cargar ni serializar el coche. Con "fields" solo se devuelven los campos indicados.
      *
-     * @param id El ID del automóvil a buscar.
-     * @return ResponseEntity con el automóvil si se encuentra, o notFound si no.
+     * @param id         El ID del automóvil a buscar.
+     * @param fields     Campos a devolver separados por comas (opcional).
+     * @param webRequest La petición, utilizada para comprobar la cabecera If-None-Match.
+     * @return ResponseEntity con el automóvil si se encuentra, 304 si no ha cambiado, badRequest si algún campo
+     * no existe, o notFound si no se encuentra.
      */
     @GetMapping("/getCar/{id}")
     @PreAuthorize("hasRole('CLIENT')")
-    public ResponseEntity<?> getCardById(@PathVariable Integer id) {
+    public ResponseEntity<?> getCardById(@PathVariable Integer id,
+                                         @RequestParam(required = false) String fields,
+                                         WebRequest webRequest) {
         try {
+            // Se comprueban los campos antes de la cabecera If-None-Match para responder 400 y no 304
+            if (fields != null) {
+                CarFields.parse(fields);
+            }
+
+            String eTag = carService.findETagById(id);
+
+            if (eTag == null) {
+                return ResponseEntity.notFound().build();
+            }
+
+            // Responde 304 si el cliente ya tiene la versión actual; también añade la cabecera ETag
+            if (webRequest.checkNotModified(eTag)) {
+                return null;
+            }
+
+            if (fields != null) {
+                Map<String, Object> car = carService.findFieldsById(id, fields);
+                return car != null ? ResponseEntity.ok().body(car) : ResponseEntity.notFound().build();
+            }
+
             return ResponseEntity.ok().body(carService.findById(id));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
         } catch (Exception e) {
             return ResponseEntity.notFound().build();
         }
     }
 
+    /**
+     * Endpoint para obtener varios automóviles por ID con una sola consulta.
+     * El resultado mantiene el orden de la petición e indica qué IDs no existen.
+     *
+     * @param ids Lista de IDs de los automóviles, como máximo IdLookups.MAX_IDS.
+     * @return ResponseEntity con un resultado por cada ID, o 400 si la lista no es válida.
+     * @throws Exception
+     */
+    @PostMapping("/getCarsByIds")
+    @PreAuthorize("hasRole('CLIENT')")
+    public CompletableFuture<?> getCarsByIds(@RequestBody List<Integer> ids) throws Exception {
+        return okResponse(() -> carService.findByIds(ids).thenApply(carMapper::toCarLookupResponse),
+                "Error retrieving cars");
+    }
+
     /**
      * Endpoint para eliminar un automóvil por su ID.
+     * Si se envía la cabecera If-Match con el ETag del automóvil, solo se elimina si no ha cambiado.
      *
-     * @param id El ID del automóvil a eliminar.
-     * @return ResponseEntity indicando el éxito o el error de la operación.
+     * @param id      El ID del automóvil a eliminar.
+     * @param ifMatch ETag que el cliente leyó del automóvil (opcional).
+     * @return ResponseEntity indicando el éxito o el error de la operación, o 409 si el automóvil ha cambiado.
      */
     @DeleteMapping("/deleteCar/{id}")
     @PreAuthorize("hasRole('VENDOR')")
-    public ResponseEntity<?> deleteCarByID(@PathVariable Integer id) {
+    public ResponseEntity<?> deleteCarByID(@PathVariable Integer id,
+                                           @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
         try {
-            return ResponseEntity.ok().body(carService.deleteById(id));
+            return ResponseEntity.ok().body(carService.deleteById(id, ETags.expectedVersion(ifMatch)));
+        } catch (OptimisticLockingFailureException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(e.getMessage());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
         } catch (Exception e) {
             return ResponseEntity.notFound().build();
         }
@@ -139,31 +382,115 @@ public class CarController {
 
     /**
      * Endpoint para actualizar un automóvil por su ID.
+     * Si se envía la cabecera If-Match con el ETag del automóvil, solo se actualiza si no ha cambiado.
      *
      * @param id          El ID del automóvil a actualizar.
      * @param carRequest  La solicitud de actualización del automóvil.
-     * @return ResponseEntity con el automóvil actualizado si se encuentra, o notFound si no.
+     * @param ifMatch     ETag que el cliente leyó del automóvil (opcional).
+     * @return ResponseEntity con el automóvil actualizado si se encuentra, 409 si ha cambiado, o notFound si no.
      */
     @PutMapping("/updateCar/{id}")
     @PreAuthorize("hasRole('VENDOR')")
-    public  ResponseEntity<?> updateCarByID(@PathVariable Integer id, @RequestBody CarRequest carRequest) {
+    public  ResponseEntity<?> updateCarByID(@PathVariable Integer id, @RequestBody CarRequest carRequest,
+                                            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        try {
+            return ResponseEntity.ok().body(carService.updateById(id, carMapper.toCarModel(carRequest),
+                    ETags.expectedVersion(ifMatch)));
+        } catch (OptimisticLockingFailureException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(e.getMessage());
+        } catch (IllegalArgumentException | DataIntegrityViolationException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        } catch (Exception e) {
+            return ResponseEntity.notFound().build();
+        }
+    }
+
+    /**
+     * Endpoint para actualizar parcialmente un automóvil.
+     * Solo se modifican los campos enviados, con una única sentencia UPDATE y sin leer antes el coche.
+     *
+     * @param id    El ID del automóvil a actualizar.
+     * @param patch Los campos a modificar.
+     * @return 204 si el automóvil se ha actualizado, 404 si no existe o 400 si la marca indicada no existe.
+     */
+    @PatchMapping("/updateCar/{id}")
+    @PreAuthorize("hasRole('VENDOR')")
+    public ResponseEntity<?> patchCarById(@PathVariable Integer id, @RequestBody CarPatchRequest patch) {
         try {
-            return ResponseEntity.ok().body(carService.updateById(id, carMapper.toCarModel(carRequest)));
-        }catch (Exception e) {
+            if (carService.patchById(id, patch)) {
+                return ResponseEntity.noContent().build();
+            }
             return ResponseEntity.notFound().build();
+        } catch (DataIntegrityViolationException e) {
+            log.warn("Invalid patch for car with ID " + id + " -> " + e.getMessage());
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    /**
+     * Endpoint para cambiar el precio de todos los automóviles que cumplen un filtro con una sola sentencia.
+     * Se debe indicar al menos un filtro y, en el cuerpo, un precio nuevo o un porcentaje de ajuste.
+     *
+     * @param priceUpdate Precio nuevo ("price") o porcentaje de ajuste ("percent").
+     * @return ResponseEntity con el número de automóviles modificados, o 400 si la petición no es válida.
+     */
+    @PutMapping("/updateCars")
+    @PreAuthorize("hasRole('VENDOR')")
+    public ResponseEntity<?> updateCarsByFilter(@RequestParam(name = "id_brand", required = false) Integer brandId,
+                                                @RequestParam(required = false) String model,
+                                                @RequestParam(name = "min_year", required = false) Integer minYear,
+                                                @RequestParam(name = "max_year", required = false) Integer maxYear,
+                                                @RequestBody CarPriceUpdateRequest priceUpdate) {
+        try {
+            long affected = carService.updatePrices(bulkFilter(brandId, model, minYear, maxYear), priceUpdate);
+            log.info(affected + " cars repriced");
+            return ResponseEntity.ok(new AffectedRowsResponse(affected));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
         }
     }
 
+    /**
+     * Endpoint para eliminar todos los automóviles que cumplen un filtro con una sola sentencia.
+     * Se debe indicar al menos un filtro.
+     *
+     * @return ResponseEntity con el número de automóviles eliminados, o 400 si no se indica ningún filtro.
+     */
+    @DeleteMapping("/deleteCars")
+    @PreAuthorize("hasRole('VENDOR')")
+    public ResponseEntity<?> deleteCarsByFilter(@RequestParam(name = "id_brand", required = false) Integer brandId,
+                                                @RequestParam(required = false) String model,
+                                                @RequestParam(name = "min_year", required = false) Integer minYear,
+                                                @RequestParam(name = "max_year", required = false) Integer maxYear) {
+        try {
+            long affected = carService.deleteMatching(bulkFilter(brandId, model, minYear, maxYear));
+            log.info(affected + " cars deleted");
+            return ResponseEntity.ok(new AffectedRowsResponse(affected));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+
+    private CarSearchCriteria bulkFilter(Integer brandId, String model, Integer minYear, Integer maxYear) {
+        return CarSearchCriteria.builder().brandId(brandId).model(model).minYear(minYear).maxYear(maxYear).build();
+    }
+
     /**
      * Endpoint para cargar un archivo CSV que contiene datos de coches y procesarlo para
      * almacenar los registros en la base de datos.
      *
+     * Con mode=UPSERT las filas que ya existen (misma clave natural) se actualizan si han cambiado
+     * y se omiten si no han cambiado, en lugar de insertarse de nuevo.
+     *
      * @param file El archivo CSV a cargar, enviado como parte de la solicitud multipart.
-     * @return ResponseEntity que indica el estado de la carga del archivo.
+     * @param mode Modo de la importación: INSERT (por defecto) o UPSERT.
+     * @return ResponseEntity con el informe de la carga: coches guardados y filas rechazadas con el motivo,
+     * limitadas a una muestra; con Accept: text/csv se devuelve el CSV con todas (ver uploadCSVRejectedRows).
      */
     @PreAuthorize("hasRole('VENDOR')")
     @PostMapping(value = "/uploadCSV", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
-    public ResponseEntity<String> uploadCSV(@RequestParam(value = "file")MultipartFile file) {
+    public ResponseEntity<?> uploadCSV(@RequestParam(value = "file")MultipartFile file,
+                                       @RequestParam(defaultValue = "INSERT") CarImportMode mode) {
 
         // Verificar si el archivo está vacío
         if (file.isEmpty()) {
@@ -174,14 +501,14 @@ public class CarController {
         // Verificar si el archivo tiene la extensión .csv
         if (file.getOriginalFilename().contains(".csv")) {
             // Procesar el archivo CSV para cargar los datos de los coches en la base de datos
-            carService.uploadCars(file);
+            BulkImportReport report = carService.uploadCars(file, mode);
 
             // Mostrar información sobre el archivo cargado
             log.info("Filename: {}", file.getOriginalFilename());
             log.info("File size: {}", file.getSize());
 
-            // Devolver una respuesta exitosa
-            return ResponseEntity.ok("File successfully uploaded.");
+            // Devolver el informe con los coches guardados y las filas rechazadas
+            return ResponseEntity.ok(report);
         }
 
         // Devolver una respuesta indicando que el archivo no es un CSV
@@ -190,28 +517,162 @@ public class CarController {
 
     }
 
+    /**
+     * Variante de /uploadCSV para clientes que piden text/csv: importa el archivo igual que /uploadCSV
+     * y devuelve el CSV con todas las filas rechazadas, que se puede corregir y volver a subir.
+     * El informe JSON de /uploadCSV solo incluye una muestra de las filas rechazadas; aquí se devuelven todas,
+     * como en /importJobs/{jobId}/errors. El servicio escribe las filas rechazadas en un archivo temporal durante
+     * la importación, que se borra al enviar la respuesta.
+     *
+     * @param file El archivo CSV a cargar, enviado como parte de la solicitud multipart.
+     * @param mode Modo de la importación: INSERT (por defecto) o UPSERT.
+     * @return ResponseEntity con el CSV de filas rechazadas y el número de filas guardadas y rechazadas
+     * en las cabeceras Import-Accepted-Count e Import-Rejected-Count, o 400 si el archivo está vacío o no es un CSV.
+     * @throws IOException si no se puede leer el archivo o escribir el archivo temporal.
+     */
+    @PreAuthorize("hasRole('VENDOR')")
+    @PostMapping(value = "/uploadCSV", consumes = MediaType.MULTIPART_FORM_DATA_VALUE, produces = "text/csv")
+    public ResponseEntity<?> uploadCSVRejectedRows(@RequestParam(value = "file") MultipartFile file,
+                                                   @RequestParam(defaultValue = "INSERT") CarImportMode mode) throws IOException {
+        if (file.isEmpty() || file.getOriginalFilename() == null || !file.getOriginalFilename().contains(".csv")) {
+            log.error("The file it's empty or it's not a CSV");
+            return ResponseEntity.badRequest().body("The file it's empty or it's not a CSV");
+        }
+
+        // Las filas rechazadas se escriben en un archivo temporal que se borra al enviar la respuesta
+        CarImportResult result = carService.uploadCarsWithRejectedRows(file, mode);
+        Path rejectedFile = result.getRejectedRowsFile();
+        BulkImportReport report = result.getReport();
+
+        log.info("Filename: {}", file.getOriginalFilename());
+        log.info("File size: {}", file.getSize());
+
+        StreamingResponseBody body = outputStream -> {
+            try {
+                Files.copy(rejectedFile, outputStream);
+            } finally {
+                Files.deleteIfExists(rejectedFile);
+            }
+        };
+
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=import-errors.csv")
+                .header("Import-Accepted-Count", String.valueOf(report.getAcceptedCount()))
+                .header("Import-Rejected-Count", String.valueOf(report.getRejectedCount()))
+                .contentType(MediaType.parseMediaType("text/csv"))
+                .body(body);
+    }
+
+
+    /**
+     * Endpoint para importar un archivo CSV de coches en segundo plano.
+     * El archivo se guarda en disco y la respuesta se devuelve al momento con el ID del trabajo;
+     * el progreso se consulta en /importJobs/{jobId}.
+     *
+     * @param file El archivo CSV a importar, enviado como parte de la solicitud multipart.
+     * @param mode Modo de la importación: INSERT (por defecto) o UPSERT.
+     * @return ResponseEntity 202 con el estado del trabajo y su URL en la cabecera Location,
+     * 400 si el archivo está vacío o no es un CSV, o 429 si la cola de importaciones está llena.
+     * @throws IOException si no se puede guardar el archivo en disco.
+     */
+    @PreAuthorize("hasRole('VENDOR')")
+    @PostMapping(value = "/importJobs", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public ResponseEntity<?> createImportJob(@RequestParam(value = "file") MultipartFile file,
+                                             @RequestParam(defaultValue = "INSERT") CarImportMode mode) throws IOException {
+        if (file.isEmpty() || file.getOriginalFilename() == null || !file.getOriginalFilename().contains(".csv")) {
+            log.error("The file it's empty or it's not a CSV");
+            return ResponseEntity.badRequest().body("The file it's empty or it's not a CSV");
+        }
+
+        ImportJobResponse job = carImportJobService.submit(file, mode);
+        return ResponseEntity.accepted()
+                .location(URI.create("/api/car/importJobs/" + job.getJobId()))
+                .body(job);
+    }
+
+    /**
+     * Endpoint para consultar el estado de un trabajo de importación: filas procesadas, insertadas y rechazadas,
+     * velocidad y tiempo restante estimado.
+     *
+     * @param jobId ID del trabajo.
+     * @return ResponseEntity con el estado del trabajo, o 404 si no existe.
+     */
+    @PreAuthorize("hasRole('VENDOR')")
+    @GetMapping("/importJobs/{jobId}")
+    public ResponseEntity<ImportJobResponse> getImportJob(@PathVariable String jobId) {
+        return ResponseEntity.of(carImportJobService.getJob(jobId));
+    }
+
+    /**
+     * Endpoint para descargar las filas rechazadas de un trabajo de importación terminado en formato CSV,
+     * con el número de fila, el motivo y los valores de la fila. Basta con corregir este archivo y volver a subirlo.
+     * Incluye todas las filas rechazadas, no solo la muestra del informe; se envía desde el archivo que escribe
+     * el trabajo.
+     *
+     * @param jobId ID del trabajo.
+     * @return ResponseEntity con el CSV de filas rechazadas, 404 si el trabajo no existe
+     * o 409 si todavía no ha terminado correctamente.
+     */
+    @PreAuthorize("hasRole('VENDOR')")
+    @GetMapping(value = "/importJobs/{jobId}/errors", produces = "text/csv")
+    public ResponseEntity<StreamingResponseBody> downloadImportJobErrors(@PathVariable String jobId) {
+        Optional<ImportJobResponse> job = carImportJobService.getJob(jobId);
+        if (job.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+
+        if (job.get().getStatus() != ImportJobStatus.COMPLETED) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        }
+
+        Optional<Path> rejectedRows = carImportJobService.getRejectedRowsFile(jobId);
+        if (rejectedRows.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+
+        StreamingResponseBody body = outputStream -> Files.copy(rejectedRows.get(), outputStream);
+
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=import-" + jobId + "-errors.csv")
+                .contentType(MediaType.parseMediaType("text/csv"))
+                .body(body);
+    }
+
+    /**
+     * Endpoint para cancelar un trabajo de importación. Los bloques ya guardados se conservan.
+     *
+     * @param jobId ID del trabajo.
+     * @return ResponseEntity con el estado del trabajo, o 404 si no existe.
+     */
+    @PreAuthorize("hasRole('VENDOR')")
+    @DeleteMapping("/importJobs/{jobId}")
+    public ResponseEntity<ImportJobResponse> cancelImportJob(@PathVariable String jobId) {
+        return ResponseEntity.of(carImportJobService.cancel(jobId));
+    }
 
     /**
      * Endpoint que maneja la descarga de un archivo CSV con información de coches.
-     * Genera el contenido del archivo CSV a partir de la información de los coches en la base de datos
-     * y devuelve una respuesta HTTP con el contenido del archivo para que el cliente lo descargue.
+     * Las filas se escriben en la respuesta según se leen de la base de datos, sin generar el archivo
+     * completo en memoria, y la cabecera del CSV se envía al momento.
      *
      * @return ResponseEntity con el contenido del archivo CSV de coches para su descarga.
-     * @throws IOException si ocurre un error al generar el archivo CSV.
      */
     @PreAuthorize("hasAnyRole('CLIENT', 'VENDOR')")
     @GetMapping(value = "/downloadFileCars")
-    public ResponseEntity<?> downloadFileCars() throws IOException {
+    public ResponseEntity<StreamingResponseBody> downloadFileCars() {
         // Configuración de los encabezados de la respuesta HTTP para indicar que se va a enviar un archivo para descargar
         HttpHeaders headers = new HttpHeaders();
-        headers.setContentType(MediaType.APPLICATION_OCTET_STREAM);
-        headers.setContentDispositionFormData("attachment", "cars.csv");
+        headers.setContentType(new MediaType("text", "csv", StandardCharsets.UTF_8));
+        headers.setContentDisposition(ContentDisposition.attachment().filename("cars.csv").build());
 
-        // Se genera el contenido del archivo CSV a partir de la información de los coches en la base de datos
-        byte[] csvBytes = carService.carsDownloadCsv().getBytes();
+        // El contenido del archivo CSV se genera a partir de la información de los coches en la base de datos
+        StreamingResponseBody body = outputStream -> {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8));
+            carService.carsDownloadCsv(writer);
+            writer.flush();
+        };
 
-        // Se crea una respuesta HTTP con el contenido del archivo CSV para que el cliente lo descargue
-        return new ResponseEntity<>(csvBytes, headers, HttpStatus.OK);
+        return new ResponseEntity<>(body, headers, HttpStatus.OK);
     }
 
 }
@@ -0,0 +1,39 @@
+package com.aruiz.CarRegistry.controller;
+
+/**
+ * Lectura de la versión esperada enviada en la cabecera If-Match de las actualizaciones y eliminaciones.
+ * El ETag de una marca es su versión y el de un coche tiene la forma "versiónCoche.versiónMarca";
+ * al modificar un coche solo se comprueba la versión del propio coche.
+ */
+public final class ETags {
+
+    private ETags() {
+    }
+
+    /**
+     * Obtiene la versión de un ETag enviado en la cabecera If-Match.
+     *
+     * @param ifMatch Valor de la cabecera If-Match, con o sin comillas.
+     * @return La versión esperada, o null si no se envía la cabecera o su valor es "*".
+     * @throws IllegalArgumentException Si el valor no es un ETag de este servicio.
+     */
+    public static Long expectedVersion(String ifMatch) {
+        if (ifMatch == null || ifMatch.isBlank() || ifMatch.trim().equals("*")) {
+            return null;
+        }
+
+        String tag = ifMatch.trim();
+        if (tag.startsWith("W/")) {
+            tag = tag.substring(2);
+        }
+        tag = tag.replace("\"", "");
+
+        int dot = tag.indexOf('.');
+        try {
+            return Long.valueOf(dot >= 0 ? tag.substring(0, dot) : tag);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid If-Match header: " + ifMatch);
+        }
+    }
+
+}
@@ -0,0 +1,47 @@
+package com.aruiz.CarRegistry.controller;
+
+import com.aruiz.CarRegistry.service.concurrent.AdmissionControlledExecutor;
+import com.aruiz.CarRegistry.service.impl.CacheStatsService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * Controlador que expone métricas internas de la aplicación para su ajuste.
+ */
+@RestController
+@RequestMapping("/api/stats")
+@RequiredArgsConstructor
+public class StatsController {
+
+    private final CacheStatsService cacheStatsService;
+
+    private final AdmissionControlledExecutor taskExecutor;
+
+    /**
+     * Endpoint para consultar los aciertos, fallos y desalojos de las cachés.
+     *
+     * @return ResponseEntity con las estadísticas de cada caché.
+     */
+    @GetMapping("/cache")
+    @PreAuthorize("hasRole('VENDOR')")
+    public ResponseEntity<?> getCacheStats() {
+        return ResponseEntity.ok(cacheStatsService.getStats());
+    }
+
+    /**
+     * Endpoint para consultar el estado de la cola de tareas asíncronas: hilos, tareas en cola,
+     * duración media de las tareas, espera estimada y peticiones rechazadas por saturación.
+     *
+     * @return ResponseEntity con las estadísticas de la cola.
+     */
+    @GetMapping("/asyncQueue")
+    @PreAuthorize("hasRole('VENDOR')")
+    public ResponseEntity<?> getAsyncQueueStats() {
+        return ResponseEntity.ok(taskExecutor.getStats());
+    }
+
+}
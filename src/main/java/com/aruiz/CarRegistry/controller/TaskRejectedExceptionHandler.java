@@ -0,0 +1,31 @@
+package com.aruiz.CarRegistry.controller;
+
+import com.aruiz.CarRegistry.service.concurrent.AdmissionControlledExecutor;
+import com.aruiz.CarRegistry.service.concurrent.TooManyRequestsException;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+
+/**
+ * Responde 429 con la cabecera Retry-After cuando la cola de tareas asíncronas rechaza una tarea.
+ * Las lecturas asíncronas no pasan por el control de admisión y, con la cola llena, el ejecutor
+ * lanza TaskRejectedException al encolarlas; sin este manejador se respondería 500.
+ */
+@Slf4j
+@RestControllerAdvice
+@RequiredArgsConstructor
+public class TaskRejectedExceptionHandler {
+
+    private final AdmissionControlledExecutor taskExecutor;
+
+    @ExceptionHandler(TaskRejectedException.class)
+    public ResponseEntity<?> handleTaskRejected(TaskRejectedException e) {
+        TooManyRequestsException rejected = taskExecutor.rejected();
+        log.warn("Async task rejected, answering 429: {}", e.getMessage());
+        return ResponseEntity.status(rejected.getStatusCode()).headers(rejected.getHeaders()).body(rejected.getBody());
+    }
+
+}
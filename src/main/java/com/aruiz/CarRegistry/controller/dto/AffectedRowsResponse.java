@@ -0,0 +1,16 @@
+package com.aruiz.CarRegistry.controller.dto;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@AllArgsConstructor
+@NoArgsConstructor
+@Data
+public class AffectedRowsResponse {
+
+    @JsonProperty("affected")
+    private long affected;
+
+}
@@ -0,0 +1,32 @@
+package com.aruiz.CarRegistry.controller.dto;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@AllArgsConstructor
+@NoArgsConstructor
+@Data
+public class AsyncQueueStatsResponse {
+
+    @JsonProperty("pool_size")
+    private int poolSize;
+    @JsonProperty("active_threads")
+    private int activeThreads;
+    @JsonProperty("queue_depth")
+    private int queueDepth;
+    @JsonProperty("queue_capacity")
+    private int queueCapacity;
+    @JsonProperty("max_queue_depth")
+    private int maxQueueDepth;
+    @JsonProperty("avg_task_ms")
+    private double avgTaskMillis;
+    @JsonProperty("estimated_wait_ms")
+    private long estimatedWaitMillis;
+    @JsonProperty("completed_tasks")
+    private long completedTasks;
+    @JsonProperty("rejected_requests")
+    private long rejectedRequests;
+
+}
@@ -0,0 +1,90 @@
+package com.aruiz.CarRegistry.controller.dto;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Resultado de una importación masiva de coches: los IDs de los coches guardados
+ * y las filas rechazadas con el motivo. En las importaciones en modo upsert también
+ * incluye los coches existentes que se han actualizado y el número de filas sin cambios.
+ * Los totales siempre cuentan todas las filas; con un tamaño de muestra las listas solo guardan
+ * los primeros elementos, de modo que el informe de un archivo grande no crece con el archivo.
+ */
+@NoArgsConstructor
+@Data
+public class BulkImportReport {
+
+    @JsonProperty("accepted_count")
+    private long acceptedCount;
+    @JsonProperty("accepted_ids")
+    private List<Integer> acceptedIds = new ArrayList<>();
+    @JsonProperty("rejected_count")
+    private long rejectedCount;
+    @JsonProperty("rejected")
+    private List<RowError> rejected = new ArrayList<>();
+    // Solo aparecen en las importaciones en modo upsert
+    @JsonInclude(JsonInclude.Include.NON_DEFAULT)
+    @JsonProperty("updated_count")
+    private long updatedCount;
+    @JsonInclude(JsonInclude.Include.NON_EMPTY)
+    @JsonProperty("updated_ids")
+    private List<Integer> updatedIds = new ArrayList<>();
+    @JsonInclude(JsonInclude.Include.NON_DEFAULT)
+    @JsonProperty("unchanged")
+    private long unchanged;
+    // Número máximo de elementos de cada lista; 0 para guardarlos todos
+    @JsonIgnore
+    private int sampleSize;
+
+    public BulkImportReport(int sampleSize) {
+        this.sampleSize = sampleSize;
+    }
+
+    public BulkImportReport(List<Integer> acceptedIds, List<RowError> rejected) {
+        this.acceptedIds = acceptedIds;
+        this.rejected = rejected;
+        this.acceptedCount = acceptedIds.size();
+        this.rejectedCount = rejected.size();
+    }
+
+    public void addAccepted(Integer id) {
+        acceptedCount++;
+        addToSample(acceptedIds, id);
+    }
+
+    public void addUpdated(Integer id) {
+        updatedCount++;
+        addToSample(updatedIds, id);
+    }
+
+    public void addRejected(RowError error) {
+        rejectedCount++;
+        addToSample(rejected, error);
+    }
+
+    public void addUnchanged(long count) {
+        unchanged += count;
+    }
+
+    /**
+     * Indica si alguna de las listas no incluye todos los elementos contados.
+     */
+    @JsonInclude(JsonInclude.Include.NON_DEFAULT)
+    @JsonProperty("truncated")
+    public boolean isTruncated() {
+        return acceptedCount > acceptedIds.size() || updatedCount > updatedIds.size() || rejectedCount > rejected.size();
+    }
+
+    private <T> void addToSample(List<T> sample, T value) {
+        if (sampleSize == 0 || sample.size() < sampleSize) {
+            sample.add(value);
+        }
+    }
+
+}
@@ -0,0 +1,26 @@
+package com.aruiz.CarRegistry.controller.dto;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@AllArgsConstructor
+@NoArgsConstructor
+@Data
+public class CacheStatsResponse {
+
+    @JsonProperty("name")
+    private String name;
+    @JsonProperty("size")
+    private long size;
+    @JsonProperty("hits")
+    private long hits;
+    @JsonProperty("misses")
+    private long misses;
+    @JsonProperty("evictions")
+    private long evictions;
+    @JsonProperty("hit_rate")
+    private double hitRate;
+
+}
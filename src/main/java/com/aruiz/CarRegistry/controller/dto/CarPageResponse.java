@@ -0,0 +1,20 @@
+package com.aruiz.CarRegistry.controller.dto;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@AllArgsConstructor
+@NoArgsConstructor
+@Data
+public class CarPageResponse<T> {
+
+    @JsonProperty("cars")
+    private List<T> cars;
+    @JsonProperty("next_cursor")
+    private Integer nextCursor;
+
+}
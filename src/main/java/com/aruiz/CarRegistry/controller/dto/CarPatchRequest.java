@@ -0,0 +1,34 @@
+package com.aruiz.CarRegistry.controller.dto;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Actualización parcial de un coche: solo se modifican los campos que no son null.
+ * Usa los mismos nombres JSON que CarRequest.
+ */
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+@Data
+public class CarPatchRequest {
+
+    @JsonProperty("id_brand")
+    private Integer idBrand;
+    private String model;
+    private Integer milleage;
+    private Double price;
+    private Integer year_car;
+    @JsonProperty("description_car")
+    private String description;
+    @JsonProperty("colour")
+    private String colour;
+    @JsonProperty("fuel_type")
+    private String fuel_type;
+    @JsonProperty("num_doors")
+    private Integer num_doors;
+
+}
@@ -0,0 +1,25 @@
+package com.aruiz.CarRegistry.controller.dto;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Cambio de precio que se aplica a todos los coches de un filtro.
+ * Se debe indicar exactamente uno de los dos campos: un precio nuevo o un porcentaje de ajuste
+ * (por ejemplo -10 para bajar un 10 %).
+ */
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+@Data
+public class CarPriceUpdateRequest {
+
+    @JsonProperty("price")
+    private Double price;
+    @JsonProperty("percent")
+    private Double percent;
+
+}
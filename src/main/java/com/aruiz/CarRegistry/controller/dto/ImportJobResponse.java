@@ -0,0 +1,64 @@
+package com.aruiz.CarRegistry.controller.dto;
+
+import com.aruiz.CarRegistry.domain.CarImportMode;
+import com.aruiz.CarRegistry.domain.ImportJobStatus;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+/**
+ * Estado de un trabajo de importación de coches: progreso, filas procesadas, velocidad y tiempo restante estimado.
+ * El informe completo de la importación solo se incluye cuando el trabajo ha terminado.
+ */
+@AllArgsConstructor
+@NoArgsConstructor
+@Data
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class ImportJobResponse {
+
+    @JsonProperty("job_id")
+    private String jobId;
+    @JsonProperty("status")
+    private ImportJobStatus status;
+    @JsonProperty("file_name")
+    private String fileName;
+    @JsonProperty("mode")
+    private CarImportMode mode;
+    @JsonProperty("created_at")
+    private Instant createdAt;
+    @JsonProperty("started_at")
+    private Instant startedAt;
+    @JsonProperty("finished_at")
+    private Instant finishedAt;
+    @JsonProperty("total_bytes")
+    private long totalBytes;
+    @JsonProperty("bytes_read")
+    private long bytesRead;
+    // Porcentaje del archivo leído
+    @JsonProperty("progress")
+    private double progress;
+    @JsonProperty("rows_parsed")
+    private long rowsParsed;
+    @JsonProperty("inserted")
+    private long inserted;
+    @JsonProperty("updated")
+    private long updated;
+    @JsonProperty("unchanged")
+    private long unchanged;
+    @JsonProperty("rejected")
+    private long rejected;
+    @JsonProperty("rows_per_second")
+    private double rowsPerSecond;
+    // Solo mientras el trabajo está en curso
+    @JsonProperty("eta_seconds")
+    private Long etaSeconds;
+    @JsonProperty("error")
+    private String error;
+    @JsonProperty("report")
+    private BulkImportReport report;
+
+}
@@ -0,0 +1,24 @@
+package com.aruiz.CarRegistry.controller.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Resultado de la búsqueda de un ID dentro de una consulta por lotes.
+ * Si el elemento no existe se devuelve "found": false y sin "data".
+ */
+@Getter
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class LookupResult<T> {
+
+    @JsonProperty("id")
+    private final Integer id;
+    @JsonProperty("found")
+    private final boolean found;
+    @JsonProperty("data")
+    private final T data;
+
+}
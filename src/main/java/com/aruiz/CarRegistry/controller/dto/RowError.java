@@ -0,0 +1,39 @@
+package com.aruiz.CarRegistry.controller.dto;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.List;
+
+/**
+ * Fila rechazada en una importación masiva de coches.
+ * La fila es la posición del coche en la petición o el número de registro de datos en el CSV, empezando en 1.
+ * En el CSV el número de registro no cuenta la cabecera, las líneas vacías ni los saltos de línea dentro
+ * de los campos entre comillas, por lo que también se indica la línea del archivo en la que empieza el registro.
+ * En las importaciones CSV también se guardan los valores de la fila, con los que se genera
+ * el CSV de filas rechazadas que se puede corregir y volver a subir.
+ */
+@Getter
+@AllArgsConstructor
+public class RowError {
+
+    @JsonProperty("row")
+    private final long row;
+    // Solo en las importaciones CSV
+    @JsonInclude(JsonInclude.Include.NON_DEFAULT)
+    @JsonProperty("line")
+    private final long line;
+    @JsonProperty("reason")
+    private final String reason;
+    // Valores de las columnas de importación de la fila; no forman parte del informe JSON
+    @JsonIgnore
+    private final List<String> values;
+
+    public RowError(long row, String reason) {
+        this(row, 0, reason, List.of());
+    }
+
+}
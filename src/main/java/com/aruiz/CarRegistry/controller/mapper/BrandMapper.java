@@ -2,9 +2,13 @@ package com.aruiz.CarRegistry.controller.mapper;
 
 import com.aruiz.CarRegistry.controller.dto.BrandRequest;
 import com.aruiz.CarRegistry.controller.dto.BrandResponse;
+import com.aruiz.CarRegistry.controller.dto.LookupResult;
 import com.aruiz.CarRegistry.domain.Brand;
+import com.aruiz.CarRegistry.repository.BrandView;
 import org.springframework.stereotype.Component;
 
+import java.util.List;
+
 /**
  * Clase encargada de mapear y convertir objetos relacionados con la entidad Brand.
  */
@@ -28,6 +32,29 @@ public class BrandMapper {
 
     }
 
+    /**
+     * Convierte una vista de solo lectura de una marca a la respuesta de la marca (BrandResponse).
+     *
+     * @param brand La vista de la marca a convertir.
+     * @return La respuesta de la marca (BrandResponse) obtenida después de la conversión.
+     */
+    public BrandResponse toBrandResponse(BrandView brand) {
+        return new BrandResponse(brand.getId(), brand.getName_brand(), brand.getWarranty(), brand.getCountry());
+    }
+
+    /**
+     * Convierte los resultados de una consulta por lotes de vistas de marca en resultados con BrandResponse.
+     *
+     * @param results Un resultado por cada ID pedido.
+     * @return Los mismos resultados, en el mismo orden, con las marcas encontradas convertidas.
+     */
+    public List<LookupResult<BrandResponse>> toBrandLookupResponse(List<LookupResult<BrandView>> results) {
+        return results.stream()
+                .map(result -> new LookupResult<>(result.getId(), result.isFound(),
+                        result.getData() != null ? toBrandResponse(result.getData()) : null))
+                .toList();
+    }
+
     /**
      * Convierte una solicitud de marca (BrandRequest) a la entidad Brand.
      *
@@ -1,16 +1,22 @@
 package com.aruiz.CarRegistry.controller.mapper;
 
+import com.aruiz.CarRegistry.controller.dto.CarPageResponse;
 import com.aruiz.CarRegistry.controller.dto.CarRequest;
 import com.aruiz.CarRegistry.controller.dto.CarResponse;
+import com.aruiz.CarRegistry.controller.dto.LookupResult;
 import com.aruiz.CarRegistry.domain.Brand;
 import com.aruiz.CarRegistry.domain.Car;
+import com.aruiz.CarRegistry.domain.CarPage;
+import com.aruiz.CarRegistry.repository.CarView;
 import com.aruiz.CarRegistry.service.BrandService;
 import com.aruiz.CarRegistry.service.CarService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import java.util.List;
 import java.util.Optional;
+import java.util.function.Function;
 
 /**
  * Clase encargada de mapear entre entidades Car y DTOs CarRequest y CarResponse.
@@ -40,11 +46,9 @@ public class CarMapper {
 
         // Asigna los atributos del DTO CarResponse con los valores de la entidad Car
         car.setId(entity.getId());
-        System.out.println(car.getId());
         // Asigna el objeto BrandResponse al atributo brandResponse del DTO CarResponse
         // a partir de la entidad Car proporcionada
         car.setBrandResponse(brandMapper.toBrandResponse(entity.getBrand()));
-        System.out.println("BrandMapper -> : " + brandMapper);
         car.setModel(entity.getModel());
         car.setMilleage(entity.getMilleage());
         car.setPrice(entity.getPrice());
@@ -58,6 +62,53 @@ public class CarMapper {
 
     }
 
+    /**
+     * Convierte una vista de solo lectura de un coche a un DTO CarResponse.
+     *
+     * @param view La vista del coche, con su marca.
+     * @return CarResponse creado a partir de la vista.
+     */
+    public CarResponse toCarResponse(CarView view) {
+        CarResponse car = new CarResponse();
+
+        car.setId(view.getId());
+        car.setBrandResponse(view.getBrand() != null ? brandMapper.toBrandResponse(view.getBrand()) : null);
+        car.setModel(view.getModel());
+        car.setMilleage(view.getMilleage());
+        car.setPrice(view.getPrice());
+        car.setYear(view.getYear());
+        car.setDescription(view.getDescription());
+        car.setColour(view.getColour());
+        car.setFuelType(view.getFuelType());
+        car.setNumDoors(view.getNumDoors());
+
+        return car;
+    }
+
+    /**
+     * Convierte una página de coches en la respuesta de la página.
+     *
+     * @param page   Página devuelta por el servicio.
+     * @param mapper Conversión de cada coche de la página.
+     * @return CarPageResponse con los coches convertidos y el cursor de la siguiente página.
+     */
+    public <T, R> CarPageResponse<R> toCarPageResponse(CarPage<T> page, Function<T, R> mapper) {
+        return new CarPageResponse<>(page.getCars().stream().map(mapper).toList(), page.getNextCursor());
+    }
+
+    /**
+     * Convierte los resultados de una consulta por lotes de vistas de coche en resultados con CarResponse.
+     *
+     * @param results Un resultado por cada ID pedido.
+     * @return Los mismos resultados, en el mismo orden, con los coches encontrados convertidos.
+     */
+    public List<LookupResult<CarResponse>> toCarLookupResponse(List<LookupResult<CarView>> results) {
+        return results.stream()
+                .map(result -> new LookupResult<>(result.getId(), result.isFound(),
+                        result.getData() != null ? toCarResponse(result.getData()) : null))
+                .toList();
+    }
+
     /**
      * Convierte un DTO CarRequest a una entidad Car.
      *
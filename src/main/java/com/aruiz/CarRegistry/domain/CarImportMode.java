@@ -0,0 +1,15 @@
+package com.aruiz.CarRegistry.domain;
+
+/**
+ * Modo de una importación masiva de coches.
+ */
+public enum CarImportMode {
+
+    // Cada fila se guarda como un coche nuevo
+    INSERT,
+
+    // Cada fila se empareja por la clave natural: se inserta si es nueva, se actualiza si ha cambiado
+    // y no se escribe si no ha cambiado
+    UPSERT
+
+}
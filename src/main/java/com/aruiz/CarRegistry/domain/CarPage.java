@@ -0,0 +1,20 @@
+package com.aruiz.CarRegistry.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.List;
+
+/**
+ * Página de coches de una consulta paginada por clave, con el ID a partir del cual se pide la siguiente
+ * página, o null si es la última.
+ */
+@Getter
+@AllArgsConstructor
+public class CarPage<T> {
+
+    private final List<T> cars;
+
+    private final Integer nextCursor;
+
+}
@@ -0,0 +1,37 @@
+package com.aruiz.CarRegistry.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * Criterios opcionales de búsqueda de coches. Los campos nulos no se aplican como filtro.
+ */
+@Getter
+@Setter
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class CarSearchCriteria {
+
+    private Integer brandId;
+
+    private String model;
+
+    private Double minPrice;
+
+    private Double maxPrice;
+
+    private Integer minYear;
+
+    private Integer maxYear;
+
+    private String fuelType;
+
+    private String colour;
+
+    private Integer numDoors;
+
+}
@@ -0,0 +1,25 @@
+package com.aruiz.CarRegistry.domain;
+
+/**
+ * Estado de un trabajo de importación de coches en segundo plano.
+ */
+public enum ImportJobStatus {
+
+    // El archivo está guardado y el trabajo espera un hilo libre
+    QUEUED,
+
+    RUNNING,
+
+    COMPLETED,
+
+    // No se ha podido leer el archivo; los bloques ya guardados se conservan
+    FAILED,
+
+    // Cancelado por el usuario; los bloques ya guardados se conservan
+    CANCELLED;
+
+    public boolean isFinished() {
+        return this == COMPLETED || this == FAILED || this == CANCELLED;
+    }
+
+}
@@ -28,6 +28,11 @@ public class BrandEntity {
     @Column(name="country")
     private String country;
 
+    // Versión de la fila; se incrementa en cada actualización y se expone como ETag
+    @Version
+    @Column(name = "version", nullable = false, columnDefinition = "bigint default 0")
+    private Long version;
+
     @OneToMany(mappedBy = "brand")
     private List<CarEntity> car;
 
@@ -11,10 +11,21 @@ import lombok.Setter;
 @Getter
 @Setter
 @Entity
-@Table(name = "car")
+@Table(name = "car", indexes = {
+        // Índices compuestos para la búsqueda por criterios (ver CarSpecifications)
+        @Index(name = "idx_car_brand_price", columnList = "id_brand, price"),
+        @Index(name = "idx_car_brand_year", columnList = "id_brand, year_car"),
+        @Index(name = "idx_car_year_price", columnList = "year_car, price"),
+        @Index(name = "idx_car_fuel_colour_doors", columnList = "fuel_type, colour, num_doors"),
+        // Índices de la clave natural con la que se emparejan las filas en las importaciones en modo upsert
+        @Index(name = "idx_car_natural_key", columnList = "id_brand, model, year_car, colour"),
+        @Index(name = "idx_car_external_ref", columnList = "external_ref")
+})
 public class CarEntity {
     @Id
-    @GeneratedValue
+    // Secuencia con reserva de IDs por bloques para que Hibernate pueda agrupar los INSERT en lotes JDBC
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "car_seq")
+    @SequenceGenerator(name = "car_seq", sequenceName = "car_seq", allocationSize = 50)
     private Integer id;
 
     @ManyToOne
@@ -45,5 +56,14 @@ public class CarEntity {
     @Column(name = "num_doors")
     private Integer num_doors;
 
+    // Referencia del coche en el sistema del concesionario que lo importa
+    @Column(name = "external_ref")
+    private String external_ref;
+
+    // Versión de la fila; se incrementa en cada actualización y se expone como ETag
+    @Version
+    @Column(name = "version", nullable = false, columnDefinition = "bigint default 0")
+    private Long version;
+
 
 }
@@ -2,8 +2,79 @@ package com.aruiz.CarRegistry.repository;
 
 import com.aruiz.CarRegistry.entity.BrandEntity;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
 @Repository
 public interface BrandRepository extends JpaRepository<BrandEntity, Integer> {
+
+    /**
+     * Recupera la versión de una marca sin cargar la entidad.
+     *
+     * @param id ID de la marca.
+     * @return La versión si la marca existe.
+     */
+    @Query("SELECT b.version FROM BrandEntity b WHERE b.id = :id")
+    Optional<Long> findVersionById(@Param("id") Integer id);
+
+    /**
+     * Recupera las vistas de varias marcas con una única consulta IN.
+     *
+     * @param ids IDs de las marcas.
+     * @return Las vistas de las marcas que existen, sin un orden determinado.
+     */
+    @Query("SELECT new com.aruiz.CarRegistry.repository.BrandView(b.id, b.name_brand, b.warranty, b.country) "
+            + "FROM BrandEntity b WHERE b.id IN :ids")
+    List<BrandView> findViewsByIdIn(@Param("ids") Collection<Integer> ids);
+
+    /**
+     * Actualiza solo los campos no nulos de la marca con una única sentencia UPDATE, sin leerla antes,
+     * e incrementa su versión.
+     *
+     * @param id       ID de la marca.
+     * @param name     Nuevo nombre, o null para conservarlo.
+     * @param warranty Nueva garantía, o null para conservarla.
+     * @param country  Nuevo país, o null para conservarlo.
+     * @return Número de filas actualizadas: 0 si la marca no existe.
+     */
+    @Modifying
+    @Query("UPDATE BrandEntity b SET b.name_brand = COALESCE(:name, b.name_brand), "
+            + "b.warranty = COALESCE(:warranty, b.warranty), b.country = COALESCE(:country, b.country), "
+            + "b.version = b.version + 1 WHERE b.id = :id")
+    int patchById(@Param("id") Integer id, @Param("name") String name, @Param("warranty") Integer warranty,
+                  @Param("country") String country);
+
+    /**
+     * Sustituye los datos de la marca con una única sentencia UPDATE, solo si su versión coincide
+     * con la esperada, e incrementa su versión.
+     *
+     * @param id       ID de la marca.
+     * @param name     Nuevo nombre.
+     * @param warranty Nueva garantía.
+     * @param country  Nuevo país.
+     * @param version  Versión esperada, o null para actualizarla sea cual sea su versión.
+     * @return Número de filas actualizadas: 0 si la marca no existe o su versión ha cambiado.
+     */
+    @Modifying
+    @Query("UPDATE BrandEntity b SET b.name_brand = :name, b.warranty = :warranty, b.country = :country, "
+            + "b.version = b.version + 1 WHERE b.id = :id AND (:version IS NULL OR b.version = :version)")
+    int updateById(@Param("id") Integer id, @Param("name") String name, @Param("warranty") Integer warranty,
+                   @Param("country") String country, @Param("version") Long version);
+
+    /**
+     * Elimina una marca con una única sentencia DELETE, solo si su versión coincide con la esperada.
+     *
+     * @param id      ID de la marca.
+     * @param version Versión esperada, o null para eliminarla sea cual sea su versión.
+     * @return Número de filas eliminadas: 0 si la marca no existe o su versión ha cambiado.
+     */
+    @Modifying
+    @Query("DELETE FROM BrandEntity b WHERE b.id = :id AND (:version IS NULL OR b.version = :version)")
+    int deleteByIdAndVersion(@Param("id") Integer id, @Param("version") Long version);
 }
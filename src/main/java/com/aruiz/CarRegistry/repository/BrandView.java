@@ -0,0 +1,19 @@
+package com.aruiz.CarRegistry.repository;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Proyección inmutable de solo lectura de una marca. Se construye directamente desde las consultas
+ * de proyección; el controlador la convierte en BrandResponse.
+ */
+@Getter
+@AllArgsConstructor
+public class BrandView {
+
+    private final Integer id;
+    private final String name_brand;
+    private final Integer warranty;
+    private final String country;
+
+}
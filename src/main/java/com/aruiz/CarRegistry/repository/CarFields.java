@@ -0,0 +1,83 @@
+package com.aruiz.CarRegistry.repository;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Catálogo de los campos de coche que se pueden pedir con el parámetro "fields".
+ * Relaciona el nombre del campo en la respuesta JSON con el atributo de la entidad.
+ */
+public final class CarFields {
+
+    // Campo de la respuesta que contiene la marca del coche
+    public static final String BRAND = "id_brand";
+
+    // Campos del coche: nombre JSON -> atributo de CarEntity
+    static final Map<String, String> CAR_FIELDS = new LinkedHashMap<>();
+
+    // Campos de la marca: nombre JSON -> atributo de BrandEntity
+    static final Map<String, String> BRAND_FIELDS = new LinkedHashMap<>();
+
+    static {
+        CAR_FIELDS.put("id", "id");
+        CAR_FIELDS.put("model", "model");
+        CAR_FIELDS.put("milleage", "milleage");
+        CAR_FIELDS.put("price", "price");
+        CAR_FIELDS.put("year_car", "year_car");
+        CAR_FIELDS.put("description_car", "description_car");
+        CAR_FIELDS.put("colour", "colour");
+        CAR_FIELDS.put("fuel_type", "fuel_type");
+        CAR_FIELDS.put("num_doors", "num_doors");
+
+        BRAND_FIELDS.put("id", "id");
+        BRAND_FIELDS.put("name_brand", "name_brand");
+        BRAND_FIELDS.put("warranty", "warranty");
+        BRAND_FIELDS.put("country", "country");
+    }
+
+    private CarFields() {
+    }
+
+    /**
+     * Interpreta la lista de campos separada por comas. "id_brand" equivale a todos los campos
+     * de la marca y "id_brand.xxx" a un único campo de la marca. El ID del coche se incluye siempre
+     * porque es el cursor de la paginación.
+     *
+     * @param fields Lista de campos, por ejemplo "model,price,id_brand.name_brand".
+     * @return Campos normalizados, sin duplicados y con el ID en primer lugar.
+     * @throws IllegalArgumentException Si algún campo no existe.
+     */
+    public static List<String> parse(String fields) {
+        List<String> selected = new ArrayList<>();
+        selected.add("id");
+
+        for (String field : fields.split(",")) {
+            String name = field.trim();
+
+            if (name.isEmpty()) {
+                continue;
+            }
+
+            if (CAR_FIELDS.containsKey(name)) {
+                addIfAbsent(selected, name);
+            } else if (BRAND.equals(name)) {
+                BRAND_FIELDS.keySet().forEach(brandField -> addIfAbsent(selected, BRAND + "." + brandField));
+            } else if (name.startsWith(BRAND + ".") && BRAND_FIELDS.containsKey(name.substring(BRAND.length() + 1))) {
+                addIfAbsent(selected, name);
+            } else {
+                throw new IllegalArgumentException("Unknown car field: " + name);
+            }
+        }
+
+        return selected;
+    }
+
+    private static void addIfAbsent(List<String> selected, String name) {
+        if (!selected.contains(name)) {
+            selected.add(name);
+        }
+    }
+
+}
@@ -0,0 +1,105 @@
+package com.aruiz.CarRegistry.repository;
+
+import com.aruiz.CarRegistry.entity.CarEntity;
+import jakarta.persistence.criteria.Path;
+import jakarta.persistence.criteria.Predicate;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+
+/**
+ * Clave natural con la que se emparejan las filas importadas con los coches ya guardados,
+ * por ejemplo marca + modelo + año + color + referencia externa.
+ * Los campos que forman la clave son configurables (car.import.natural-key).
+ */
+public final class CarNaturalKey {
+
+    // Campos que pueden formar parte de la clave: nombre -> valor en CarEntity
+    private static final Map<String, Function<CarEntity, Object>> KEY_FIELDS = new LinkedHashMap<>();
+
+    static {
+        KEY_FIELDS.put(CarFields.BRAND, car -> car.getBrand() != null ? car.getBrand().getId() : null);
+        KEY_FIELDS.put("model", CarEntity::getModel);
+        KEY_FIELDS.put("year_car", CarEntity::getYear_car);
+        KEY_FIELDS.put("colour", CarEntity::getColour);
+        KEY_FIELDS.put("fuel_type", CarEntity::getFuel_type);
+        KEY_FIELDS.put("num_doors", CarEntity::getNum_doors);
+        KEY_FIELDS.put("external_ref", CarEntity::getExternal_ref);
+    }
+
+    private final List<String> fields;
+
+    private CarNaturalKey(List<String> fields) {
+        this.fields = fields;
+    }
+
+    /**
+     * Crea la clave natural a partir de la lista de campos.
+     *
+     * @param fields Campos de la clave, por ejemplo [id_brand, model, year_car, colour, external_ref].
+     * @return La clave natural.
+     * @throws IllegalArgumentException Si la lista está vacía o algún campo no puede formar parte de la clave.
+     */
+    public static CarNaturalKey of(List<String> fields) {
+        List<String> normalized = fields.stream().map(String::trim).filter(field -> !field.isEmpty()).distinct().toList();
+
+        if (normalized.isEmpty()) {
+            throw new IllegalArgumentException("The natural key needs at least one field");
+        }
+        for (String field : normalized) {
+            if (!KEY_FIELDS.containsKey(field)) {
+                throw new IllegalArgumentException("Unknown natural key field: " + field);
+            }
+        }
+
+        return new CarNaturalKey(normalized);
+    }
+
+    public List<String> getFields() {
+        return fields;
+    }
+
+    /**
+     * Obtiene el valor de la clave de un coche. Dos coches con la misma clave son el mismo coche.
+     *
+     * @param car Coche.
+     * @return Valores de los campos de la clave, en orden; pueden ser null.
+     */
+    public List<Object> valueOf(CarEntity car) {
+        List<Object> values = new ArrayList<>(fields.size());
+        fields.forEach(field -> values.add(KEY_FIELDS.get(field).apply(car)));
+        return values;
+    }
+
+    /**
+     * Especificación de los coches guardados que pueden tener la misma clave que alguno de los indicados.
+     * Filtra cada campo de la clave por sus valores (IN), por lo que puede devolver algún coche de más;
+     * el emparejamiento exacto se hace después con valueOf.
+     *
+     * @param cars Coches importados.
+     * @return Especificación para buscar los candidatos con una sola consulta.
+     */
+    public Specification<CarEntity> candidatesFor(Collection<CarEntity> cars) {
+        return (root, query, cb) -> {
+            List<Predicate> predicates = new ArrayList<>();
+
+            for (String field : fields) {
+                Path<Object> path = CarFields.BRAND.equals(field) ? root.get("brand").get("id") : root.get(field);
+                List<Object> values = cars.stream().map(KEY_FIELDS.get(field)).distinct().toList();
+                List<Object> nonNull = values.stream().filter(Objects::nonNull).toList();
+
+                Predicate in = nonNull.isEmpty() ? cb.disjunction() : path.in(nonNull);
+                predicates.add(values.size() > nonNull.size() ? cb.or(in, cb.isNull(path)) : in);
+            }
+
+            return cb.and(predicates.toArray(new Predicate[0]));
+        };
+    }
+
+}
@@ -1,9 +1,99 @@
 package com.aruiz.CarRegistry.repository;
 
 import com.aruiz.CarRegistry.entity.CarEntity;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
 @Repository
-public interface CarRepository extends JpaRepository<CarEntity, Integer> {
+public interface CarRepository extends JpaRepository<CarEntity, Integer>, JpaSpecificationExecutor<CarEntity>,
+        CarRepositoryCustom {
+
+    // Proyección de las columnas de CarView con la marca unida en la misma consulta
+    String CAR_VIEW_SELECT = "SELECT new com.aruiz.CarRegistry.repository.CarView(c.id, c.model, c.milleage, "
+            + "c.price, c.year_car, c.description_car, c.colour, c.fuel_type, c.num_doors, "
+            + "b.id, b.name_brand, b.warranty, b.country) FROM CarEntity c JOIN c.brand b";
+
+    /**
+     * Recupera todos los coches junto con su marca en una única consulta.
+     *
+     * @return Lista de coches.
+     */
+    @Override
+    @EntityGraph(attributePaths = "brand")
+    List<CarEntity> findAll();
+
+    /**
+     * Recupera un coche junto con su marca en una única consulta.
+     *
+     * @param id ID del coche.
+     * @return El coche si existe.
+     */
+    @Override
+    @EntityGraph(attributePaths = "brand")
+    Optional<CarEntity> findById(Integer id);
+
+    /**
+     * Recupera los coches que cumplen la especificación junto con su marca en una única consulta.
+     *
+     * @param specification Filtro de los coches.
+     * @return Lista de coches.
+     */
+    @Override
+    @EntityGraph(attributePaths = "brand")
+    List<CarEntity> findAll(Specification<CarEntity> specification);
+
+    /**
+     * Recupera la versión de un coche y la de su marca sin cargar la entidad.
+     * Se usa LEFT JOIN para que un coche sin marca también se encuentre; su brandVersion es null.
+     *
+     * @param id ID del coche.
+     * @return Las versiones si el coche existe.
+     */
+    @Query("SELECT c.version AS carVersion, b.version AS brandVersion FROM CarEntity c LEFT JOIN c.brand b WHERE c.id = :id")
+    Optional<CarVersion> findVersionById(@Param("id") Integer id);
+
+    /**
+     * Recorre todos los coches ordenados por ID mediante un cursor de solo avance.
+     * Las filas se leen del servidor por bloques (fetch size) y se proyectan directamente en CarView,
+     * por lo que debe consumirse dentro de una transacción y cerrarse al terminar.
+     *
+     * @return Stream de vistas de coche.
+     */
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"))
+    @Query(CAR_VIEW_SELECT + " ORDER BY c.id")
+    Stream<CarView> streamViewsBy();
+
+    /**
+     * Recupera las vistas de varios coches con una única consulta IN.
+     *
+     * @param ids IDs de los coches.
+     * @return Las vistas de los coches que existen, sin un orden determinado.
+     */
+    @Query(CAR_VIEW_SELECT + " WHERE c.id IN :ids")
+    List<CarView> findViewsByIdIn(@Param("ids") Collection<Integer> ids);
+
+    /**
+     * Elimina un coche con una única sentencia DELETE, solo si su versión coincide con la esperada.
+     *
+     * @param id      ID del coche.
+     * @param version Versión esperada, o null para eliminarlo sea cual sea su versión.
+     * @return Número de filas eliminadas: 0 si el coche no existe o su versión ha cambiado.
+     */
+    @Modifying
+    @Query("DELETE FROM CarEntity c WHERE c.id = :id AND (:version IS NULL OR c.version = :version)")
+    int deleteByIdAndVersion(@Param("id") Integer id, @Param("version") Long version);
 }
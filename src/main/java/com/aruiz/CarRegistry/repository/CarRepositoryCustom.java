@@ -0,0 +1,26 @@
+package com.aruiz.CarRegistry.repository;
+
+import com.aruiz.CarRegistry.controller.dto.CarPatchRequest;
+import com.aruiz.CarRegistry.controller.dto.CarPriceUpdateRequest;
+import com.aruiz.CarRegistry.entity.CarEntity;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Consultas de CarRepository que se construyen con la API Criteria de JPA.
+ */
+public interface CarRepositoryCustom {
+
+    List<CarView> findViews(Specification<CarEntity> specification, int limit);
+
+    List<Map<String, Object>> findFields(Specification<CarEntity> specification, List<String> fields, int limit);
+
+    int patchById(Integer id, CarPatchRequest patch);
+
+    int updateById(Integer id, CarEntity car, Long expectedVersion);
+
+    int updatePrices(Specification<CarEntity> specification, CarPriceUpdateRequest priceUpdate);
+
+}
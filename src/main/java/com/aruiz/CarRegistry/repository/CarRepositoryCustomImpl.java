@@ -0,0 +1,233 @@
+package com.aruiz.CarRegistry.repository;
+
+import com.aruiz.CarRegistry.controller.dto.CarPatchRequest;
+import com.aruiz.CarRegistry.controller.dto.CarPriceUpdateRequest;
+import com.aruiz.CarRegistry.entity.BrandEntity;
+import com.aruiz.CarRegistry.entity.CarEntity;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.Tuple;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.CriteriaUpdate;
+import jakarta.persistence.criteria.Expression;
+import jakarta.persistence.criteria.Join;
+import jakarta.persistence.criteria.Path;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+import jakarta.persistence.criteria.Selection;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class CarRepositoryCustomImpl implements CarRepositoryCustom {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    /**
+     * Busca los coches que cumplen la especificación seleccionando únicamente las columnas de CarView.
+     * Los resultados se ordenan por ID para permitir la paginación por clave.
+     *
+     * @param specification Filtros de la consulta.
+     * @param limit         Número máximo de resultados.
+     * @return Lista de vistas de coche.
+     */
+    @Override
+    public List<CarView> findViews(Specification<CarEntity> specification, int limit) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<CarView> query = cb.createQuery(CarView.class);
+        Root<CarEntity> car = query.from(CarEntity.class);
+        Join<CarEntity, BrandEntity> brand = car.join("brand");
+
+        query.select(cb.construct(CarView.class,
+                car.get("id"), car.get("model"), car.get("milleage"), car.get("price"), car.get("year_car"),
+                car.get("description_car"), car.get("colour"), car.get("fuel_type"), car.get("num_doors"),
+                brand.get("id"), brand.get("name_brand"), brand.get("warranty"), brand.get("country")));
+
+        Predicate predicate = specification.toPredicate(car, query, cb);
+        if (predicate != null) {
+            query.where(predicate);
+        }
+        query.orderBy(cb.asc(car.get("id")));
+
+        return entityManager.createQuery(query).setMaxResults(limit).getResultList();
+    }
+
+    /**
+     * Busca los coches que cumplen la especificación seleccionando únicamente los campos indicados.
+     * La marca solo se une a la consulta si se pide alguno de sus campos.
+     *
+     * @param specification Filtros de la consulta.
+     * @param fields        Campos a seleccionar, ya validados con CarFields.parse.
+     * @param limit         Número máximo de resultados.
+     * @return Una fila por coche con los campos pedidos; los de la marca se agrupan bajo "id_brand".
+     */
+    @Override
+    public List<Map<String, Object>> findFields(Specification<CarEntity> specification, List<String> fields, int limit) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Tuple> query = cb.createTupleQuery();
+        Root<CarEntity> car = query.from(CarEntity.class);
+        Join<CarEntity, BrandEntity> brand = null;
+
+        List<Selection<?>> selections = new ArrayList<>();
+        for (String field : fields) {
+            if (field.startsWith(CarFields.BRAND + ".")) {
+                if (brand == null) {
+                    brand = car.join("brand");
+                }
+                String brandField = field.substring(CarFields.BRAND.length() + 1);
+                selections.add(brand.get(CarFields.BRAND_FIELDS.get(brandField)).alias(field));
+            } else {
+                selections.add(car.get(CarFields.CAR_FIELDS.get(field)).alias(field));
+            }
+        }
+        query.multiselect(selections);
+
+        Predicate predicate = specification.toPredicate(car, query, cb);
+        if (predicate != null) {
+            query.where(predicate);
+        }
+        query.orderBy(cb.asc(car.get("id")));
+
+        List<Map<String, Object>> rows = new ArrayList<>();
+        for (Tuple tuple : entityManager.createQuery(query).setMaxResults(limit).getResultList()) {
+            Map<String, Object> row = new LinkedHashMap<>();
+
+            for (String field : fields) {
+                if (field.startsWith(CarFields.BRAND + ".")) {
+                    @SuppressWarnings("unchecked")
+                    Map<String, Object> brandRow = (Map<String, Object>) row.computeIfAbsent(CarFields.BRAND,
+                            key -> new LinkedHashMap<String, Object>());
+                    brandRow.put(field.substring(CarFields.BRAND.length() + 1), tuple.get(field));
+                } else {
+                    row.put(field, tuple.get(field));
+                }
+            }
+
+            rows.add(row);
+        }
+
+        return rows;
+    }
+
+    /**
+     * Actualiza solo los campos no nulos del coche con una única sentencia UPDATE, sin leerlo antes,
+     * e incrementa su versión para invalidar los ETag anteriores. Debe ejecutarse dentro de una transacción.
+     *
+     * @param id    ID del coche.
+     * @param patch Campos a modificar.
+     * @return Número de filas actualizadas: 0 si el coche no existe.
+     */
+    @Override
+    public int patchById(Integer id, CarPatchRequest patch) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaUpdate<CarEntity> update = cb.createCriteriaUpdate(CarEntity.class);
+        Root<CarEntity> car = update.from(CarEntity.class);
+
+        if (patch.getIdBrand() != null) {
+            update.set(car.<BrandEntity>get("brand"), entityManager.getReference(BrandEntity.class, patch.getIdBrand()));
+        }
+        setIfPresent(update, car, "model", patch.getModel());
+        setIfPresent(update, car, "milleage", patch.getMilleage());
+        setIfPresent(update, car, "price", patch.getPrice());
+        setIfPresent(update, car, "year_car", patch.getYear_car());
+        setIfPresent(update, car, "description_car", patch.getDescription());
+        setIfPresent(update, car, "colour", patch.getColour());
+        setIfPresent(update, car, "fuel_type", patch.getFuel_type());
+        setIfPresent(update, car, "num_doors", patch.getNum_doors());
+
+        Path<Long> version = car.get("version");
+        update.set(version, cb.sum(version, 1L));
+        update.where(cb.equal(car.get("id"), id));
+
+        return entityManager.createQuery(update).executeUpdate();
+    }
+
+    /**
+     * Sustituye todos los datos del coche con una única sentencia UPDATE, solo si su versión coincide
+     * con la esperada, e incrementa su versión. Debe ejecutarse dentro de una transacción.
+     *
+     * @param id              ID del coche.
+     * @param car             Nuevos datos del coche; de la marca solo se usa el ID.
+     * @param expectedVersion Versión esperada, o null para actualizarlo sea cual sea su versión.
+     * @return Número de filas actualizadas: 0 si el coche no existe o su versión ha cambiado.
+     */
+    @Override
+    public int updateById(Integer id, CarEntity car, Long expectedVersion) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaUpdate<CarEntity> update = cb.createCriteriaUpdate(CarEntity.class);
+        Root<CarEntity> root = update.from(CarEntity.class);
+
+        Integer brandId = car.getBrand() != null ? car.getBrand().getId() : null;
+        setValue(update, root, "brand", brandId != null ? entityManager.getReference(BrandEntity.class, brandId) : null);
+        setValue(update, root, "model", car.getModel());
+        setValue(update, root, "milleage", car.getMilleage());
+        setValue(update, root, "price", car.getPrice());
+        setValue(update, root, "year_car", car.getYear_car());
+        setValue(update, root, "description_car", car.getDescription_car());
+        setValue(update, root, "colour", car.getColour());
+        setValue(update, root, "fuel_type", car.getFuel_type());
+        setValue(update, root, "num_doors", car.getNum_doors());
+
+        Path<Long> version = root.get("version");
+        update.set(version, cb.sum(version, 1L));
+
+        Predicate byId = cb.equal(root.get("id"), id);
+        update.where(expectedVersion != null ? cb.and(byId, cb.equal(version, expectedVersion)) : byId);
+
+        return entityManager.createQuery(update).executeUpdate();
+    }
+
+    /**
+     * Cambia el precio de todos los coches que cumplen la especificación con una única sentencia UPDATE
+     * e incrementa su versión. Debe ejecutarse dentro de una transacción.
+     *
+     * @param specification Filtro de los coches a modificar.
+     * @param priceUpdate   Precio nuevo, o porcentaje de ajuste redondeado a dos decimales.
+     * @return Número de coches modificados.
+     */
+    @Override
+    public int updatePrices(Specification<CarEntity> specification, CarPriceUpdateRequest priceUpdate) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaUpdate<CarEntity> update = cb.createCriteriaUpdate(CarEntity.class);
+        Root<CarEntity> car = update.from(CarEntity.class);
+
+        Path<Double> price = car.get("price");
+        if (priceUpdate.getPrice() != null) {
+            update.set(price, priceUpdate.getPrice());
+        } else {
+            Expression<Double> adjusted = cb.prod(price, 1 + priceUpdate.getPercent() / 100);
+            update.set(price, cb.function("ROUND", Double.class, adjusted, cb.literal(2)));
+        }
+
+        Path<Long> version = car.get("version");
+        update.set(version, cb.sum(version, 1L));
+
+        Predicate predicate = specification.toPredicate(car, null, cb);
+        if (predicate != null) {
+            update.where(predicate);
+        }
+
+        return entityManager.createQuery(update).executeUpdate();
+    }
+
+    private <T> void setValue(CriteriaUpdate<CarEntity> update, Root<CarEntity> car, String attribute, T value) {
+        Path<T> path = car.get(attribute);
+        if (value != null) {
+            update.set(path, value);
+        } else {
+            update.set(path, entityManager.getCriteriaBuilder().nullLiteral(path.getJavaType()));
+        }
+    }
+
+    private <T> void setIfPresent(CriteriaUpdate<CarEntity> update, Root<CarEntity> car, String attribute, T value) {
+        if (value != null) {
+            update.set(car.get(attribute), value);
+        }
+    }
+
+}
@@ -0,0 +1,77 @@
+package com.aruiz.CarRegistry.repository;
+
+import com.aruiz.CarRegistry.domain.CarSearchCriteria;
+import com.aruiz.CarRegistry.entity.CarEntity;
+import jakarta.persistence.criteria.Predicate;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Especificaciones JPA para construir las consultas de búsqueda de coches.
+ * Solo se añaden a la cláusula WHERE los criterios informados, de modo que la consulta
+ * generada pueda apoyarse en los índices compuestos definidos en la tabla car.
+ */
+public final class CarSpecifications {
+
+    private CarSpecifications() {
+    }
+
+    /**
+     * Construye la especificación de búsqueda a partir de los criterios indicados.
+     *
+     * @param criteria Criterios de búsqueda; los campos nulos se ignoran.
+     * @param after    ID del último coche de la página anterior (paginación por clave), o null.
+     * @return Especificación que combina todos los criterios con AND.
+     */
+    public static Specification<CarEntity> matching(CarSearchCriteria criteria, Integer after) {
+        return (root, query, cb) -> {
+            List<Predicate> predicates = new ArrayList<>();
+
+            if (after != null) {
+                predicates.add(cb.greaterThan(root.get("id"), after));
+            }
+            if (criteria.getBrandId() != null) {
+                predicates.add(cb.equal(root.get("brand").get("id"), criteria.getBrandId()));
+            }
+            if (criteria.getModel() != null) {
+                predicates.add(cb.equal(root.get("model"), criteria.getModel()));
+            }
+            if (criteria.getMinPrice() != null) {
+                predicates.add(cb.greaterThanOrEqualTo(root.get("price"), criteria.getMinPrice()));
+            }
+            if (criteria.getMaxPrice() != null) {
+                predicates.add(cb.lessThanOrEqualTo(root.get("price"), criteria.getMaxPrice()));
+            }
+            if (criteria.getMinYear() != null) {
+                predicates.add(cb.greaterThanOrEqualTo(root.get("year_car"), criteria.getMinYear()));
+            }
+            if (criteria.getMaxYear() != null) {
+                predicates.add(cb.lessThanOrEqualTo(root.get("year_car"), criteria.getMaxYear()));
+            }
+            if (criteria.getFuelType() != null) {
+                predicates.add(cb.equal(root.get("fuel_type"), criteria.getFuelType()));
+            }
+            if (criteria.getColour() != null) {
+                predicates.add(cb.equal(root.get("colour"), criteria.getColour()));
+            }
+            if (criteria.getNumDoors() != null) {
+                predicates.add(cb.equal(root.get("num_doors"), criteria.getNumDoors()));
+            }
+
+            return cb.and(predicates.toArray(new Predicate[0]));
+        };
+    }
+
+    /**
+     * Especificación de un único coche por su ID.
+     *
+     * @param id ID del coche.
+     * @return Especificación que filtra por el ID.
+     */
+    public static Specification<CarEntity> hasId(Integer id) {
+        return (root, query, cb) -> cb.equal(root.get("id"), id);
+    }
+
+}
@@ -0,0 +1,13 @@
+package com.aruiz.CarRegistry.repository;
+
+/**
+ * Proyección con la versión de un coche y la de su marca, utilizada para calcular su ETag
+ * sin cargar la entidad.
+ */
+public interface CarVersion {
+
+    Long getCarVersion();
+
+    Long getBrandVersion();
+
+}
@@ -0,0 +1,42 @@
+package com.aruiz.CarRegistry.repository;
+
+import lombok.Getter;
+
+/**
+ * Proyección inmutable de solo lectura de un coche. Las consultas de proyección de CarRepository
+ * seleccionan exactamente estas columnas y construyen el objeto directamente, sin pasar por
+ * CarEntity ni Car. El controlador la convierte en CarResponse.
+ */
+@Getter
+public class CarView {
+
+    private final Integer id;
+    private final BrandView brand;
+    private final String model;
+    private final Integer milleage;
+    private final Double price;
+    private final Integer year;
+    private final String description;
+    private final String colour;
+    private final String fuelType;
+    private final Integer numDoors;
+
+    /**
+     * Constructor utilizado por las expresiones "SELECT new" con las columnas del coche y de su marca.
+     */
+    public CarView(Integer id, String model, Integer milleage, Double price, Integer year, String description,
+                   String colour, String fuelType, Integer numDoors,
+                   Integer brandId, String brandName, Integer brandWarranty, String brandCountry) {
+        this.id = id;
+        this.brand = new BrandView(brandId, brandName, brandWarranty, brandCountry);
+        this.model = model;
+        this.milleage = milleage;
+        this.price = price;
+        this.year = year;
+        this.description = description;
+        this.colour = colour;
+        this.fuelType = fuelType;
+        this.numDoors = numDoors;
+    }
+
+}
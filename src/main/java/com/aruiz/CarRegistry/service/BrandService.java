@@ -2,7 +2,9 @@ package com.aruiz.CarRegistry.service;
 
 
 import com.aruiz.CarRegistry.controller.dto.BrandRequest;
+import com.aruiz.CarRegistry.controller.dto.LookupResult;
 import com.aruiz.CarRegistry.domain.Brand;
+import com.aruiz.CarRegistry.repository.BrandView;
 import org.springframework.stereotype.Service;
 
 import java.util.List;
@@ -18,8 +20,14 @@ public interface BrandService {
 
     public Brand findById(Integer id) throws Exception;
 
-    public boolean delete(Integer id) throws Exception;
+    public String findETagById(Integer id);
 
-    public Brand updateBrand(Integer id, Brand brandRequest) throws Exception;
+    public CompletableFuture<List<LookupResult<BrandView>>> findByIds(List<Integer> ids);
+
+    public boolean delete(Integer id, Long expectedVersion) throws Exception;
+
+    public Brand updateBrand(Integer id, Brand brandRequest, Long expectedVersion) throws Exception;
+
+    public boolean patchBrand(Integer id, BrandRequest patch);
 
 }
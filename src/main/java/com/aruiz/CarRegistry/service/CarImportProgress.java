@@ -0,0 +1,37 @@
+package com.aruiz.CarRegistry.service;
+
+import com.aruiz.CarRegistry.controller.dto.BulkImportReport;
+import com.aruiz.CarRegistry.controller.dto.RowError;
+
+/**
+ * Seguimiento de una importación de coches: recibe el informe después de cada bloque guardado,
+ * cada fila rechazada con sus valores, e indica si hay que cancelar la importación.
+ */
+public interface CarImportProgress {
+
+    // Importación sin seguimiento que no se puede cancelar
+    CarImportProgress NONE = new CarImportProgress() {
+    };
+
+    /**
+     * Se llama en el hilo de la importación después de guardar cada bloque.
+     *
+     * @param report Informe acumulado de la importación; solo se debe leer durante la llamada.
+     */
+    default void batchWritten(BulkImportReport report) {
+    }
+
+    /**
+     * Se llama en el hilo de la importación por cada fila rechazada. El informe solo guarda una muestra
+     * de las filas rechazadas; aquí se reciben todas, por ejemplo para escribirlas en un archivo.
+     *
+     * @param error Fila rechazada, con el motivo y los valores de la fila.
+     */
+    default void rowRejected(RowError error) {
+    }
+
+    default boolean isCancelled() {
+        return false;
+    }
+
+}
@@ -0,0 +1,20 @@
+package com.aruiz.CarRegistry.service;
+
+import com.aruiz.CarRegistry.controller.dto.BulkImportReport;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.nio.file.Path;
+
+/**
+ * Resultado de una importación de coches con el CSV de todas las filas rechazadas.
+ * El archivo es temporal y quien recibe el resultado debe borrarlo cuando ya no lo necesite.
+ */
+@Getter
+@AllArgsConstructor
+public class CarImportResult {
+
+    private final BulkImportReport report;
+    private final Path rejectedRowsFile;
+
+}
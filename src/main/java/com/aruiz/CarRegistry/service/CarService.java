@@ -1,32 +1,70 @@
 package com.aruiz.CarRegistry.service;
 
+import com.aruiz.CarRegistry.controller.dto.BulkImportReport;
+import com.aruiz.CarRegistry.controller.dto.CarPatchRequest;
+import com.aruiz.CarRegistry.controller.dto.CarPriceUpdateRequest;
 import com.aruiz.CarRegistry.controller.dto.CarRequest;
+import com.aruiz.CarRegistry.controller.dto.LookupResult;
 import com.aruiz.CarRegistry.domain.Car;
-import com.aruiz.CarRegistry.entity.CarEntity;
+import com.aruiz.CarRegistry.domain.CarImportMode;
+import com.aruiz.CarRegistry.domain.CarPage;
+import com.aruiz.CarRegistry.domain.CarSearchCriteria;
+import com.aruiz.CarRegistry.repository.CarView;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
 @Service
 public interface CarService {
 
     Car save(Car carRequest) throws Exception;
 
-    CompletableFuture<List<Car>> saveAll(List<CarRequest> carRequestsList) throws Exception;
+    CompletableFuture<BulkImportReport> saveAll(List<CarRequest> carRequestsList) throws Exception;
 
     CompletableFuture<List<Car>>findAll() throws Exception;
 
+    CompletableFuture<CarPage<CarView>> findPage(Integer after, Integer limit) throws Exception;
+
+    CompletableFuture<CarPage<CarView>> search(CarSearchCriteria criteria, Integer after, Integer limit) throws Exception;
+
+    CompletableFuture<CarPage<Map<String, Object>>> searchFields(CarSearchCriteria criteria, Integer after,
+                                                                        Integer limit, String fields) throws Exception;
+
+    void streamAll(Consumer<CarView> consumer);
+
+    void streamFields(String fields, Consumer<Map<String, Object>> consumer);
+
+    Map<String, Object> findFieldsById(Integer id, String fields);
+
     Car findById(Integer id) throws Exception;
 
-    String deleteById(Integer id) throws Exception;
+    String findETagById(Integer id);
+
+    CompletableFuture<List<LookupResult<CarView>>> findByIds(List<Integer> ids);
+
+    String deleteById(Integer id, Long expectedVersion) throws Exception;
+
+    Car updateById(Integer id, Car carRequest, Long expectedVersion) throws Exception;
+
+    boolean patchById(Integer id, CarPatchRequest patch);
+
+    long updatePrices(CarSearchCriteria criteria, CarPriceUpdateRequest priceUpdate);
+
+    long deleteMatching(CarSearchCriteria criteria);
+
+    BulkImportReport uploadCars(MultipartFile file, CarImportMode mode);
 
-    Car updateById(Integer id, Car carRequest) throws Exception;
+    CarImportResult uploadCarsWithRejectedRows(MultipartFile file, CarImportMode mode) throws IOException;
 
-    List<CarEntity> uploadCars(MultipartFile file);
+    BulkImportReport importCars(InputStream input, CarImportMode mode, CarImportProgress progress) throws IOException;
 
-    String carsDownloadCsv();
+    void carsDownloadCsv(Writer writer) throws IOException;
 
 }
@@ -0,0 +1,108 @@
+package com.aruiz.CarRegistry.service.concurrent;
+
+import com.aruiz.CarRegistry.controller.dto.AsyncQueueStatsResponse;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Ejecutor de las tareas asíncronas con control de admisión.
+ * Mide la duración media de las tareas y, antes de aceptar una petición que encola trabajo,
+ * comprueba cuántas tareas esperan y cuánto tardarían en empezar. Si se supera el límite la petición
+ * se rechaza al momento con 429 en lugar de quedarse esperando en la cola sin límite de tiempo.
+ */
+public class AdmissionControlledExecutor extends ThreadPoolTaskExecutor {
+
+    // Peso de la última tarea en la media móvil de la duración de las tareas
+    private static final double SMOOTHING = 0.2;
+
+    private final int maxQueueDepth;
+
+    private final long maxWaitMillis;
+
+    private final AtomicLong completedTasks = new AtomicLong();
+
+    private final AtomicLong rejectedRequests = new AtomicLong();
+
+    // Duración media de las tareas en milisegundos; -1 hasta que termina la primera
+    private volatile double avgTaskMillis = -1;
+
+    /**
+     * @param maxQueueDepth Número de tareas en cola a partir del cual se rechazan las peticiones.
+     * @param maxWaitMillis Espera estimada máxima, en milisegundos, hasta que empiece una tarea nueva.
+     */
+    public AdmissionControlledExecutor(int maxQueueDepth, long maxWaitMillis) {
+        this.maxQueueDepth = maxQueueDepth;
+        this.maxWaitMillis = maxWaitMillis;
+        setTaskDecorator(this::timed);
+    }
+
+    /**
+     * Comprueba si se puede aceptar una petición que va a encolar trabajo.
+     *
+     * @throws TooManyRequestsException Si la cola supera maxQueueDepth o la espera estimada supera maxWaitMillis.
+     */
+    public void admit() {
+        int queueDepth = getQueueSize();
+        long estimatedWait = estimatedWaitMillis();
+
+        if (queueDepth >= maxQueueDepth || estimatedWait > maxWaitMillis) {
+            throw rejected();
+        }
+    }
+
+    /**
+     * Cuenta una petición rechazada y crea el error 429 con la espera estimada como Retry-After.
+     * También se usa cuando la cola llena rechaza una tarea de una petición que no ha pasado por admit().
+     *
+     * @return El error con el que se responde a la petición.
+     */
+    public TooManyRequestsException rejected() {
+        rejectedRequests.incrementAndGet();
+        long retryAfterSeconds = Math.max(1, (long) Math.ceil(estimatedWaitMillis() / 1000.0));
+        return new TooManyRequestsException("Too many pending requests, retry later", retryAfterSeconds);
+    }
+
+    /**
+     * Estima el tiempo que tardaría en empezar una tarea nueva: las tareas en cola se reparten
+     * entre los hilos del ejecutor y cada una dura de media avgTaskMillis.
+     *
+     * @return Espera estimada en milisegundos; 0 si todavía no ha terminado ninguna tarea.
+     */
+    public long estimatedWaitMillis() {
+        double avg = avgTaskMillis;
+        if (avg < 0) {
+            return 0;
+        }
+        return Math.round(getQueueSize() * avg / Math.max(1, getCorePoolSize()));
+    }
+
+    /**
+     * Obtiene el estado actual de la cola de tareas asíncronas.
+     *
+     * @return Estadísticas de la cola.
+     */
+    public AsyncQueueStatsResponse getStats() {
+        return new AsyncQueueStatsResponse(getPoolSize(), getActiveCount(), getQueueSize(), getQueueCapacity(),
+                maxQueueDepth, Math.max(0, avgTaskMillis), estimatedWaitMillis(), completedTasks.get(),
+                rejectedRequests.get());
+    }
+
+    private Runnable timed(Runnable task) {
+        return () -> {
+            long start = System.nanoTime();
+            try {
+                task.run();
+            } finally {
+                record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            }
+        };
+    }
+
+    private synchronized void record(long millis) {
+        avgTaskMillis = avgTaskMillis < 0 ? millis : avgTaskMillis + SMOOTHING * (millis - avgTaskMillis);
+        completedTasks.incrementAndGet();
+    }
+
+}
@@ -0,0 +1,75 @@
+package com.aruiz.CarRegistry.service.concurrent;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Agrupa las cargas concurrentes de una misma clave: mientras hay una carga en curso para una clave,
+ * el resto de llamadas con esa clave esperan a su resultado en lugar de repetirla.
+ * No guarda nada una vez terminada la carga, por lo que puede usarse sola o detrás de una caché
+ * para evitar que varios fallos simultáneos de la misma clave lleguen todos a la base de datos.
+ *
+ * @param <K> Tipo de la clave.
+ * @param <V> Tipo del valor cargado.
+ */
+public class SingleFlight<K, V> {
+
+    // Cargas en curso por clave
+    private final ConcurrentHashMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * Ejecuta la carga de la clave, o espera a la que ya esté en curso para esa misma clave.
+     * Si la carga falla, todas las llamadas que la esperaban reciben la misma excepción.
+     *
+     * @param key    Clave a cargar.
+     * @param loader Función que carga el valor.
+     * @return El valor cargado, que puede ser null.
+     * @throws Exception La excepción lanzada por la carga.
+     */
+    public V execute(K key, Callable<V> loader) throws Exception {
+        CompletableFuture<V> flight = new CompletableFuture<>();
+        CompletableFuture<V> current = inFlight.putIfAbsent(key, flight);
+
+        if (current != null) {
+            return await(current);
+        }
+
+        try {
+            V value = loader.call();
+            flight.complete(value);
+            return value;
+        } catch (Throwable e) {
+            flight.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, flight);
+        }
+    }
+
+    /**
+     * Número de claves con una carga en curso.
+     *
+     * @return Número de cargas en curso.
+     */
+    public int inFlightCount() {
+        return inFlight.size();
+    }
+
+    private V await(CompletableFuture<V> flight) throws Exception {
+        try {
+            return flight.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception exception) {
+                throw exception;
+            }
+            if (cause instanceof Error error) {
+                throw error;
+            }
+            throw e;
+        }
+    }
+
+}
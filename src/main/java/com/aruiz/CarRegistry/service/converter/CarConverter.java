@@ -3,6 +3,7 @@ package com.aruiz.CarRegistry.service.converter;
 import com.aruiz.CarRegistry.controller.dto.CarRequest;
 import com.aruiz.CarRegistry.domain.Brand;
 import com.aruiz.CarRegistry.domain.Car;
+import com.aruiz.CarRegistry.entity.BrandEntity;
 import com.aruiz.CarRegistry.entity.CarEntity;
 import com.aruiz.CarRegistry.service.BrandService;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -75,6 +76,26 @@ public class CarConverter {
      * @return objeto CarEntity
      */
     public CarEntity toCarEntity(CarRequest car) {
+        try {
+            Optional<Brand> optionalBrandEntity = Optional.ofNullable(brandService.findById(car.getIdBrand()));
+
+            // Usa brandConverter para convertir y asignar la marca
+            return toCarEntity(car, optionalBrandEntity.map(brandConverter::toBrandEntity).orElse(null));
+
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+
+    }
+
+    /**
+     * Convierte un objeto dto CarRequest a una entidad CarEntity con una marca ya cargada.
+     * Se usa en las importaciones masivas, que resuelven todas las marcas del lote con una sola consulta.
+     * @param car objeto dto
+     * @param brand marca del coche
+     * @return objeto CarEntity
+     */
+    public CarEntity toCarEntity(CarRequest car, BrandEntity brand) {
         CarEntity carEntity = new CarEntity();
 
         // Configura las propiedades de la entidad usando el objeto de dominio
@@ -87,19 +108,7 @@ public class CarConverter {
         carEntity.setColour(car.getColour());
         carEntity.setFuel_type(car.getFuel_type());
         carEntity.setNum_doors(car.getNum_doors());
-
-        try {
-            Optional<Brand> optionalBrandEntity = Optional.ofNullable(brandService.findById(car.getIdBrand()));
-
-            if (optionalBrandEntity.isPresent()) {
-                Brand brand = optionalBrandEntity.get();
-                // Usa brandConverter para convertir y asignar la marca
-                carEntity.setBrand(brandConverter.toBrandEntity(brand));
-            }
-
-        } catch (Exception e) {
-            throw new RuntimeException(e);
-        }
+        carEntity.setBrand(brand);
 
         return carEntity;
 
@@ -1,16 +1,23 @@
 package com.aruiz.CarRegistry.service.impl;
 
 
+import com.aruiz.CarRegistry.config.CacheConfig;
 import com.aruiz.CarRegistry.controller.dto.BrandRequest;
+import com.aruiz.CarRegistry.controller.dto.LookupResult;
 import com.aruiz.CarRegistry.domain.Brand;
 import com.aruiz.CarRegistry.entity.BrandEntity;
 import com.aruiz.CarRegistry.repository.BrandRepository;
+import com.aruiz.CarRegistry.repository.BrandView;
 import com.aruiz.CarRegistry.service.BrandService;
+import com.aruiz.CarRegistry.service.concurrent.SingleFlight;
 import com.aruiz.CarRegistry.service.converter.BrandConverter;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -27,6 +34,9 @@ public class BrandServiceImpl implements BrandService {
     @Autowired
     private BrandConverter brandConverter;
 
+    // Agrupa las búsquedas simultáneas de la misma marca en una sola consulta
+    private final SingleFlight<Integer, Brand> findByIdFlight = new SingleFlight<>();
+
 
     /**
      * Método para guardar una nueva marca
@@ -115,68 +125,120 @@ public class BrandServiceImpl implements BrandService {
      */
     @Override
     public Brand findById(Integer id) throws Exception {
-        // Busca la entidad de marca correspondiente al ID proporcionado en el repositorio
-        Optional<BrandEntity> optionalBrand = brandRepository.findById(id);
+        // Las peticiones simultáneas del mismo ID comparten una única consulta
+        return findByIdFlight.execute(id, () -> {
+            // Busca la entidad de marca correspondiente al ID proporcionado en el repositorio
+            Optional<BrandEntity> optionalBrand = brandRepository.findById(id);
 
-        if (optionalBrand.isPresent()) {
-            log.info("optionalBrand -> " + optionalBrand);
-            // Convierte la entidad en un objeto de dominio y lo devuelve
-            return brandConverter.toBrand(optionalBrand.get());
-        }
+            if (optionalBrand.isPresent()) {
+                log.info("optionalBrand -> " + optionalBrand);
+                // Convierte la entidad en un objeto de dominio y lo devuelve
+                return brandConverter.toBrand(optionalBrand.get());
+            }
 
-        return null;
+            return null;
+        });
 
     }
 
     /**
-     * Método para eliminar una marca por ID
+     * Método para obtener el ETag de una marca a partir de su versión, sin cargar la entidad
      * @param id
-     * @return
-     * @throws Exception
+     * @return El ETag de la marca, o null si no existe
+     */
+    @Override
+    public String findETagById(Integer id) {
+        return brandRepository.findVersionById(id).map(String::valueOf).orElse(null);
+    }
+
+    /**
+     * Método para buscar varias marcas por ID con una única consulta de modo asíncrono
+     * @param ids IDs de las marcas, como máximo IdLookups.MAX_IDS
+     * @return Un resultado por cada ID, en el orden de la petición, indicando si la marca existe
+     * @throws IllegalArgumentException Si la lista de IDs no es válida
      */
     @Override
-    public boolean delete(Integer id) throws Exception {
-        // Busca la entidad de marca correspondiente al ID proporcionado en el repositorio
-        Optional<BrandEntity> optionalBrand = brandRepository.findById(id);
+    @Async
+    public CompletableFuture<List<LookupResult<BrandView>>> findByIds(List<Integer> ids) {
+        List<BrandView> brands = brandRepository.findViewsByIdIn(IdLookups.distinctIds(ids));
 
-        // Verifica si la entidad de marca está presente
-        if (optionalBrand.isPresent()) {
-            // Elimina la entidad de marca del repositorio
-            brandRepository.deleteById(id);
+        return CompletableFuture.completedFuture(IdLookups.inRequestOrder(ids, brands, BrandView::getId));
+    }
 
+    /**
+     * Método para eliminar una marca por ID con una única sentencia DELETE que comprueba a la vez su versión.
+     * Vacía la caché de coches, ya que cada coche cacheado incluye los datos de su marca.
+     * @param id
+     * @param expectedVersion La versión que el cliente leyó, o null para eliminarla sea cual sea su versión
+     * @return true si la marca se ha eliminado, false si no existe
+     * @throws OptimisticLockingFailureException Si la marca existe pero su versión ha cambiado
+     */
+    @Override
+    @Transactional
+    @CacheEvict(value = CacheConfig.CARS_CACHE, allEntries = true)
+    public boolean delete(Integer id, Long expectedVersion) throws Exception {
+        // Comprueba la versión y elimina la marca en la misma sentencia, sin leerla antes
+        if (brandRepository.deleteByIdAndVersion(id, expectedVersion) > 0) {
             return true;
         }
 
+        checkVersionConflict(id, expectedVersion);
         return false;
 
     }
 
     /**
-     * Método para actualizar una marca por ID
+     * Método para actualizar una marca por ID con una única sentencia UPDATE que comprueba a la vez su versión.
+     * Vacía la caché de coches, ya que cada coche cacheado incluye los datos de su marca.
      * @param id
      * @param brandRequest
-     * @return
-     * @throws Exception
+     * @param expectedVersion La versión que el cliente leyó, o null para actualizarla sea cual sea su versión
+     * @return La marca actualizada, o null si no existe
+     * @throws OptimisticLockingFailureException Si la marca existe pero su versión ha cambiado
      */
     @Override
-    public Brand updateBrand(Integer id, Brand brandRequest) throws Exception {
-        log.info("Updating brand with id {}" + id);
-
-        // Busca la marca por ID en el repositorio
-        Optional<BrandEntity> optionalBrand = brandRepository.findById(id);
+    @Transactional
+    @CacheEvict(value = CacheConfig.CARS_CACHE, allEntries = true)
+    public Brand updateBrand(Integer id, Brand brandRequest, Long expectedVersion) throws Exception {
+        log.info("Updating brand with id {}", id);
+
+        // Comprueba la versión y actualiza la marca en la misma sentencia, sin leerla antes
+        int updated = brandRepository.updateById(id, brandRequest.getName_brand(), brandRequest.getWarranty(),
+                brandRequest.getCountry(), expectedVersion);
+
+        if (updated > 0) {
+            brandRequest.setId(id);
+            return brandRequest;
+        }
 
-        if (optionalBrand.isPresent()) {
-            // Convierte el objeto de dominio en una entidad y lo guarda en el repositorio
-            BrandEntity brandEntity = brandConverter.toBrandEntity(brandRequest);
-            // Establece el ID proporcionado al objeto de entidad antes de guardarlo
-            brandEntity.setId(id);
+        checkVersionConflict(id, expectedVersion);
+        return null;
 
-            return brandConverter.toBrand(brandRepository.save(brandEntity));
+    }
 
+    /**
+     * Método para distinguir, cuando una escritura condicional no ha modificado ninguna fila, si la marca
+     * no existe o si otra petición ha cambiado su versión. Solo se consulta en ese caso.
+     * @throws OptimisticLockingFailureException Si se esperaba una versión y la marca existe
+     */
+    private void checkVersionConflict(Integer id, Long expectedVersion) {
+        if (expectedVersion != null && brandRepository.existsById(id)) {
+            throw new OptimisticLockingFailureException("Brand with ID " + id + " has been modified by another request");
         }
+    }
 
-        return null;
-
+    /**
+     * Método para actualizar solo los campos indicados de una marca con una única sentencia UPDATE.
+     * Vacía la caché de coches, ya que cada coche cacheado incluye los datos de su marca.
+     * @param id
+     * @param patch Los campos a modificar; los campos null se conservan
+     * @return true si la marca existe y se ha actualizado, false si no se encuentra
+     */
+    @Override
+    @Transactional
+    @CacheEvict(value = CacheConfig.CARS_CACHE, allEntries = true)
+    public boolean patchBrand(Integer id, BrandRequest patch) {
+        return brandRepository.patchById(id, patch.getName_brand(), patch.getWarranty(), patch.getCountry()) > 0;
     }
 
 
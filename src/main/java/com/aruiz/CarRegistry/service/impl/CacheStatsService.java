@@ -0,0 +1,49 @@
+package com.aruiz.CarRegistry.service.impl;
+
+import com.aruiz.CarRegistry.controller.dto.CacheStatsResponse;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import lombok.RequiredArgsConstructor;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.caffeine.CaffeineCache;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Servicio que expone las estadísticas de las cachés de la aplicación.
+ */
+@Service
+@RequiredArgsConstructor
+public class CacheStatsService {
+
+    private final CacheManager cacheManager;
+
+    /**
+     * Obtiene los contadores de aciertos, fallos y desalojos de cada caché.
+     *
+     * @return Lista con las estadísticas de cada caché.
+     */
+    public List<CacheStatsResponse> getStats() {
+        List<CacheStatsResponse> stats = new ArrayList<>();
+
+        for (String name : cacheManager.getCacheNames()) {
+            Cache cache = cacheManager.getCache(name);
+
+            if (cache instanceof CaffeineCache caffeineCache) {
+                CacheStats cacheStats = caffeineCache.getNativeCache().stats();
+
+                stats.add(new CacheStatsResponse(name,
+                        caffeineCache.getNativeCache().estimatedSize(),
+                        cacheStats.hitCount(),
+                        cacheStats.missCount(),
+                        cacheStats.evictionCount(),
+                        cacheStats.hitRate()));
+            }
+        }
+
+        return stats;
+    }
+
+}
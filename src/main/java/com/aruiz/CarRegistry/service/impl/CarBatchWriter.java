@@ -0,0 +1,239 @@
+package com.aruiz.CarRegistry.service.impl;
+
+import com.aruiz.CarRegistry.controller.dto.BulkImportReport;
+import com.aruiz.CarRegistry.controller.dto.RowError;
+import com.aruiz.CarRegistry.entity.CarEntity;
+import com.aruiz.CarRegistry.repository.CarNaturalKey;
+import com.aruiz.CarRegistry.repository.CarRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Guarda los coches de una importación masiva por bloques, cada uno en su propia transacción.
+ * Si un bloque falla se reintenta fila a fila para guardar las filas válidas e informar de las que no lo son.
+ * En modo upsert las filas se emparejan por la clave natural con los coches ya guardados.
+ */
+@Slf4j
+@Component
+public class CarBatchWriter {
+
+    @Autowired
+    private CarRepository carRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    // Número de coches que se guardan en cada transacción
+    @Value("${car.import.chunk-size:500}")
+    int chunkSize;
+
+    // Clave natural con la que se emparejan las filas en las importaciones en modo upsert
+    CarNaturalKey naturalKey;
+
+    @Value("${car.import.natural-key:id_brand,model,year_car,colour,external_ref}")
+    void setNaturalKey(String[] fields) {
+        this.naturalKey = CarNaturalKey.of(List.of(fields));
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    /**
+     * Guarda los coches por bloques de chunkSize.
+     *
+     * @param rows   Coches a guardar por número de fila, en el orden de la importación.
+     * @param report Informe en el que se añaden los IDs guardados y las filas rechazadas.
+     */
+    public void write(Map<Long, CarEntity> rows, BulkImportReport report) {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        List<Map.Entry<Long, CarEntity>> entries = new ArrayList<>(rows.entrySet());
+
+        for (int start = 0; start < entries.size(); start += chunkSize) {
+            List<Map.Entry<Long, CarEntity>> chunk = entries.subList(start, Math.min(start + chunkSize, entries.size()));
+            List<CarEntity> cars = chunk.stream().map(Map.Entry::getValue).toList();
+
+            try {
+                List<CarEntity> saved = transactionTemplate.execute(status -> carRepository.saveAll(cars));
+                saved.forEach(car -> report.addAccepted(car.getId()));
+            } catch (RuntimeException e) {
+                log.warn("Chunk starting at row {} failed, retrying row by row: {}", chunk.get(0).getKey(), e.getMessage());
+                writeRowByRow(chunk, transactionTemplate, report);
+            }
+        }
+    }
+
+    private void writeRowByRow(List<Map.Entry<Long, CarEntity>> chunk, TransactionTemplate transactionTemplate,
+                               BulkImportReport report) {
+        for (Map.Entry<Long, CarEntity> row : chunk) {
+            CarEntity car = row.getValue();
+            // El intento anterior pudo asignar ID y versión aunque la transacción se deshiciera
+            car.setId(null);
+            car.setVersion(null);
+
+            try {
+                CarEntity saved = transactionTemplate.execute(status -> carRepository.save(car));
+                report.addAccepted(saved.getId());
+            } catch (RuntimeException e) {
+                report.addRejected(new RowError(row.getKey(), rootCause(e).getMessage()));
+            }
+        }
+    }
+
+    /**
+     * Guarda los coches por bloques de chunkSize emparejando cada fila por la clave natural con los coches
+     * ya guardados. Por cada bloque se buscan los candidatos con una sola consulta; las filas nuevas se insertan,
+     * las que han cambiado se actualizan y las que no han cambiado no generan ninguna escritura, de modo que
+     * volver a importar el mismo archivo solo cuesta lo que ha cambiado. Las filas cuya clave coincide con
+     * varios coches guardados se rechazan como ambiguas en lugar de actualizar uno de ellos al azar.
+     *
+     * @param rows   Coches a guardar por número de fila, en el orden de la importación.
+     * @param report Informe en el que se añaden los IDs insertados y actualizados, las filas sin cambios
+     *               y las filas rechazadas.
+     */
+    public void upsert(Map<Long, CarEntity> rows, BulkImportReport report) {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        List<Map.Entry<Long, CarEntity>> entries = new ArrayList<>(rows.entrySet());
+
+        for (int start = 0; start < entries.size(); start += chunkSize) {
+            List<Map.Entry<Long, CarEntity>> chunk = entries.subList(start, Math.min(start + chunkSize, entries.size()));
+
+            try {
+                transactionTemplate.execute(status -> upsertChunk(chunk)).addTo(report);
+            } catch (RuntimeException e) {
+                log.warn("Upsert of chunk starting at row {} failed, retrying row by row: {}", chunk.get(0).getKey(), e.getMessage());
+                upsertRowByRow(chunk, transactionTemplate, report);
+            }
+        }
+    }
+
+    private UpsertResult upsertChunk(List<Map.Entry<Long, CarEntity>> chunk) {
+        List<CarEntity> cars = chunk.stream().map(Map.Entry::getValue).toList();
+
+        // Coches guardados que pueden tener la misma clave que alguna fila del bloque, con una sola consulta.
+        // Si varios coches guardados tienen la misma clave no se sabe cuál actualizar y la clave es ambigua.
+        Map<List<Object>, CarEntity> stored = new HashMap<>();
+        Set<List<Object>> ambiguous = new HashSet<>();
+        carRepository.findAll(naturalKey.candidatesFor(cars)).forEach(car -> {
+            List<Object> key = naturalKey.valueOf(car);
+            if (stored.putIfAbsent(key, car) != null) {
+                ambiguous.add(key);
+            }
+        });
+
+        Map<List<Object>, CarEntity> inserted = new LinkedHashMap<>();
+        Map<List<Object>, CarEntity> updated = new LinkedHashMap<>();
+        List<RowError> rejected = new ArrayList<>();
+        long unchanged = 0;
+
+        for (Map.Entry<Long, CarEntity> row : chunk) {
+            CarEntity car = row.getValue();
+            List<Object> key = naturalKey.valueOf(car);
+            CarEntity current = stored.get(key);
+
+            if (ambiguous.contains(key)) {
+                rejected.add(new RowError(row.getKey(), "Ambiguous natural key: several stored cars match " + key));
+            } else if (current == null) {
+                // Si la clave se repite en el bloque la última fila sustituye a la anterior, que no se escribe
+                if (inserted.put(key, car) != null) {
+                    unchanged++;
+                }
+            } else if (sameData(current, car)) {
+                unchanged++;
+            } else {
+                // El coche está gestionado por la transacción; el UPDATE se agrupa en lotes al hacer flush
+                copyData(car, current);
+                updated.put(key, current);
+            }
+        }
+
+        carRepository.saveAll(inserted.values());
+        carRepository.flush();
+
+        return new UpsertResult(ids(inserted.values()), ids(updated.values()), unchanged, rejected);
+    }
+
+    private void upsertRowByRow(List<Map.Entry<Long, CarEntity>> chunk, TransactionTemplate transactionTemplate,
+                                BulkImportReport report) {
+        for (Map.Entry<Long, CarEntity> row : chunk) {
+            CarEntity car = row.getValue();
+            // El intento anterior pudo asignar ID y versión aunque la transacción se deshiciera
+            car.setId(null);
+            car.setVersion(null);
+
+            try {
+                transactionTemplate.execute(status -> upsertChunk(List.of(row))).addTo(report);
+            } catch (RuntimeException e) {
+                report.addRejected(new RowError(row.getKey(), rootCause(e).getMessage()));
+            }
+        }
+    }
+
+    private boolean sameData(CarEntity current, CarEntity imported) {
+        return Objects.equals(brandId(current), brandId(imported))
+                && Objects.equals(current.getModel(), imported.getModel())
+                && Objects.equals(current.getMilleage(), imported.getMilleage())
+                && Objects.equals(current.getPrice(), imported.getPrice())
+                && Objects.equals(current.getYear_car(), imported.getYear_car())
+                && Objects.equals(current.getDescription_car(), imported.getDescription_car())
+                && Objects.equals(current.getColour(), imported.getColour())
+                && Objects.equals(current.getFuel_type(), imported.getFuel_type())
+                && Objects.equals(current.getNum_doors(), imported.getNum_doors())
+                && Objects.equals(current.getExternal_ref(), imported.getExternal_ref());
+    }
+
+    private Integer brandId(CarEntity car) {
+        return car.getBrand() != null ? car.getBrand().getId() : null;
+    }
+
+    private void copyData(CarEntity source, CarEntity target) {
+        target.setBrand(source.getBrand());
+        target.setModel(source.getModel());
+        target.setMilleage(source.getMilleage());
+        target.setPrice(source.getPrice());
+        target.setYear_car(source.getYear_car());
+        target.setDescription_car(source.getDescription_car());
+        target.setColour(source.getColour());
+        target.setFuel_type(source.getFuel_type());
+        target.setNum_doors(source.getNum_doors());
+        target.setExternal_ref(source.getExternal_ref());
+    }
+
+    private List<Integer> ids(Collection<CarEntity> cars) {
+        return cars.stream().map(CarEntity::getId).toList();
+    }
+
+    private Throwable rootCause(Throwable e) {
+        Throwable cause = e;
+        while (cause.getCause() != null && cause.getCause() != cause) {
+            cause = cause.getCause();
+        }
+        return cause;
+    }
+
+    private record UpsertResult(List<Integer> insertedIds, List<Integer> updatedIds, long unchanged,
+                                List<RowError> rejected) {
+
+        void addTo(BulkImportReport report) {
+            insertedIds.forEach(report::addAccepted);
+            rejected.forEach(report::addRejected);
+            updatedIds.forEach(report::addUpdated);
+            report.addUnchanged(unchanged);
+        }
+    }
+
+}
@@ -0,0 +1,208 @@
+package com.aruiz.CarRegistry.service.impl;
+
+import com.aruiz.CarRegistry.entity.CarEntity;
+import com.aruiz.CarRegistry.repository.CarRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Agrupa en una sola transacción las altas de coches individuales que llegan a la vez (group commit).
+ * Las altas se encolan en una cola acotada y un hilo las guarda por lotes cada maxDelayMs milisegundos
+ * o cada maxBatch coches. Cada llamada termina cuando se ha confirmado la transacción de su lote,
+ * por lo que la respuesta al cliente sigue garantizando que el coche está guardado.
+ * Al parar, las altas que no se han podido guardar fallan en lugar de quedarse esperando.
+ * Está desactivado por defecto (car.group-commit.enabled).
+ */
+@Slf4j
+@Component
+public class CarGroupCommitter {
+
+    @Autowired
+    private CarRepository carRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    // Activa el modo group commit en CarServiceImpl.save
+    @Value("${car.group-commit.enabled:false}")
+    boolean enabled;
+
+    // Número máximo de coches por transacción
+    @Value("${car.group-commit.max-batch:200}")
+    int maxBatch;
+
+    // Tiempo máximo que espera el primer coche de un lote antes de guardarlo
+    @Value("${car.group-commit.max-delay-ms:5}")
+    long maxDelayMs;
+
+    // Número máximo de coches pendientes; si la cola está llena las llamadas esperan
+    @Value("${car.group-commit.queue-capacity:10000}")
+    int queueCapacity;
+
+    // Tiempo máximo que una llamada espera sitio en la cola y, después, la confirmación de su lote
+    @Value("${car.group-commit.timeout-ms:30000}")
+    long timeoutMs;
+
+    private BlockingQueue<PendingWrite> queue;
+
+    private Thread flusher;
+
+    private volatile boolean running;
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+
+        queue = new ArrayBlockingQueue<>(queueCapacity);
+        running = true;
+        flusher = new Thread(this::flushLoop, "car-group-commit");
+        flusher.setDaemon(true);
+        flusher.start();
+        log.info("Car group commit enabled (max batch {}, max delay {} ms)", maxBatch, maxDelayMs);
+    }
+
+    /**
+     * Deja de aceptar coches y espera a que se guarden los que ya están en la cola.
+     * Los que siguen en la cola cuando el hilo termina, o cuando se agota la espera, fallan.
+     */
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+
+        if (flusher != null) {
+            flusher.join(TimeUnit.SECONDS.toMillis(10));
+
+            List<PendingWrite> pending = new ArrayList<>();
+            queue.drainTo(pending);
+            pending.forEach(write -> write.result().completeExceptionally(stoppedException()));
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public long getTimeoutMs() {
+        return timeoutMs;
+    }
+
+    /**
+     * Encola un coche para guardarlo en el siguiente lote.
+     *
+     * @param car Coche a guardar.
+     * @return Futuro que se completa con el coche guardado cuando se confirma la transacción de su lote.
+     * @throws InterruptedException  Si el hilo se interrumpe mientras espera sitio en la cola.
+     * @throws IllegalStateException Si el group commit está parado o la cola sigue llena después de timeoutMs.
+     */
+    public CompletableFuture<CarEntity> submit(CarEntity car) throws InterruptedException {
+        if (!running) {
+            throw stoppedException();
+        }
+
+        PendingWrite write = new PendingWrite(car, new CompletableFuture<>());
+        if (!queue.offer(write, timeoutMs, TimeUnit.MILLISECONDS)) {
+            throw new IllegalStateException("Car group commit queue is full");
+        }
+
+        // Si stop() ha empezado mientras se encolaba, puede que ni el hilo ni stop() vean este coche:
+        // se retira de la cola y falla aquí; si ya no está en la cola, quien lo tomó completará su futuro
+        if (!running && queue.remove(write)) {
+            throw stoppedException();
+        }
+        return write.result();
+    }
+
+    private static IllegalStateException stoppedException() {
+        return new IllegalStateException("Car group commit is not running");
+    }
+
+    private void flushLoop() {
+        List<PendingWrite> batch = new ArrayList<>(maxBatch);
+
+        while (running || !queue.isEmpty()) {
+            try {
+                PendingWrite first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+
+                // Espera hasta completar el lote o agotar el tiempo máximo desde el primer coche
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxDelayMs);
+                while (batch.size() < maxBatch) {
+                    queue.drainTo(batch, maxBatch - batch.size());
+                    long remaining = deadline - System.nanoTime();
+                    if (batch.size() >= maxBatch || remaining <= 0) {
+                        break;
+                    }
+                    PendingWrite next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+
+                flush(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                batch.forEach(write -> write.result().completeExceptionally(e));
+                return;
+            } catch (Throwable e) {
+                // Un error inesperado solo hace fallar las llamadas del lote; el hilo sigue guardando los siguientes
+                log.error("Group commit of {} cars failed", batch.size(), e);
+                batch.forEach(write -> write.result().completeExceptionally(e));
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * Guarda el lote en una transacción. Si falla, guarda cada coche en su propia transacción
+     * para que el error solo afecte a la llamada que lo provocó.
+     */
+    void flush(List<PendingWrite> batch) {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        List<CarEntity> cars = batch.stream().map(PendingWrite::car).toList();
+
+        try {
+            List<CarEntity> saved = transactionTemplate.execute(status -> carRepository.saveAll(cars));
+            for (int i = 0; i < batch.size(); i++) {
+                batch.get(i).result().complete(saved.get(i));
+            }
+        } catch (RuntimeException e) {
+            log.warn("Group commit of {} cars failed, saving them one by one: {}", batch.size(), e.getMessage());
+
+            for (PendingWrite write : batch) {
+                // El intento anterior pudo asignar ID y versión aunque la transacción se deshiciera
+                write.car().setId(null);
+                write.car().setVersion(null);
+
+                try {
+                    write.result().complete(transactionTemplate.execute(status -> carRepository.save(write.car())));
+                } catch (RuntimeException rowException) {
+                    write.result().completeExceptionally(rowException);
+                }
+            }
+        }
+    }
+
+    record PendingWrite(CarEntity car, CompletableFuture<CarEntity> result) {
+    }
+
+}
@@ -0,0 +1,223 @@
+package com.aruiz.CarRegistry.service.impl;
+
+import com.aruiz.CarRegistry.controller.dto.BulkImportReport;
+import com.aruiz.CarRegistry.controller.dto.ImportJobResponse;
+import com.aruiz.CarRegistry.controller.dto.RowError;
+import com.aruiz.CarRegistry.domain.CarImportMode;
+import com.aruiz.CarRegistry.domain.ImportJobStatus;
+import com.aruiz.CarRegistry.service.CarImportProgress;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.Future;
+
+/**
+ * Trabajo de importación de coches en segundo plano. El archivo subido se guarda en disco y se importa
+ * en el ejecutor de importaciones; el estado se actualiza después de cada bloque guardado y se puede
+ * consultar desde otros hilos mientras tanto. El estado solo guarda una muestra de las filas rechazadas;
+ * todas se escriben en un archivo CSV junto al archivo subido, que se puede descargar al terminar.
+ */
+final class CarImportJob implements CarImportProgress {
+
+    private final String id;
+
+    private final String fileName;
+
+    private final CarImportMode mode;
+
+    private final Path file;
+
+    private final Path rejectedFile;
+
+    private final long totalBytes;
+
+    private final Instant createdAt = Instant.now();
+
+    private volatile ImportJobStatus status = ImportJobStatus.QUEUED;
+
+    private volatile Instant startedAt;
+
+    private volatile Instant finishedAt;
+
+    private volatile boolean cancelRequested;
+
+    private volatile long bytesRead;
+
+    private volatile long inserted;
+
+    private volatile long updated;
+
+    private volatile long unchanged;
+
+    private volatile long rejected;
+
+    private volatile String error;
+
+    private volatile BulkImportReport report;
+
+    private Future<?> future;
+
+    // Solo lo usa el hilo de la importación
+    private RejectedRowsCsv rejectedRows;
+
+    CarImportJob(String id, String fileName, CarImportMode mode, Path file, long totalBytes) {
+        this.id = id;
+        this.fileName = fileName;
+        this.mode = mode;
+        this.file = file;
+        this.rejectedFile = file.resolveSibling(file.getFileName().toString().replaceFirst("\\.csv$", "") + "-rejected.csv");
+        this.totalBytes = totalBytes;
+    }
+
+    String getId() {
+        return id;
+    }
+
+    CarImportMode getMode() {
+        return mode;
+    }
+
+    Path getFile() {
+        return file;
+    }
+
+    Path getRejectedFile() {
+        return rejectedFile;
+    }
+
+    ImportJobStatus getStatus() {
+        return status;
+    }
+
+    Instant getFinishedAt() {
+        return finishedAt;
+    }
+
+    synchronized void setFuture(Future<?> future) {
+        this.future = future;
+    }
+
+    void setRejectedRows(RejectedRowsCsv rejectedRows) {
+        this.rejectedRows = rejectedRows;
+    }
+
+    /**
+     * Pasa el trabajo a RUNNING.
+     *
+     * @return false si el trabajo se ha cancelado antes de empezar.
+     */
+    synchronized boolean start() {
+        if (status != ImportJobStatus.QUEUED) {
+            return false;
+        }
+        status = ImportJobStatus.RUNNING;
+        startedAt = Instant.now();
+        return true;
+    }
+
+    /**
+     * Pide la cancelación del trabajo. Si todavía no ha empezado se cancela al momento;
+     * si está en curso se detiene después del bloque que se está guardando.
+     *
+     * @return false si el trabajo ya había terminado.
+     */
+    synchronized boolean cancel() {
+        if (status.isFinished()) {
+            return false;
+        }
+
+        cancelRequested = true;
+        if (status == ImportJobStatus.QUEUED) {
+            if (future != null) {
+                future.cancel(false);
+            }
+            finish(ImportJobStatus.CANCELLED, null, null);
+        }
+        return true;
+    }
+
+    synchronized void finish(ImportJobStatus status, BulkImportReport report, String error) {
+        this.report = report;
+        this.error = error;
+        this.finishedAt = Instant.now();
+        this.status = status;
+    }
+
+    /**
+     * Envuelve el archivo para contar los bytes leídos, con los que se calcula el progreso y el tiempo restante.
+     */
+    InputStream track(InputStream input) {
+        return new FilterInputStream(input) {
+
+            @Override
+            public int read() throws IOException {
+                int b = super.read();
+                if (b >= 0) {
+                    bytesRead++;
+                }
+                return b;
+            }
+
+            @Override
+            public int read(byte[] buffer, int offset, int length) throws IOException {
+                int count = super.read(buffer, offset, length);
+                if (count > 0) {
+                    bytesRead += count;
+                }
+                return count;
+            }
+        };
+    }
+
+    @Override
+    public void batchWritten(BulkImportReport report) {
+        // Solo escribe el hilo de la importación
+        inserted = report.getAcceptedCount();
+        updated = report.getUpdatedCount();
+        unchanged = report.getUnchanged();
+        rejected = report.getRejectedCount();
+    }
+
+    @Override
+    public void rowRejected(RowError error) {
+        if (rejectedRows != null) {
+            rejectedRows.rowRejected(error);
+        }
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return cancelRequested;
+    }
+
+    /**
+     * Obtiene el estado del trabajo. La velocidad se calcula con las filas procesadas desde que empezó
+     * y el tiempo restante con la parte del archivo que queda por leer a la velocidad de lectura actual.
+     *
+     * @return Estado del trabajo.
+     */
+    ImportJobResponse toResponse() {
+        ImportJobStatus currentStatus = status;
+        Instant start = startedAt;
+        Instant end = finishedAt != null ? finishedAt : Instant.now();
+        long read = currentStatus == ImportJobStatus.COMPLETED ? totalBytes : Math.min(bytesRead, totalBytes);
+        long parsed = inserted + updated + unchanged + rejected;
+
+        double elapsedSeconds = start != null ? Math.max(1, Duration.between(start, end).toMillis()) / 1000.0 : 0;
+        double rowsPerSecond = elapsedSeconds > 0 ? parsed / elapsedSeconds : 0;
+        double progress = totalBytes > 0 ? 100.0 * read / totalBytes : 100;
+
+        Long etaSeconds = null;
+        if (currentStatus == ImportJobStatus.RUNNING && read > 0) {
+            etaSeconds = Math.round(elapsedSeconds * (totalBytes - read) / read);
+        }
+
+        return new ImportJobResponse(id, currentStatus, fileName, mode, createdAt, start, finishedAt, totalBytes, read,
+                progress, parsed, inserted, updated, unchanged, rejected, rowsPerSecond, etaSeconds, error, report);
+    }
+
+}
@@ -0,0 +1,208 @@
+package com.aruiz.CarRegistry.service.impl;
+
+import com.aruiz.CarRegistry.controller.dto.BulkImportReport;
+import com.aruiz.CarRegistry.controller.dto.ImportJobResponse;
+import com.aruiz.CarRegistry.domain.CarImportMode;
+import com.aruiz.CarRegistry.domain.ImportJobStatus;
+import com.aruiz.CarRegistry.service.CarService;
+import com.aruiz.CarRegistry.service.concurrent.TooManyRequestsException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Servicio de importaciones de coches en segundo plano.
+ * El archivo subido se guarda en un archivo temporal y se importa en el ejecutor de importaciones,
+ * de modo que la petición termina en cuanto el archivo está en disco. El estado de cada trabajo
+ * se puede consultar y cancelar con su ID; los trabajos terminados se conservan durante
+ * car.import.jobs.retention-minutes y se eliminan periódicamente cada car.import.jobs.purge-interval-ms. Las filas rechazadas se escriben en un archivo CSV junto al archivo
+ * subido y se conservan el mismo tiempo que el estado del trabajo.
+ */
+@Slf4j
+@Service
+public class CarImportJobService {
+
+    // Segundos que se indican en Retry-After cuando la cola de importaciones está llena
+    private static final long RETRY_AFTER_SECONDS = 60;
+
+    @Autowired
+    private CarService carService;
+
+    @Autowired
+    @Qualifier("importJobExecutor")
+    private AsyncTaskExecutor importJobExecutor;
+
+    // Directorio de los archivos temporales; vacío para usar el directorio temporal del sistema
+    @Value("${car.import.jobs.spool-dir:}")
+    String spoolDir;
+
+    // Minutos que se conserva el estado de un trabajo terminado
+    @Value("${car.import.jobs.retention-minutes:60}")
+    long retentionMinutes;
+
+    private final Map<String, CarImportJob> jobs = new ConcurrentHashMap<>();
+
+    /**
+     * Guarda el archivo en disco y encola su importación.
+     *
+     * @param file Archivo CSV subido.
+     * @param mode Modo de la importación.
+     * @return Estado del trabajo, con su ID.
+     * @throws IOException              Si no se puede guardar el archivo en disco.
+     * @throws TooManyRequestsException Si la cola de importaciones está llena.
+     */
+    public ImportJobResponse submit(MultipartFile file, CarImportMode mode) throws IOException {
+        Path spooled = spoolDir.isBlank()
+                ? Files.createTempFile("car-import-", ".csv")
+                : Files.createTempFile(Files.createDirectories(Path.of(spoolDir)), "car-import-", ".csv");
+        try {
+            // Si el archivo ya está en disco se mueve en lugar de copiarse
+            file.transferTo(spooled);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(spooled);
+            throw e;
+        }
+
+        CarImportJob job = new CarImportJob(UUID.randomUUID().toString(), file.getOriginalFilename(), mode, spooled,
+                Files.size(spooled));
+        jobs.put(job.getId(), job);
+
+        try {
+            job.setFuture(importJobExecutor.submit(() -> run(job)));
+        } catch (TaskRejectedException e) {
+            jobs.remove(job.getId());
+            Files.deleteIfExists(spooled);
+            throw new TooManyRequestsException("Too many pending imports, retry later", RETRY_AFTER_SECONDS);
+        }
+
+        log.info("Import job {} queued for file {} ({} bytes)", job.getId(), file.getOriginalFilename(), Files.size(spooled));
+        return job.toResponse();
+    }
+
+    /**
+     * Obtiene el estado de un trabajo.
+     *
+     * @param jobId ID del trabajo.
+     * @return Estado del trabajo, o vacío si no existe o ya no se conserva.
+     */
+    public Optional<ImportJobResponse> getJob(String jobId) {
+        return Optional.ofNullable(jobs.get(jobId)).map(CarImportJob::toResponse);
+    }
+
+    /**
+     * Obtiene el CSV con todas las filas rechazadas de un trabajo terminado correctamente.
+     *
+     * @param jobId ID del trabajo.
+     * @return El archivo, o vacío si el trabajo no existe, no ha terminado correctamente o ya no se conserva.
+     */
+    public Optional<Path> getRejectedRowsFile(String jobId) {
+        return Optional.ofNullable(jobs.get(jobId))
+                .filter(job -> job.getStatus() == ImportJobStatus.COMPLETED)
+                .map(CarImportJob::getRejectedFile)
+                .filter(Files::exists);
+    }
+
+    /**
+     * Cancela un trabajo. Si está en curso se detiene después del bloque que se está guardando
+     * y los bloques ya guardados se conservan.
+     *
+     * @param jobId ID del trabajo.
+     * @return Estado del trabajo, o vacío si no existe o ya no se conserva.
+     */
+    public Optional<ImportJobResponse> cancel(String jobId) {
+        CarImportJob job = jobs.get(jobId);
+        if (job == null) {
+            return Optional.empty();
+        }
+
+        if (job.cancel() && job.getStatus() == ImportJobStatus.CANCELLED) {
+            // Cancelado antes de empezar: la tarea ya no se ejecuta y no borrará el archivo
+            deleteFile(job);
+        }
+        return Optional.of(job.toResponse());
+    }
+
+    void run(CarImportJob job) {
+        if (!job.start()) {
+            deleteFile(job);
+            return;
+        }
+
+        log.info("Import job {} started", job.getId());
+        boolean completed = false;
+        try (InputStream input = job.track(Files.newInputStream(job.getFile()));
+             RejectedRowsCsv rejectedRows = new RejectedRowsCsv(Files.newBufferedWriter(job.getRejectedFile()))) {
+            job.setRejectedRows(rejectedRows);
+            BulkImportReport report = carService.importCars(input, job.getMode(), job);
+            // El archivo de filas rechazadas se completa antes de que el trabajo aparezca como terminado
+            rejectedRows.flush();
+            job.finish(ImportJobStatus.COMPLETED, report, null);
+            completed = true;
+            log.info("Import job {} completed", job.getId());
+        } catch (CancellationException e) {
+            job.finish(ImportJobStatus.CANCELLED, null, null);
+            log.info("Import job {} cancelled", job.getId());
+        } catch (Exception e) {
+            job.finish(ImportJobStatus.FAILED, null, e.getMessage());
+            log.error("Import job {} failed: {}", job.getId(), e.getMessage());
+        } finally {
+            job.setRejectedRows(null);
+            deleteFile(job);
+            if (!completed) {
+                deleteRejectedFile(job);
+            }
+        }
+    }
+
+    private void deleteFile(CarImportJob job) {
+        try {
+            Files.deleteIfExists(job.getFile());
+        } catch (IOException e) {
+            log.warn("Could not delete spooled import file {}: {}", job.getFile(), e.getMessage());
+        }
+    }
+
+    private void deleteRejectedFile(CarImportJob job) {
+        try {
+            Files.deleteIfExists(job.getRejectedFile());
+        } catch (IOException e) {
+            log.warn("Could not delete rejected rows file {}: {}", job.getRejectedFile(), e.getMessage());
+        }
+    }
+
+    /**
+     * Elimina los trabajos terminados hace más de car.import.jobs.retention-minutes, junto con su archivo
+     * de filas rechazadas. Se ejecuta periódicamente, de modo que los archivos no se quedan en disco
+     * aunque no se suban más importaciones.
+     */
+    @Scheduled(fixedDelayString = "${car.import.jobs.purge-interval-ms:60000}")
+    void purgeFinishedJobs() {
+        Instant limit = Instant.now().minus(Duration.ofMinutes(retentionMinutes));
+        jobs.values().removeIf(job -> {
+            if (job.getStatus().isFinished() && job.getFinishedAt().isBefore(limit)) {
+                deleteRejectedFile(job);
+                return true;
+            }
+            return false;
+        });
+    }
+
+}
@@ -1,30 +1,71 @@
 package com.aruiz.CarRegistry.service.impl;
 
+import com.aruiz.CarRegistry.config.CacheConfig;
+import com.aruiz.CarRegistry.controller.dto.BulkImportReport;
+import com.aruiz.CarRegistry.controller.dto.CarPatchRequest;
+import com.aruiz.CarRegistry.controller.dto.CarPriceUpdateRequest;
 import com.aruiz.CarRegistry.controller.dto.CarRequest;
+import com.aruiz.CarRegistry.controller.dto.LookupResult;
+import com.aruiz.CarRegistry.controller.dto.RowError;
+import com.aruiz.CarRegistry.domain.Brand;
 import com.aruiz.CarRegistry.domain.Car;
+import com.aruiz.CarRegistry.domain.CarImportMode;
+import com.aruiz.CarRegistry.domain.CarPage;
+import com.aruiz.CarRegistry.domain.CarSearchCriteria;
 import com.aruiz.CarRegistry.entity.BrandEntity;
 import com.aruiz.CarRegistry.entity.CarEntity;
 import com.aruiz.CarRegistry.repository.BrandRepository;
+import com.aruiz.CarRegistry.repository.CarFields;
 import com.aruiz.CarRegistry.repository.CarRepository;
+import com.aruiz.CarRegistry.repository.CarSpecifications;
+import com.aruiz.CarRegistry.repository.CarView;
+import com.aruiz.CarRegistry.service.CarImportProgress;
+import com.aruiz.CarRegistry.service.CarImportResult;
 import com.aruiz.CarRegistry.service.CarService;
+import com.aruiz.CarRegistry.service.concurrent.SingleFlight;
 import com.aruiz.CarRegistry.service.converter.CarConverter;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.csv.CSVFormat;
 import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVPrinter;
 import org.apache.commons.csv.CSVRecord;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+import java.util.function.ToLongFunction;
+import java.util.stream.Stream;
 
 @Slf4j
 @Service
@@ -40,10 +81,45 @@ public class CarServiceImpl implements CarService {
     @Autowired
     private CarConverter carConverter;
 
+    @Autowired
+    private CacheManager cacheManager;
+
+    @Autowired
+    private CarBatchWriter carBatchWriter;
+
+    @Autowired
+    private CarGroupCommitter carGroupCommitter;
+
+    @Autowired
+    private ParallelCsvReader parallelCsvReader;
+
 
-    private final String[] HEADERS ={"colour", "description_car", "fuel_type", "milleage", "model",
+    // Columnas del CSV de importación; también las usa RejectedRowsCsv
+    static final String[] HEADERS ={"colour", "description_car", "fuel_type", "milleage", "model",
     "num_doors", "price", "year_car", "id_brand"};
 
+    // Formato de los archivos CSV de importación: la primera fila es la cabecera
+    private static final CSVFormat CSV_FORMAT = CSVFormat.DEFAULT.withFirstRecordAsHeader().withIgnoreHeaderCase().withTrim();
+
+    // Columnas del CSV de exportación: el coche y su marca. Las columnas del coche tienen los mismos nombres
+    // que las de importación, por lo que el archivo exportado se puede volver a importar
+    private static final String[] EXPORT_HEADERS = {"id", "colour", "description_car", "fuel_type", "milleage",
+            "model", "num_doors", "price", "year_car", "id_brand", "country", "name_brand", "warranty"};
+
+    // Columna opcional del CSV con la referencia del coche en el sistema del concesionario
+    static final String EXTERNAL_REF_HEADER = "external_ref";
+
+    // Número máximo de IDs y de filas rechazadas que se guardan en el informe de una importación CSV
+    @Value("${car.import.report.sample-size:100}")
+    int reportSampleSize;
+
+    // Tamaño de página por defecto y máximo para el listado paginado de coches
+    private static final int DEFAULT_PAGE_SIZE = 50;
+    private static final int MAX_PAGE_SIZE = 500;
+
+    // Agrupa las búsquedas simultáneas del mismo coche en una sola consulta
+    private final SingleFlight<Integer, Car> findByIdFlight = new SingleFlight<>();
+
     /**
      * Método para guardar un nuevo coche
      * @param carRequest
@@ -51,6 +127,7 @@ public class CarServiceImpl implements CarService {
      * @throws Exception
      */
     @Override
+    @CacheEvict(value = CacheConfig.CARS_CACHE, key = "#result.id")
     public Car save(Car carRequest) throws Exception {
 
         log.info("Saving car: " + carRequest);
@@ -59,8 +136,11 @@ public class CarServiceImpl implements CarService {
         CarEntity carEntity = carConverter.toCarEntity(carRequest);
         log.info("Converted to CarEntity: " + carEntity);
 
-        // Guarda la entidad de automóvil en el repositorio y obtiene la entidad guardada
-        CarEntity savedCarEntity = carRepository.save(carEntity);
+        // Guarda la entidad de automóvil en el repositorio y obtiene la entidad guardada.
+        // En modo group commit se guarda junto a otras altas simultáneas y se espera a que se confirme su lote
+        CarEntity savedCarEntity = carGroupCommitter.isEnabled()
+                ? awaitGroupCommit(carEntity)
+                : carRepository.save(carEntity);
         log.info("Saved CarEntity: " + savedCarEntity);
 
         // Convierte la entidad guardada de automóvil a un objeto de automóvil y lo devuelve
@@ -69,42 +149,63 @@ public class CarServiceImpl implements CarService {
     }
 
     /**
-     * Método para guardar una lista de coches de forma asincrona
+     * Método para guardar una lista de coches de forma asincrona.
+     * Los coches se guardan por bloques, cada uno en su propia transacción, y las filas que no se pueden
+     * guardar se devuelven en el informe en lugar de hacer fallar toda la importación.
      *
      * @param carRequestsList
-     * @return
+     * @return Informe con el número de coches guardados y de filas rechazadas y una muestra de car.import.report.sample-size
+     * IDs y filas rechazadas.
      * @throws Exception
      */
     @Override
     @Async
-    public CompletableFuture<List<Car>> saveAll(List<CarRequest> carRequestsList) throws Exception {
+    public CompletableFuture<BulkImportReport> saveAll(List<CarRequest> carRequestsList) throws Exception {
         // Tiempo en el que se hace la llamada
         long startTime = System.currentTimeMillis();
 
         log.info("Saving cars...");
 
-        List<Car> cars = new ArrayList<>();
+        // Resuelve todas las marcas del lote con una sola consulta
+        Map<Integer, BrandEntity> brands = findBrands(carRequestsList.stream().map(CarRequest::getIdBrand).toList());
 
-        for (CarRequest carRequest: carRequestsList) {
-            // Convierte la solicitud de automóvil en una entidad de automóvil
-            CarEntity carEntity = carConverter.toCarEntity(carRequest);
-            log.info("Converted to CarEntity: " + carEntity);
+        // Informe completo de la operación, con todos los IDs para invalidarlos en la caché
+        BulkImportReport written = new BulkImportReport();
+        Map<Long, CarEntity> rows = new LinkedHashMap<>();
 
-            // Guarda la entidad de automóvil en el repositorio y obtiene la entidad guardada
-            CarEntity savedCarEntity = carRepository.save(carEntity);
-            log.info("Saved CarEntity: " + savedCarEntity);
+        for (int i = 0; i < carRequestsList.size(); i++) {
+            CarRequest carRequest = carRequestsList.get(i);
+            BrandEntity brand = brands.get(carRequest.getIdBrand());
+
+            if (brand == null) {
+                written.addRejected(new RowError(i + 1, "Brand not found for ID: " + carRequest.getIdBrand()));
+                continue;
+            }
 
-            // Convierte la entidad guardada de automóvil a un objeto de automóvil y lo guarda en la lista
-            cars.add(carConverter.toCar(savedCarEntity));
+            // Convierte la solicitud de automóvil en una entidad de automóvil
+            rows.put((long) i + 1, carConverter.toCarEntity(carRequest, brand));
         }
 
+        // Guarda los coches por bloques; los INSERT de cada bloque se envían en lotes JDBC
+        carBatchWriter.write(rows, written);
+        written.getRejected().sort(Comparator.comparingLong(RowError::getRow));
+
+        // Invalida en la caché los coches guardados
+        evictCars(written.getAcceptedIds());
+
+        // El informe devuelto cuenta todas las filas pero solo guarda una muestra de los IDs y de las filas
+        // rechazadas, igual que en las importaciones CSV
+        BulkImportReport report = new BulkImportReport(reportSampleSize);
+        written.getAcceptedIds().forEach(report::addAccepted);
+        written.getRejected().forEach(report::addRejected);
+
         // Tiempo en el que finaliza la llamada
         long endTime = System.currentTimeMillis();
         // Tiempo en el que finaliza la llamada
         log.info("Total process time: " + (endTime - startTime) + "ms.");
 
-        // Devuelve la lista de objetos de automóviles guardados
-        return CompletableFuture.completedFuture(cars);
+        // Devuelve el informe de la importación
+        return CompletableFuture.completedFuture(report);
     }
 
     /**
@@ -136,8 +237,139 @@ public class CarServiceImpl implements CarService {
 
     }
 
+    /**
+     * Método para obtener una página de automóviles de manera asíncrona mediante paginación por clave (keyset).
+     * Solo se leen de la base de datos las columnas y los coches de la página solicitada.
+     *
+     * @param after ID del último coche recibido; null para empezar desde el principio.
+     * @param limit Número de coches por página; se ajusta al rango [1, MAX_PAGE_SIZE].
+     * @return La página de coches junto con el cursor de la siguiente página.
+     * @throws Exception Si ocurre algún error durante la operación.
+     */
+    @Override
+    @Async
+    public CompletableFuture<CarPage<CarView>> findPage(Integer after, Integer limit) throws Exception {
+        return search(new CarSearchCriteria(), after, limit);
+    }
+
+    /**
+     * Método para buscar automóviles por varios criterios de manera asíncrona.
+     * Todos los filtros se resuelven en una única consulta SQL paginada por clave (keyset)
+     * que proyecta las filas directamente en CarView.
+     *
+     * @param criteria Criterios de búsqueda; los campos nulos no filtran.
+     * @param after    ID del último coche recibido; null para empezar desde el principio.
+     * @param limit    Número de coches por página; se ajusta al rango [1, MAX_PAGE_SIZE].
+     * @return La página de coches que cumplen los criterios junto con el cursor de la siguiente página.
+     * @throws Exception Si ocurre algún error durante la operación.
+     */
+    @Override
+    @Async
+    public CompletableFuture<CarPage<CarView>> search(CarSearchCriteria criteria, Integer after, Integer limit) throws Exception {
+        int pageSize = limit == null ? DEFAULT_PAGE_SIZE : Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+
+        // Se pide un coche más del tamaño de página para saber si existe una página siguiente
+        List<CarView> cars = carRepository.findViews(CarSpecifications.matching(criteria, after), pageSize + 1);
+
+        boolean hasNext = cars.size() > pageSize;
+        if (hasNext) {
+            cars = cars.subList(0, pageSize);
+        }
+
+        // El cursor de la siguiente página es el ID del último coche devuelto
+        Integer nextCursor = hasNext ? cars.get(cars.size() - 1).getId() : null;
+
+        return CompletableFuture.completedFuture(new CarPage<>(cars, nextCursor));
+    }
+
+    /**
+     * Método para buscar automóviles por varios criterios devolviendo solo los campos indicados.
+     * La consulta selecciona únicamente las columnas pedidas y solo une la marca si se pide alguno de sus campos.
+     *
+     * @param criteria Criterios de búsqueda; los campos nulos no filtran.
+     * @param after    ID del último coche recibido; null para empezar desde el principio.
+     * @param limit    Número de coches por página; se ajusta al rango [1, MAX_PAGE_SIZE].
+     * @param fields   Lista de campos separada por comas, por ejemplo "model,price,id_brand.name_brand".
+     * @return La página de coches con los campos pedidos junto con el cursor de la siguiente página.
+     * @throws IllegalArgumentException Si algún campo no existe.
+     */
+    @Override
+    @Async
+    public CompletableFuture<CarPage<Map<String, Object>>> searchFields(CarSearchCriteria criteria, Integer after,
+                                                                               Integer limit, String fields) throws Exception {
+        int pageSize = limit == null ? DEFAULT_PAGE_SIZE : Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+
+        List<Map<String, Object>> cars = carRepository.findFields(CarSpecifications.matching(criteria, after),
+                CarFields.parse(fields), pageSize + 1);
+
+        boolean hasNext = cars.size() > pageSize;
+        if (hasNext) {
+            cars = cars.subList(0, pageSize);
+        }
+
+        Integer nextCursor = hasNext ? (Integer) cars.get(cars.size() - 1).get("id") : null;
+
+        return CompletableFuture.completedFuture(new CarPage<>(cars, nextCursor));
+    }
+
+    /**
+     * Recorre todos los automóviles de la base de datos y entrega cada uno al consumidor según se lee,
+     * sin construir la lista completa en memoria.
+     *
+     * @param consumer Función que recibe cada coche, en orden de ID.
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public void streamAll(Consumer<CarView> consumer) {
+        try (Stream<CarView> carViewStream = carRepository.streamViewsBy()) {
+            carViewStream.forEach(consumer);
+        }
+    }
+
+    /**
+     * Recorre todos los automóviles devolviendo solo los campos indicados. Los coches se leen por páginas
+     * de MAX_PAGE_SIZE con la misma consulta que searchFields, de modo que solo se seleccionan las columnas
+     * pedidas y la memoria no depende del número de coches.
+     *
+     * @param fields   Lista de campos separada por comas, por ejemplo "model,price,id_brand.name_brand".
+     * @param consumer Función que recibe cada coche, en orden de ID.
+     * @throws IllegalArgumentException Si algún campo no existe.
+     */
+    @Override
+    public void streamFields(String fields, Consumer<Map<String, Object>> consumer) {
+        List<String> selected = CarFields.parse(fields);
+        CarSearchCriteria criteria = new CarSearchCriteria();
+        Integer after = null;
+        List<Map<String, Object>> page;
+
+        do {
+            page = carRepository.findFields(CarSpecifications.matching(criteria, after), selected, MAX_PAGE_SIZE);
+            page.forEach(consumer);
+            if (!page.isEmpty()) {
+                after = (Integer) page.get(page.size() - 1).get("id");
+            }
+        } while (page.size() == MAX_PAGE_SIZE);
+    }
+
+    /**
+     * Busca un automóvil por su ID devolviendo solo los campos indicados.
+     *
+     * @param id     ID del automóvil.
+     * @param fields Lista de campos separada por comas, por ejemplo "model,price,id_brand.name_brand".
+     * @return Los campos pedidos del coche, o null si no existe.
+     * @throws IllegalArgumentException Si algún campo no existe.
+     */
+    @Override
+    public Map<String, Object> findFieldsById(Integer id, String fields) {
+        List<Map<String, Object>> cars = carRepository.findFields(CarSpecifications.hasId(id), CarFields.parse(fields), 1);
+        return cars.isEmpty() ? null : cars.get(0);
+    }
+
     /**
      * Busca un objeto Car por su ID.
+     * El coche se guarda en la caché de coches y las peticiones simultáneas del mismo ID comparten una única
+     * consulta. Car es mutable, por lo que cada llamada recibe su propia copia y ni las otras llamadas
+     * ni la caché ven los cambios que haga sobre ella.
      *
      * @param id El ID del objeto Car que se va a buscar.
      * @return El objeto Car si se encuentra, o null si no se encuentra.
@@ -145,186 +377,585 @@ public class CarServiceImpl implements CarService {
      */
     @Override
     public Car findById(Integer id) throws Exception {
-        // Intenta encontrar una entidad CarEntity por su ID en la base de datos
-        Optional<CarEntity> carEntityOptional = carRepository.findById(id);
-
-        // Verifica si la entidad CarEntity está presente
-        if (carEntityOptional.isPresent()) {
-            // Convierte la entidad CarEntity a un objeto Car y lo devuelve
-            return carConverter.toCar(carEntityOptional.get());
+        Cache cache = cacheManager.getCache(CacheConfig.CARS_CACHE);
+        Car cached = cache != null ? cache.get(id, Car.class) : null;
+        if (cached != null) {
+            return copyOf(cached);
         }
-        // Retorna null si no se encuentra ninguna entidad correspondiente al ID proporcionado
-        return null;
+
+        // Las peticiones simultáneas del mismo ID comparten una única consulta
+        Car car = findByIdFlight.execute(id, () -> {
+            // Intenta encontrar una entidad CarEntity por su ID en la base de datos
+            Optional<CarEntity> carEntityOptional = carRepository.findById(id);
+
+            // Verifica si la entidad CarEntity está presente
+            if (carEntityOptional.isPresent()) {
+                // Convierte la entidad CarEntity a un objeto Car y lo guarda en la caché
+                Car found = carConverter.toCar(carEntityOptional.get());
+                if (cache != null) {
+                    cache.put(id, found);
+                }
+                return found;
+            }
+            // Retorna null si no se encuentra ninguna entidad correspondiente al ID proporcionado
+            return null;
+        });
+        return car != null ? copyOf(car) : null;
+    }
+
+    private static Car copyOf(Car car) {
+        Brand brand = car.getBrand() == null ? null : new Brand(car.getBrand().getId(), car.getBrand().getName_brand(),
+                car.getBrand().getWarranty(), car.getBrand().getCountry());
+        return new Car(car.getId(), brand, car.getModel(), car.getMilleage(), car.getPrice(), car.getYear_car(),
+                car.getDescription_car(), car.getColour(), car.getFuel_type(), car.getNum_doors());
     }
 
 
     /**
-     * Elimina un objeto Car por su ID.
+     * Obtiene el ETag de un coche a partir de su versión y la de su marca, sin cargar la entidad.
+     * El ETag cambia tanto si se modifica el coche como si se modifica su marca; si el coche
+     * no tiene marca el ETag es solo la versión del coche.
      *
-     * @param id El ID del objeto Car que se va a eliminar.
+     * @param id El ID del coche.
+     * @return El ETag del coche, o null si no existe.
+     */
+    @Override
+    public String findETagById(Integer id) {
+        return carRepository.findVersionById(id)
+                .map(version -> version.getBrandVersion() == null
+                        ? String.valueOf(version.getCarVersion())
+                        : version.getCarVersion() + "." + version.getBrandVersion())
+                .orElse(null);
+    }
+
+    /**
+     * Busca varios coches por ID con una única consulta de forma asíncrona.
+     *
+     * @param ids IDs de los coches, como máximo IdLookups.MAX_IDS.
+     * @return Un resultado por cada ID, en el orden de la petición, indicando si el coche existe.
+     * @throws IllegalArgumentException Si la lista de IDs no es válida.
+     */
+    @Override
+    @Async
+    public CompletableFuture<List<LookupResult<CarView>>> findByIds(List<Integer> ids) {
+        List<CarView> cars = carRepository.findViewsByIdIn(IdLookups.distinctIds(ids));
+
+        return CompletableFuture.completedFuture(IdLookups.inRequestOrder(ids, cars, CarView::getId));
+    }
+
+
+    /**
+     * Elimina un objeto Car por su ID con una única sentencia DELETE que comprueba a la vez su versión.
+     *
+     * @param id              El ID del objeto Car que se va a eliminar.
+     * @param expectedVersion La versión que el cliente leyó, o null para eliminarlo sea cual sea su versión.
      * @return Un mensaje indicando si la eliminación fue exitosa o si no se encontró el objeto Car con el ID proporcionado.
-     * @throws Exception Si ocurre algún error durante la operación.
+     * @throws OptimisticLockingFailureException Si el coche existe pero su versión ha cambiado.
      */
     @Override
-    public String deleteById(Integer id) throws Exception {
-        // Intenta encontrar una entidad CarEntity por su ID en la base de datos
-        Optional<CarEntity> optionalCarEntity = carRepository.findById(id);
-
-        // Verifica si la entidad CarEntity está presente en la base de datos
-        if (optionalCarEntity.isPresent()) {
-            // Si está presente, elimina la entidad con el ID proporcionado
-            carRepository.deleteById(id);
+    @Transactional
+    @CacheEvict(value = CacheConfig.CARS_CACHE, key = "#id")
+    public String deleteById(Integer id, Long expectedVersion) throws Exception {
+        // Comprueba la versión y elimina el coche en la misma sentencia, sin leerlo antes
+        if (carRepository.deleteByIdAndVersion(id, expectedVersion) > 0) {
             return "Car successfully eliminated";
-        } else {
-            return "Car with ID -> " + id + " not found";
         }
 
+        checkVersionConflict(id, expectedVersion);
+        return "Car with ID -> " + id + " not found";
     }
 
     /**
-     * Actualiza un objeto Car por su ID.
+     * Actualiza un objeto Car por su ID con una única sentencia UPDATE que comprueba a la vez su versión,
+     * de modo que dos actualizaciones simultáneas no se sobrescriben sin saberlo.
      *
-     * @param id         El ID del objeto Car que se va a actualizar.
-     * @param carRequest El objeto Car con los datos actualizados.
-     * @return El objeto Car actualizado, o null si el ID no se encuentra.
-     * @throws Exception Si ocurre algún error durante la operación.
+     * @param id              El ID del objeto Car que se va a actualizar.
+     * @param carRequest      El objeto Car con los datos actualizados.
+     * @param expectedVersion La versión que el cliente leyó, o null para actualizarlo sea cual sea su versión.
+     * @return El objeto Car actualizado con los datos completos de su marca, o null si el ID no se encuentra.
+     * @throws OptimisticLockingFailureException Si el coche existe pero su versión ha cambiado.
      */
     @Override
-    public Car updateById(Integer id, Car carRequest) throws Exception {
-        log.info("Updating car with id {}" + id);
-        // Intenta encontrar una entidad CarEntity por su ID en la base de datos
-        Optional<CarEntity> carEntityOptional = carRepository.findById(id);
+    @Transactional
+    @CacheEvict(value = CacheConfig.CARS_CACHE, key = "#id")
+    public Car updateById(Integer id, Car carRequest, Long expectedVersion) throws Exception {
+        log.info("Updating car with id {}", id);
 
-        // Verifica si la entidad CarEntity está presente
-        if (carEntityOptional.isPresent()) {
-            // Convierte el objeto Car a una entidad CarEntity
-            CarEntity carEntity = carConverter.toCarEntity(carRequest);
-
-            // Establece el ID proporcionado al objeto CarEntity
-            carEntity.setId(id);
-
-            // Guarda la entidad CarEntity actualizada en la base de datos y la convierte a un objeto Car
-            return carConverter.toCar(carRepository.save(carEntity));
+        // Convierte el objeto Car a una entidad CarEntity con el ID proporcionado
+        CarEntity carEntity = carConverter.toCarEntity(carRequest);
+        carEntity.setId(id);
 
+        // Comprueba la versión y actualiza el coche en la misma sentencia, sin leerlo antes
+        if (carRepository.updateById(id, carEntity, expectedVersion) > 0) {
+            // La petición solo trae el ID de la marca: se lee la marca guardada para devolverla completa
+            if (carEntity.getBrand() != null && carEntity.getBrand().getId() != null) {
+                brandRepository.findById(carEntity.getBrand().getId()).ifPresent(carEntity::setBrand);
+            }
+            return carConverter.toCar(carEntity);
         }
+
+        checkVersionConflict(id, expectedVersion);
         // Retorna null si el ID proporcionado no se encuentra en la base de datos
         return null;
     }
 
     /**
-     * Genera un contenido CSV que contiene la información de todos los coches en la base de datos.
-     * Cada línea del CSV representa un coche y sus detalles asociados, incluyendo los detalles de la marca.
+     * Distingue, cuando una escritura condicional no ha modificado ninguna fila, si el coche no existe
+     * o si otra petición ha cambiado su versión. Solo se consulta en ese caso, no en las escrituras correctas.
      *
-     * @return Una cadena que contiene el contenido CSV de todos los coches.
+     * @throws OptimisticLockingFailureException Si se esperaba una versión y el coche existe.
      */
-    @Override
-    public String carsDownloadCsv() {
+    private void checkVersionConflict(Integer id, Long expectedVersion) {
+        if (expectedVersion != null && carRepository.existsById(id)) {
+            throw new OptimisticLockingFailureException("Car with ID " + id + " has been modified by another request");
+        }
+    }
 
-        // Lista de todos los coches desde en base de datos
-        List<CarEntity> carEntityList = carRepository.findAll();
+    /**
+     * Actualiza solo los campos indicados de un coche con una única sentencia UPDATE, sin leerlo antes.
+     *
+     * @param id    El ID del coche que se va a actualizar.
+     * @param patch Los campos a modificar; los campos null se conservan.
+     * @return true si el coche existe y se ha actualizado, false si no se encuentra.
+     */
+    @Override
+    @Transactional
+    @CacheEvict(value = CacheConfig.CARS_CACHE, key = "#id")
+    public boolean patchById(Integer id, CarPatchRequest patch) {
+        return carRepository.patchById(id, patch) > 0;
+    }
 
-        // StringBuilder para almacenar el contenido CSV
-        StringBuilder csvContent = new StringBuilder();
+    /**
+     * Cambia el precio de todos los coches que cumplen el filtro con una única sentencia UPDATE.
+     * Vacía la caché de coches porque no se conocen los IDs modificados.
+     *
+     * @param criteria    Filtro de los coches (marca, modelo, rango de años); debe indicarse al menos uno.
+     * @param priceUpdate Precio nuevo o porcentaje de ajuste; debe indicarse exactamente uno.
+     * @return Número de coches modificados.
+     * @throws IllegalArgumentException Si no se indica ningún filtro o el cambio de precio no es válido.
+     */
+    @Override
+    @Transactional
+    @CacheEvict(value = CacheConfig.CARS_CACHE, allEntries = true)
+    public long updatePrices(CarSearchCriteria criteria, CarPriceUpdateRequest priceUpdate) {
+        requireBulkFilter(criteria);
+        if ((priceUpdate.getPrice() == null) == (priceUpdate.getPercent() == null)) {
+            throw new IllegalArgumentException("Exactly one of price or percent must be provided");
+        }
 
-        int count = 1;
+        return carRepository.updatePrices(CarSpecifications.matching(criteria, null), priceUpdate);
+    }
 
-        for (String header : HEADERS) {
-            csvContent.append(header).append(",");
+    /**
+     * Elimina todos los coches que cumplen el filtro con una única sentencia DELETE.
+     * Vacía la caché de coches porque no se conocen los IDs eliminados.
+     *
+     * @param criteria Filtro de los coches (marca, modelo, rango de años); debe indicarse al menos uno.
+     * @return Número de coches eliminados.
+     * @throws IllegalArgumentException Si no se indica ningún filtro.
+     */
+    @Override
+    @Transactional
+    @CacheEvict(value = CacheConfig.CARS_CACHE, allEntries = true)
+    public long deleteMatching(CarSearchCriteria criteria) {
+        requireBulkFilter(criteria);
 
-            if (count == HEADERS.length) {
-                csvContent.append(header).append("\n");
-            }
+        return carRepository.delete(CarSpecifications.matching(criteria, null));
+    }
 
-            count++;
+    /**
+     * Evita que una operación masiva sin filtro afecte a toda la tabla.
+     */
+    private void requireBulkFilter(CarSearchCriteria criteria) {
+        if (criteria.getBrandId() == null && criteria.getModel() == null
+                && criteria.getMinYear() == null && criteria.getMaxYear() == null) {
+            throw new IllegalArgumentException("At least one filter (id_brand, model, min_year, max_year) is required");
+        }
+    }
 
+    /**
+     * Escribe en formato CSV la información de todos los coches en la base de datos, con las columnas de EXPORT_HEADERS.
+     * Cada línea del CSV representa un coche y sus detalles asociados, incluyendo los detalles de la marca.
+     * Los coches se leen con un cursor de solo avance ya proyectados en CarView, sin cargar las entidades
+     * ni consultar las marcas una a una, y cada fila se escribe según se lee, por lo que la memoria no depende
+     * del número de coches. La cabecera se envía antes de leer el primer coche.
+     *
+     * @param writer Destino del CSV; no se cierra.
+     * @throws IOException Si no se puede escribir.
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public void carsDownloadCsv(Writer writer) throws IOException {
+        CSVPrinter printer = new CSVPrinter(writer, CSVFormat.DEFAULT.withHeader(EXPORT_HEADERS));
+        printer.flush();
+
+        try (Stream<CarView> carViewStream = carRepository.streamViewsBy()) {
+            carViewStream.forEach(car -> {
+                try {
+                    printer.printRecord(car.getId(), car.getColour(), car.getDescription(), car.getFuelType(),
+                            car.getMilleage(), car.getModel(), car.getNumDoors(), car.getPrice(), car.getYear(),
+                            car.getBrand().getId(), car.getBrand().getCountry(), car.getBrand().getName_brand(),
+                            car.getBrand().getWarranty());
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
         }
 
+        printer.flush();
+    }
 
-        for (CarEntity carEntity: carEntityList) {
-            // Agregar los datos del coche al contenido CSV, separados por comas
-            csvContent
-                    .append(carEntity.getId()).append(",")
-                    .append(carEntity.getColour()).append(",")
-                    .append(carEntity.getDescription_car()).append(",")
-                    .append(carEntity.getFuel_type()).append(",")
-                    .append(carEntity.getMilleage()).append(",")
-                    .append(carEntity.getModel()).append(",")
-                    .append(carEntity.getNum_doors()).append(",")
-                    .append(carEntity.getPrice()).append(",")
-                    .append(carEntity.getYear_car()).append(",")
-                    // Obtener y agregar los detalles de la marca del coche
-                    .append(carEntity.getBrand().getId()).append(",")
-                    .append(carEntity.getBrand().getCountry()).append(",")
-                    .append(carEntity.getBrand().getName_brand()).append(",")
-                    .append(carEntity.getBrand().getWarranty()).append("\n");
+    /**
+     * Método para cargar datos de coches desde un archivo CSV.
+     *
+     * @param file Archivo CSV que contiene los datos de los coches; la columna external_ref es opcional.
+     * @param mode Modo de la importación.
+     * @return Informe con los IDs de los coches guardados y las filas rechazadas.
+     * @throws RuntimeException Si no se puede leer el archivo CSV; los bloques ya guardados se conservan.
+     * @see #importCars(InputStream, CarImportMode, CarImportProgress)
+     */
+    @Override
+    public BulkImportReport uploadCars(MultipartFile file, CarImportMode mode) {
+        try (InputStream input = file.getInputStream()) {
+            return importCars(input, mode, CarImportProgress.NONE);
+        } catch (Exception e) {
+            // Manejar cualquier excepción que ocurra durante el proceso de carga
+            log.error("Failed to load cars");
+            log.info("Filename: {}", file.getOriginalFilename());
+            throw new RuntimeException("Failed to load cars");
         }
+    }
 
-        return csvContent.toString();
+    /**
+     * Importa los coches de un archivo CSV subido igual que uploadCars y escribe todas las filas rechazadas
+     * en un archivo CSV temporal según se rechazan (RejectedRowsCsv), de modo que no se guardan en memoria.
+     *
+     * @param file Archivo CSV subido.
+     * @param mode Modo de la importación.
+     * @return Informe de la importación y el CSV de filas rechazadas, que debe borrar quien lo recibe.
+     * @throws IOException Si no se puede leer el archivo o escribir el archivo temporal; en ese caso
+     *                     el archivo temporal ya se ha borrado.
+     */
+    @Override
+    public CarImportResult uploadCarsWithRejectedRows(MultipartFile file, CarImportMode mode) throws IOException {
+        Path rejectedFile = Files.createTempFile("car-import-", "-rejected.csv");
+        try (InputStream input = file.getInputStream();
+             RejectedRowsCsv rejectedRows = new RejectedRowsCsv(Files.newBufferedWriter(rejectedFile))) {
+            BulkImportReport report = importCars(input, mode, rejectedRows);
+            return new CarImportResult(report, rejectedFile);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(rejectedFile);
+            throw e;
+        }
     }
 
     /**
-     * Método para cargar datos de coches desde un archivo CSV.
+     * Importa los coches de un archivo CSV.
+     * El archivo se lee registro a registro y los coches se guardan en bloques de tamaño fijo
+     * (car.import.chunk-size), cada uno en su propia transacción, por lo que la memoria necesaria depende
+     * del tamaño del bloque y no del tamaño del archivo. Las filas con datos no válidos o con una marca
+     * que no existe se entregan a progress.rowRejected(); el informe lleva los totales y una muestra de
+     * car.import.report.sample-size IDs y filas rechazadas, y la caché se invalida después de cada bloque.
+     * En modo UPSERT cada fila se empareja con los coches guardados por la clave natural
+     * (car.import.natural-key): solo se insertan las filas nuevas y solo se actualizan las que han cambiado.
+     * Con car.import.parallel.enabled el archivo se divide en bloques que se leen y validan en paralelo
+     * (ParallelCsvReader); los bloques se siguen guardando de uno en uno, en el orden del archivo o según
+     * terminan de leerse (car.import.parallel.ordered), y cada bloque leído se guarda en partes de
+     * car.import.chunk-size filas.
+     * Después de cada bloque se informa del progreso y se comprueba si se ha cancelado la importación.
      *
-     * @param file Archivo CSV que contiene los datos de los coches.
-     * @return Lista de entidades de coches creadas a partir de los datos del archivo CSV.
-     * @throws RuntimeException Si ocurre un error durante la carga de los coches desde el archivo CSV.
+     * @param input    Archivo CSV con cabecera; no se cierra.
+     * @param mode     Modo de la importación.
+     * @param progress Recibe el informe después de cada bloque y cada fila rechazada, e indica si hay que
+     *                 cancelar la importación.
+     * @return Informe con los IDs de los coches guardados y las filas rechazadas.
+     * @throws IOException           Si no se puede leer el archivo; los bloques ya guardados se conservan.
+     * @throws CancellationException Si se cancela la importación; los bloques ya guardados se conservan.
      */
     @Override
-    public List<CarEntity> uploadCars(MultipartFile file) {
+    public BulkImportReport importCars(InputStream input, CarImportMode mode, CarImportProgress progress) throws IOException {
+
+        // El informe solo guarda una muestra de los IDs y de las filas rechazadas; todas las filas
+        // rechazadas se entregan a progress.rowRejected()
+        BulkImportReport report = new BulkImportReport(reportSampleSize);
+        // Filas del bloque en curso, con el ID de marca y la línea del archivo de cada una
+        ParsedRows batch = new ParsedRows();
+        // Marcas ya consultadas durante la importación; las que no existen se guardan con valor null
+        Map<Integer, BrandEntity> brands = new HashMap<>();
+        int batchSize = carBatchWriter.getChunkSize();
+
+        if (parallelCsvReader.isEnabled()) {
+            // Leer y validar los bloques del archivo en paralelo; cada bloque se guarda al terminar de leerse
+            parallelCsvReader.read(input, CSV_FORMAT, this::parseRecords, parsed -> {
+                parsed.rejected().forEach(error -> reject(error, report, progress));
+
+                // Un bloque leído puede tener muchas más filas que un bloque de guardado: se guarda en partes
+                // de batchSize para limitar el tamaño de las transacciones y seguir informando del progreso
+                // y comprobando la cancelación después de cada una
+                for (Map.Entry<Long, CarEntity> row : parsed.rows().entrySet()) {
+                    batch.add(row.getKey(), row.getValue(), parsed.brandIds().get(row.getKey()),
+                            parsed.lines().get(row.getKey()));
+
+                    if (batch.rows().size() >= batchSize) {
+                        writeImportBatch(batch, brands, mode, report, progress);
+                    }
+                }
+
+                writeImportBatch(batch, brands, mode, report, progress);
+            });
+        } else {
+            LineCountingReader fileReader = new LineCountingReader(
+                    new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8)), 1);
+            CSVParser csvParser = new CSVParser(fileReader, CSV_FORMAT);
+
+            // Iterar sobre cada registro en el archivo CSV sin cargar el archivo completo en memoria
+            for (CSVRecord record : csvParser) {
+                parseRecord(record, fileReader.lineOf(record), batch, error -> reject(error, report, progress));
+
+                // Guardar el bloque cuando se completa
+                if (batch.rows().size() >= batchSize) {
+                    writeImportBatch(batch, brands, mode, report, progress);
+                }
+            }
 
-        List<CarEntity> carEntityList = new ArrayList<>();
+            // Guardar el último bloque, que puede estar incompleto
+            writeImportBatch(batch, brands, mode, report, progress);
+        }
 
+        report.getRejected().sort(Comparator.comparingLong(RowError::getRow));
 
-        try (BufferedReader fileReader = new BufferedReader(new InputStreamReader(file.getInputStream(), "UTF-8"));
-            CSVParser csvParser = new CSVParser(fileReader,
-                    CSVFormat.DEFAULT.withFirstRecordAsHeader().withIgnoreHeaderCase().withTrim());
-        ) {
+        // Devolver el informe de la importación
+        return report;
+    }
 
-            Iterable<CSVRecord> csvRecords = csvParser.getRecords();
+    /**
+     * Añade una fila rechazada al informe y la entrega al seguimiento de la importación.
+     */
+    private void reject(RowError error, BulkImportReport report, CarImportProgress progress) {
+        report.addRejected(error);
+        progress.rowRejected(error);
+    }
 
-            // Iterar sobre cada registro en el archivo CSV
-            for (CSVRecord record : csvRecords) {
-                CarEntity carEntity = new CarEntity();
+    /**
+     * Convierte los registros de un bloque del archivo CSV. Se ejecuta en los hilos de la lectura en paralelo.
+     *
+     * @param records Registros del bloque.
+     * @param lines   Línea del archivo en la que empieza cada registro.
+     * @return Coches y marcas de las filas válidas y filas rechazadas.
+     */
+    private ParsedRows parseRecords(Iterable<CSVRecord> records, ToLongFunction<CSVRecord> lines) {
+        ParsedRows parsed = new ParsedRows();
+        records.forEach(record -> parseRecord(record, lines.applyAsLong(record), parsed, parsed.rejected()::add));
+        return parsed;
+    }
 
-                // Asignar valores de los campos del registro al objeto CarEntity
-                carEntity.setColour(record.get(HEADERS[0]));
-                carEntity.setDescription_car(record.get(HEADERS[1]));
-                carEntity.setFuel_type(record.get(HEADERS[2]));
-                carEntity.setMilleage(Integer.valueOf(record.get(HEADERS[3])));
-                carEntity.setModel(record.get(HEADERS[4]));
-                carEntity.setNum_doors(Integer.valueOf(record.get(HEADERS[5])));
-                carEntity.setPrice(Double.valueOf(record.get(HEADERS[6])));
-                carEntity.setYear_car(Integer.valueOf(record.get(HEADERS[7])));
+    /**
+     * Convierte un registro del archivo CSV en un coche; la marca se resuelve al guardar el bloque.
+     *
+     * @param record   Registro del archivo.
+     * @param line     Línea del archivo en la que empieza el registro.
+     * @param parsed   Filas del bloque, donde se añade el coche si el registro es válido.
+     * @param rejected Recibe el registro si no tiene el formato esperado.
+     */
+    private void parseRecord(CSVRecord record, long line, ParsedRows parsed, Consumer<RowError> rejected) {
+        try {
+            CarEntity carEntity = new CarEntity();
+
+            // Asignar valores de los campos del registro al objeto CarEntity
+            carEntity.setColour(record.get(HEADERS[0]));
+            carEntity.setDescription_car(record.get(HEADERS[1]));
+            carEntity.setFuel_type(record.get(HEADERS[2]));
+            carEntity.setMilleage(Integer.valueOf(record.get(HEADERS[3])));
+            carEntity.setModel(record.get(HEADERS[4]));
+            carEntity.setNum_doors(Integer.valueOf(record.get(HEADERS[5])));
+            carEntity.setPrice(Double.valueOf(record.get(HEADERS[6])));
+            carEntity.setYear_car(Integer.valueOf(record.get(HEADERS[7])));
+            // Referencia externa del coche, si el archivo la incluye
+            if (record.isMapped(EXTERNAL_REF_HEADER) && !record.get(EXTERNAL_REF_HEADER).isEmpty()) {
+                carEntity.setExternal_ref(record.get(EXTERNAL_REF_HEADER));
+            }
 
-                // Obtener el ID de la marca del registro CSV
-                String brandId = record.get(HEADERS[8]);
+            // Obtener el ID de la marca del registro CSV
+            Integer brandId = Integer.parseInt(record.get(HEADERS[8]));
 
-                // Buscar la marca correspondiente en la base de datos
-                BrandEntity brand = brandRepository.findById(Integer.parseInt(brandId)).orElseThrow(() -> new RuntimeException(
-                        "Brand not found for ID: " + brandId));
+            // Agregar el objeto CarEntity a las filas
+            parsed.add(record.getRecordNumber(), carEntity, brandId, line);
+        } catch (RuntimeException e) {
+            // La fila no tiene el formato esperado
+            rejected.accept(new RowError(record.getRecordNumber(), line, "Invalid row: " + e.getMessage(),
+                    importValues(record)));
+        }
+    }
 
-                // Asignar la marca al objeto CarEntity
-                carEntity.setBrand(brand);
+    /**
+     * Valores de las columnas de importación de un registro tal como aparecen en el archivo.
+     */
+    private List<String> importValues(CSVRecord record) {
+        List<String> values = new ArrayList<>();
+        for (String header : HEADERS) {
+            values.add(record.isMapped(header) && record.isSet(header) ? record.get(header) : "");
+        }
+        values.add(record.isMapped(EXTERNAL_REF_HEADER) && record.isSet(EXTERNAL_REF_HEADER) ? record.get(EXTERNAL_REF_HEADER) : "");
+        return values;
+    }
 
-                // Agregar el objeto CarEntity a la lista
-                carEntityList.add(carEntity);
+    /**
+     * Valores de las columnas de importación de un coche ya convertido, en el orden de HEADERS.
+     */
+    private List<String> importValues(CarEntity car, Integer brandId) {
+        return Stream.of(car.getColour(), car.getDescription_car(), car.getFuel_type(), car.getMilleage(),
+                        car.getModel(), car.getNum_doors(), car.getPrice(), car.getYear_car(), brandId,
+                        car.getExternal_ref())
+                .map(value -> value != null ? value.toString() : "")
+                .toList();
+    }
+
+    /**
+     * Filas de un bloque del archivo CSV ya convertidas, por número de fila.
+     */
+    private record ParsedRows(Map<Long, CarEntity> rows, Map<Long, Integer> brandIds, Map<Long, Long> lines,
+                              List<RowError> rejected) {
+
+        ParsedRows() {
+            this(new LinkedHashMap<>(), new HashMap<>(), new HashMap<>(), new ArrayList<>());
+        }
+
+        void add(long row, CarEntity car, Integer brandId, Long line) {
+            rows.put(row, car);
+            brandIds.put(row, brandId);
+            lines.put(row, line);
+        }
+
+        void clear() {
+            rows.clear();
+            brandIds.clear();
+            lines.clear();
+        }
+    }
+
+    /**
+     * Guarda un bloque de coches importados y lo vacía.
+     * Solo se consultan las marcas que no se han consultado en bloques anteriores, con una sola consulta.
+     * Después informa del progreso y comprueba si se ha cancelado la importación.
+     *
+     * @param batch    Coches del bloque con su ID de marca y su línea; se vacía al terminar.
+     * @param brands   Marcas ya consultadas durante la importación, con null para las que no existen.
+     * @param mode     Modo de la importación.
+     * @param report   Informe de la importación.
+     * @param progress Progreso de la importación.
+     * @throws CancellationException Si se ha cancelado la importación.
+     */
+    private void writeImportBatch(ParsedRows batch, Map<Integer, BrandEntity> brands, CarImportMode mode,
+                                  BulkImportReport report, CarImportProgress progress) {
+        if (!batch.rows().isEmpty()) {
+            saveImportBatch(batch, brands, mode, report, progress);
+        }
+
+        progress.batchWritten(report);
+        if (progress.isCancelled()) {
+            throw new CancellationException("Import cancelled");
+        }
+    }
+
+    private void saveImportBatch(ParsedRows batch, Map<Integer, BrandEntity> brands, CarImportMode mode,
+                                 BulkImportReport report, CarImportProgress progress) {
+        Map<Long, CarEntity> rows = batch.rows();
+        Map<Long, Integer> brandIds = batch.brandIds();
+
+        // Buscar con una sola consulta las marcas del bloque que no se han consultado todavía
+        List<Integer> pending = brandIds.values().stream().filter(id -> !brands.containsKey(id)).distinct().toList();
+        if (!pending.isEmpty()) {
+            Map<Integer, BrandEntity> found = findBrands(pending);
+            pending.forEach(brandId -> brands.put(brandId, found.get(brandId)));
+        }
 
+        rows.entrySet().removeIf(row -> {
+            Integer brandId = brandIds.get(row.getKey());
+            BrandEntity brand = brands.get(brandId);
+
+            if (brand == null) {
+                reject(new RowError(row.getKey(), batch.lines().get(row.getKey()), "Brand not found for ID: " + brandId,
+                        importValues(row.getValue(), brandId)), report, progress);
+                return true;
             }
 
-            // Guardar todas las entidades CarEntity en la base de datos
-            carEntityList = carRepository.saveAll(carEntityList);
+            // Asignar la marca al objeto CarEntity
+            row.getValue().setBrand(brand);
+            return false;
+        });
 
-        } catch (Exception e) {
-            // Manejar cualquier excepción que ocurra durante el proceso de carga
-            log.error("Failed to load cars");
-            log.info("Filename: {}", file.getOriginalFilename());
-            throw new RuntimeException("Failed to load cars");
+        // Guardar las entidades CarEntity del bloque en la base de datos; el informe del bloque
+        // tiene todos los IDs del bloque para invalidarlos en la caché
+        BulkImportReport batchReport = new BulkImportReport();
+        if (mode == CarImportMode.UPSERT) {
+            carBatchWriter.upsert(rows, batchReport);
+        } else {
+            carBatchWriter.write(rows, batchReport);
+        }
+
+        batchReport.getAcceptedIds().forEach(report::addAccepted);
+        batchReport.getUpdatedIds().forEach(report::addUpdated);
+        report.addUnchanged(batchReport.getUnchanged());
+
+        // Añadir la línea y los valores de la fila a las filas que la base de datos ha rechazado
+        for (RowError error : batchReport.getRejected()) {
+            CarEntity car = rows.get(error.getRow());
+            reject(new RowError(error.getRow(), batch.lines().get(error.getRow()), error.getReason(),
+                    importValues(car, car.getBrand().getId())), report, progress);
+        }
+
+        // Invalida en la caché los coches del bloque
+        evictCars(batchReport.getAcceptedIds());
+        evictCars(batchReport.getUpdatedIds());
+
+        batch.clear();
+    }
+
+    /**
+     * Encola el coche en el group commit y espera a que se confirme la transacción de su lote,
+     * como mucho car.group-commit.timeout-ms.
+     *
+     * @param carEntity Coche a guardar.
+     * @return El coche guardado.
+     * @throws TimeoutException Si el lote no se confirma a tiempo; el coche aún puede guardarse después.
+     * @throws Exception        El error que impidió guardar el coche.
+     */
+    private CarEntity awaitGroupCommit(CarEntity carEntity) throws Exception {
+        try {
+            return carGroupCommitter.submit(carEntity).get(carGroupCommitter.getTimeoutMs(), TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception exception) {
+                throw exception;
+            }
+            throw e;
         }
+    }
 
-        // Devolver la lista de entidades CarEntity creadas
-        return carEntityList;
+    /**
+     * Busca con una sola consulta las marcas de un lote de coches.
+     *
+     * @param brandIds IDs de las marcas, con posibles repeticiones.
+     * @return Las marcas encontradas por ID; los IDs que no existen no aparecen.
+     */
+    private Map<Integer, BrandEntity> findBrands(List<Integer> brandIds) {
+        Map<Integer, BrandEntity> brands = new HashMap<>();
+        brandRepository.findAllById(new HashSet<>(brandIds)).forEach(brand -> brands.put(brand.getId(), brand));
+        return brands;
     }
 
+    /**
+     * Elimina de la caché de coches las entradas de los IDs indicados.
+     *
+     * @param ids IDs de los coches modificados.
+     */
+    private void evictCars(List<Integer> ids) {
+        Cache cache = cacheManager.getCache(CacheConfig.CARS_CACHE);
 
+        if (cache != null) {
+            ids.forEach(cache::evict);
+        }
+    }
 
 }
@@ -0,0 +1,139 @@
+package com.aruiz.CarRegistry.service.impl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Divide un archivo CSV en bloques de registros completos para leerlos en paralelo.
+ * Cada bloque termina en un salto de línea que está fuera de comillas, por lo que los campos
+ * entre comillas con saltos de línea nunca quedan partidos entre dos bloques.
+ * Trabaja sobre los bytes del archivo: en UTF-8 las comillas y los saltos de línea no forman parte
+ * de ningún carácter multibyte. Se asume que las comillas solo se usan para encerrar campos (RFC 4180).
+ */
+final class CsvChunkSplitter {
+
+    /**
+     * Bloque de registros del archivo.
+     *
+     * @param data        Bytes del bloque.
+     * @param firstRecord Número del primer registro de datos del bloque (el primero del archivo es el 1).
+     * @param firstLine   Línea del archivo en la que empieza el bloque (la primera del archivo es la 1).
+     */
+    record Chunk(byte[] data, long firstRecord, long firstLine) {
+    }
+
+    private static final int END_OF_FILE = -1;
+
+    private final InputStream input;
+
+    private final int chunkBytes;
+
+    private final byte[] buffer = new byte[64 * 1024];
+
+    private int position;
+
+    private int limit;
+
+    // Indica si el último byte leído está dentro de un campo entre comillas
+    private boolean inQuotes;
+
+    // Registros de datos entregados en los bloques anteriores
+    private long records;
+
+    // Saltos de línea leídos (\n, \r o \r\n), también los de dentro de los campos entre comillas
+    private long lineBreaks;
+
+    private boolean lastWasCarriageReturn;
+
+    /**
+     * @param input      Archivo CSV; no se cierra.
+     * @param chunkBytes Tamaño aproximado de cada bloque; un bloque puede superarlo hasta terminar su último registro.
+     */
+    CsvChunkSplitter(InputStream input, int chunkBytes) {
+        this.input = input;
+        this.chunkBytes = chunkBytes;
+    }
+
+    /**
+     * Lee la cabecera, que es el primer registro no vacío del archivo.
+     *
+     * @return Bytes de la cabecera, o null si el archivo está vacío.
+     */
+    byte[] header() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int result;
+
+        // Las líneas vacías no son registros, igual que en CSVParser
+        while ((result = appendRecord(out)) == 0) {
+            out.reset();
+        }
+
+        return result == END_OF_FILE ? null : out.toByteArray();
+    }
+
+    /**
+     * Lee el siguiente bloque de registros.
+     *
+     * @return El bloque, o null al llegar al final del archivo.
+     */
+    Chunk next() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(chunkBytes + 1024);
+        long firstRecord = records + 1;
+        long firstLine = lineBreaks + 1;
+        int result;
+
+        // Las líneas vacías no cuentan como registros: el bloque se alarga hasta tener al menos uno
+        while ((out.size() < chunkBytes || records < firstRecord) && (result = appendRecord(out)) != END_OF_FILE) {
+            records += result;
+        }
+
+        return records < firstRecord ? null : new Chunk(out.toByteArray(), firstRecord, firstLine);
+    }
+
+    /**
+     * Añade a out el siguiente registro, incluido su salto de línea.
+     *
+     * @return 1 si se ha leído un registro, 0 si es una línea vacía y END_OF_FILE si no queda nada por leer.
+     */
+    private int appendRecord(ByteArrayOutputStream out) throws IOException {
+        boolean read = false;
+        boolean content = false;
+
+        while (true) {
+            if (position == limit) {
+                limit = Math.max(0, input.read(buffer));
+                position = 0;
+                if (limit == 0) {
+                    return !read ? END_OF_FILE : content ? 1 : 0;
+                }
+            }
+
+            int start = position;
+            read = true;
+
+            while (position < limit) {
+                byte b = buffer[position++];
+
+                if (b == '\r' || (b == '\n' && !lastWasCarriageReturn)) {
+                    lineBreaks++;
+                }
+                lastWasCarriageReturn = b == '\r';
+
+                if (b == '"') {
+                    // Las comillas escapadas ("") cambian el estado dos veces y lo dejan igual
+                    inQuotes = !inQuotes;
+                    content = true;
+                } else if (b == '\n' && !inQuotes) {
+                    out.write(buffer, start, position - start);
+                    return content ? 1 : 0;
+                } else if (b != '\r') {
+                    content = true;
+                }
+            }
+
+            out.write(buffer, start, position - start);
+        }
+    }
+
+}
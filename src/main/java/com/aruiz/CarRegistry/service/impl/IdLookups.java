@@ -0,0 +1,63 @@
+package com.aruiz.CarRegistry.service.impl;
+
+import com.aruiz.CarRegistry.controller.dto.LookupResult;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Utilidades de las consultas por lotes de IDs: validan los IDs pedidos y devuelven
+ * un LookupResult por cada uno en el orden de la petición.
+ */
+public final class IdLookups {
+
+    // Número máximo de IDs que se pueden pedir en una sola petición
+    public static final int MAX_IDS = 500;
+
+    private IdLookups() {
+    }
+
+    /**
+     * Devuelve los IDs pedidos sin duplicados, para consultarlos una sola vez.
+     *
+     * @param ids IDs recibidos en la petición.
+     * @return IDs distintos en el orden de la petición.
+     * @throws IllegalArgumentException Si la lista está vacía, supera MAX_IDS o contiene algún ID nulo.
+     */
+    public static Collection<Integer> distinctIds(List<Integer> ids) {
+        if (ids == null || ids.isEmpty() || ids.size() > MAX_IDS) {
+            throw new IllegalArgumentException("Between 1 and " + MAX_IDS + " ids must be requested");
+        }
+        if (ids.stream().anyMatch(Objects::isNull)) {
+            throw new IllegalArgumentException("Ids must not be null");
+        }
+        return new LinkedHashSet<>(ids);
+    }
+
+    /**
+     * Ordena los elementos encontrados según los IDs de la petición y marca los que no existen.
+     *
+     * @param ids      IDs recibidos en la petición, en su orden original.
+     * @param elements Elementos devueltos por la base de datos, en cualquier orden.
+     * @param idOf     Función que obtiene el ID de un elemento.
+     * @return Un resultado por cada ID pedido, en el mismo orden.
+     */
+    public static <T> List<LookupResult<T>> inRequestOrder(List<Integer> ids, List<T> elements,
+                                                           Function<T, Integer> idOf) {
+        Map<Integer, T> byId = elements.stream().collect(Collectors.toMap(idOf, Function.identity()));
+
+        List<LookupResult<T>> results = new ArrayList<>(ids.size());
+        for (Integer id : ids) {
+            T element = byId.get(id);
+            results.add(new LookupResult<>(id, element != null, element));
+        }
+        return results;
+    }
+
+}
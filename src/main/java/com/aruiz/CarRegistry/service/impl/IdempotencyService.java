@@ -0,0 +1,209 @@
+package com.aruiz.CarRegistry.service.impl;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Servicio que hace idempotentes los endpoints de creación mediante la cabecera Idempotency-Key.
+ * La primera petición con una clave se ejecuta y su respuesta se guarda durante el periodo de retención;
+ * las peticiones repetidas con la misma clave reciben la respuesta guardada sin volver a ejecutarse.
+ * Si la primera petición sigue en curso, las repetidas esperan a su respuesta.
+ * Las claves se guardan por endpoint y por usuario autenticado.
+ * De cada respuesta solo se guarda el estado, las cabeceras y el cuerpo ya serializado, y el almacén
+ * se limita por el tamaño total de los cuerpos guardados (idempotency.max-bytes), no por número de claves.
+ */
+@Slf4j
+@Service
+public class IdempotencyService {
+
+    // Cabecera con la clave de idempotencia enviada por el cliente
+    public static final String HEADER = "Idempotency-Key";
+
+    // Cabecera que se añade a las respuestas repetidas
+    public static final String REPLAYED_HEADER = "Idempotent-Replayed";
+
+    // Bytes que se cuentan por cada clave guardada además de la clave, la huella y el cuerpo
+    private static final int ENTRY_OVERHEAD_BYTES = 128;
+
+    private final ObjectMapper objectMapper;
+
+    // Respuestas por endpoint y clave; solo se guarda la huella de la petición y la respuesta serializada
+    private final Cache<String, StoredResponse> store;
+
+    public IdempotencyService(ObjectMapper objectMapper,
+                              @Value("${idempotency.retention-minutes:1440}") long retentionMinutes,
+                              @Value("${idempotency.max-bytes:67108864}") long maxBytes) {
+        this.objectMapper = objectMapper;
+        this.store = Caffeine.newBuilder()
+                .expireAfterWrite(Duration.ofMinutes(retentionMinutes))
+                .maximumWeight(maxBytes)
+                .weigher((String key, StoredResponse stored) -> ENTRY_OVERHEAD_BYTES + key.length()
+                        + stored.fingerprint().length + stored.size())
+                .build();
+    }
+
+    /**
+     * Ejecuta una petición asíncrona una sola vez por clave.
+     * Solo se guardan las respuestas 2xx; si la petición falla la clave se libera para poder reintentarla.
+     *
+     * @param scope   Endpoint al que pertenece la clave.
+     * @param key     Valor de la cabecera Idempotency-Key; si es null la petición se ejecuta siempre.
+     * @param request Cuerpo de la petición, para detectar claves reutilizadas con otro contenido.
+     * @param action  Ejecución de la petición.
+     * @return La respuesta de la petición, o la respuesta guardada si la clave ya se usó.
+     * @throws ResponseStatusException 422 si la clave ya se usó con un cuerpo distinto.
+     */
+    public CompletableFuture<ResponseEntity<?>> executeAsync(String scope, String key, Object request,
+                                                             Callable<CompletableFuture<ResponseEntity<?>>> action) throws Exception {
+        if (key == null || key.isBlank()) {
+            return action.call();
+        }
+
+        // Las claves de cada usuario son independientes: dos clientes con la misma clave no comparten respuesta
+        String storeKey = scope + ":" + principalName() + ":" + key;
+        StoredResponse stored = new StoredResponse(fingerprint(request), new CompletableFuture<>(), 0);
+        StoredResponse current = store.asMap().putIfAbsent(storeKey, stored);
+
+        if (current != null) {
+            if (!Arrays.equals(current.fingerprint(), stored.fingerprint())) {
+                throw new ResponseStatusException(HttpStatus.UNPROCESSABLE_ENTITY,
+                        "Idempotency key already used with a different request");
+            }
+            log.info("Replaying response for idempotency key {}", storeKey);
+            return current.response().thenApply(this::replayed);
+        }
+
+        try {
+            action.call().whenComplete((response, ex) -> {
+                // Las peticiones fallidas no se guardan para que el cliente pueda reintentarlas; las correctas
+                // se sustituyen por su versión serializada, que es la que ocupa el almacén, y las peticiones
+                // que ya esperaban reciben la respuesta original
+                StoredResponse compacted = ex == null && response.getStatusCode().is2xxSuccessful()
+                        ? compact(stored.fingerprint(), response) : null;
+                if (compacted != null) {
+                    store.asMap().replace(storeKey, stored, compacted);
+                } else {
+                    store.asMap().remove(storeKey, stored);
+                }
+                if (ex != null) {
+                    stored.response().completeExceptionally(ex);
+                } else {
+                    stored.response().complete(response);
+                }
+            });
+        } catch (Exception e) {
+            store.asMap().remove(storeKey, stored);
+            stored.response().completeExceptionally(e);
+            throw e;
+        }
+
+        return stored.response();
+    }
+
+    /**
+     * Ejecuta una petición síncrona una sola vez por clave.
+     *
+     * @see #executeAsync(String, String, Object, Callable)
+     */
+    public ResponseEntity<?> execute(String scope, String key, Object request,
+                                     Callable<ResponseEntity<?>> action) throws Exception {
+        try {
+            return executeAsync(scope, key, request, () -> CompletableFuture.completedFuture(action.call())).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof Exception exception) {
+                throw exception;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Obtiene el nombre del usuario autenticado que hace la petición.
+     */
+    private String principalName() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        return authentication != null ? authentication.getName() : "anonymous";
+    }
+
+    /**
+     * Calcula la huella SHA-256 del cuerpo de la petición serializado en JSON.
+     */
+    private byte[] fingerprint(Object request) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(objectMapper.writeValueAsBytes(request));
+        } catch (JsonProcessingException | NoSuchAlgorithmException e) {
+            throw new IllegalStateException("Unable to fingerprint request", e);
+        }
+    }
+
+    /**
+     * Guarda la respuesta con el cuerpo serializado: en JSON, o tal cual si es texto.
+     * Si el cuerpo no se puede serializar la clave se libera, como si la petición hubiera fallado.
+     */
+    private StoredResponse compact(byte[] fingerprint, ResponseEntity<?> response) {
+        Object body = response.getBody();
+        HttpHeaders headers = new HttpHeaders();
+        headers.putAll(response.getHeaders());
+        byte[] bytes;
+
+        try {
+            if (body == null) {
+                bytes = new byte[0];
+            } else if (body instanceof String text) {
+                bytes = text.getBytes(StandardCharsets.UTF_8);
+                if (headers.getContentType() == null) {
+                    headers.setContentType(new MediaType(MediaType.TEXT_PLAIN, StandardCharsets.UTF_8));
+                }
+            } else {
+                bytes = objectMapper.writeValueAsBytes(body);
+                if (headers.getContentType() == null) {
+                    headers.setContentType(MediaType.APPLICATION_JSON);
+                }
+            }
+        } catch (JsonProcessingException e) {
+            log.warn("Unable to store idempotent response: {}", e.getMessage());
+            return null;
+        }
+
+        ResponseEntity<?> stored = ResponseEntity.status(response.getStatusCode()).headers(headers)
+                .body(body != null ? bytes : null);
+        return new StoredResponse(fingerprint, CompletableFuture.completedFuture(stored), bytes.length);
+    }
+
+    private ResponseEntity<?> replayed(ResponseEntity<?> response) {
+        return ResponseEntity.status(response.getStatusCode())
+                .headers(response.getHeaders())
+                .header(REPLAYED_HEADER, "true")
+                .body(response.getBody());
+    }
+
+    /**
+     * Respuesta de una clave: en curso hasta que termina la primera petición, y después ya serializada.
+     *
+     * @param size Tamaño del cuerpo serializado; 0 mientras la petición está en curso.
+     */
+    private record StoredResponse(byte[] fingerprint, CompletableFuture<ResponseEntity<?>> response, int size) {
+    }
+
+}
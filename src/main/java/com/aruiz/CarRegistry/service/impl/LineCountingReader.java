@@ -0,0 +1,95 @@
+package com.aruiz.CarRegistry.service.impl;
+
+import org.apache.commons.csv.CSVRecord;
+
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Lector que cuenta los saltos de línea del archivo para saber en qué línea empieza cada registro CSV.
+ * El número de registro de CSVParser no coincide con la línea del archivo cuando hay campos entre comillas
+ * con saltos de línea o líneas vacías. Solo se guardan los saltos de línea leídos por delante del último
+ * registro consultado, por lo que la memoria no depende del tamaño del archivo.
+ */
+final class LineCountingReader extends FilterReader {
+
+    // Posición del primer carácter y del siguiente al último de cada salto de línea (\n, \r o \r\n)
+    private final Deque<long[]> lineBreaks = new ArrayDeque<>();
+
+    private long position;
+
+    private boolean lastWasCarriageReturn;
+
+    // Línea que termina en el primer salto de línea pendiente
+    private long line;
+
+    /**
+     * @param in        Archivo CSV.
+     * @param firstLine Número de línea del primer carácter de in (la primera línea del archivo es la 1).
+     */
+    LineCountingReader(Reader in, long firstLine) {
+        super(in);
+        this.line = firstLine;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int c = super.read();
+        if (c >= 0) {
+            count((char) c);
+        }
+        return c;
+    }
+
+    @Override
+    public int read(char[] buffer, int offset, int length) throws IOException {
+        int count = super.read(buffer, offset, length);
+        for (int i = 0; i < count; i++) {
+            count(buffer[offset + i]);
+        }
+        return count;
+    }
+
+    private void count(char c) {
+        if (c == '\n' && lastWasCarriageReturn) {
+            // \r\n es un solo salto de línea
+            long[] last = lineBreaks.peekLast();
+            if (last != null && last[1] == position) {
+                last[1] = position + 1;
+            }
+        } else if (c == '\n' || c == '\r') {
+            lineBreaks.addLast(new long[]{position, position + 1});
+        }
+
+        lastWasCarriageReturn = c == '\r';
+        position++;
+    }
+
+    /**
+     * Obtiene la línea en la que empieza un registro. Los registros se deben consultar en el orden del archivo.
+     *
+     * @param record Registro leído de este lector.
+     * @return Número de línea del primer carácter del registro.
+     */
+    long lineOf(CSVRecord record) {
+        long start = record.getCharacterPosition();
+
+        // Saltos de línea de los registros anteriores
+        while (!lineBreaks.isEmpty() && lineBreaks.peekFirst()[1] <= start) {
+            lineBreaks.removeFirst();
+            line++;
+        }
+
+        // CSVParser indica como posición del registro el principio de las líneas vacías que lo preceden
+        while (!lineBreaks.isEmpty() && lineBreaks.peekFirst()[0] == start) {
+            start = lineBreaks.removeFirst()[1];
+            line++;
+        }
+
+        return line;
+    }
+
+}
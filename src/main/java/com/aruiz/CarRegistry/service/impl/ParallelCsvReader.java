@@ -0,0 +1,170 @@
+package com.aruiz.CarRegistry.service.impl;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.ToLongFunction;
+
+/**
+ * Lee un archivo CSV en paralelo: el archivo se divide en bloques de registros completos que se leen
+ * y validan en un ForkJoinPool, y cada bloque leído se entrega al hilo que llama para guardarlo.
+ * En modo ordenado los bloques se entregan en el orden del archivo; en modo no ordenado, según terminan.
+ * Como mucho hay dos bloques por hilo pendientes de entregar, de modo que la memoria no depende del tamaño del archivo.
+ * Está desactivado por defecto (car.import.parallel.enabled).
+ */
+@Slf4j
+@Component
+public class ParallelCsvReader {
+
+    // Activa la lectura en paralelo en las importaciones de coches
+    @Value("${car.import.parallel.enabled:false}")
+    boolean enabled;
+
+    // Entrega los bloques en el orden del archivo
+    @Value("${car.import.parallel.ordered:true}")
+    boolean ordered;
+
+    // Número de hilos que leen los bloques; 0 para usar uno por núcleo
+    @Value("${car.import.parallel.threads:0}")
+    int threads;
+
+    // Tamaño aproximado de cada bloque en bytes
+    @Value("${car.import.parallel.chunk-bytes:1048576}")
+    int chunkBytes;
+
+    private ForkJoinPool pool;
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+
+        pool = new ForkJoinPool(threads > 0 ? threads : Runtime.getRuntime().availableProcessors());
+        log.info("Parallel CSV import enabled ({} threads, {} byte chunks, ordered: {})",
+                pool.getParallelism(), chunkBytes, ordered);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (pool != null) {
+            pool.shutdownNow();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Lee el archivo en paralelo.
+     *
+     * @param input  Archivo CSV con cabecera; no se cierra.
+     * @param format Formato del archivo, con la primera fila como cabecera.
+     * @param parser Convierte los registros de un bloque; se ejecuta en los hilos del pool. Los números
+     *               de registro (getRecordNumber) son los del archivo completo, y la función que recibe con
+     *               los registros da la línea del archivo en la que empieza cada uno, consultándolos en orden.
+     * @param writer Recibe el resultado de cada bloque; se ejecuta siempre en el hilo que llama.
+     * @throws IOException Si no se puede leer el archivo o algún bloque no es un CSV válido.
+     */
+    public <T> void read(InputStream input, CSVFormat format,
+                         BiFunction<Iterable<CSVRecord>, ToLongFunction<CSVRecord>, T> parser,
+                         Consumer<T> writer) throws IOException {
+        CsvChunkSplitter splitter = new CsvChunkSplitter(input, chunkBytes);
+        byte[] header = splitter.header();
+        if (header == null) {
+            return;
+        }
+
+        // Los bloques no llevan cabecera: se leen con los nombres de las columnas de la del archivo
+        CSVFormat chunkFormat;
+        try (CSVParser headerParser = new CSVParser(new StringReader(new String(header, StandardCharsets.UTF_8)), format)) {
+            chunkFormat = format.withHeader(headerParser.getHeaderNames().toArray(new String[0]))
+                    .withSkipHeaderRecord(false);
+        }
+
+        CompletionService<T> completionService = new ExecutorCompletionService<>(pool);
+        Deque<Future<T>> pending = new ArrayDeque<>();
+        int maxPending = pool.getParallelism() * 2;
+
+        try {
+            CsvChunkSplitter.Chunk chunk;
+            while ((chunk = splitter.next()) != null) {
+                CsvChunkSplitter.Chunk next = chunk;
+                Callable<T> task = () -> parse(next, chunkFormat, parser);
+                // En modo ordenado no se usa la cola de terminados, que retendría los resultados hasta el final
+                pending.add(ordered ? pool.submit(task) : completionService.submit(task));
+
+                if (pending.size() >= maxPending) {
+                    writer.accept(take(completionService, pending));
+                }
+            }
+
+            while (!pending.isEmpty()) {
+                writer.accept(take(completionService, pending));
+            }
+        } finally {
+            // Si algo falla no se siguen leyendo los bloques pendientes
+            pending.forEach(future -> future.cancel(true));
+        }
+    }
+
+    /**
+     * Espera al siguiente bloque que hay que entregar: el más antiguo en modo ordenado
+     * o el primero que termine en modo no ordenado.
+     */
+    private <T> T take(CompletionService<T> completionService, Deque<Future<T>> pending) throws IOException {
+        try {
+            Future<T> future;
+            if (ordered) {
+                future = pending.poll();
+            } else {
+                future = completionService.take();
+                pending.remove(future);
+            }
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while reading the CSV file", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof UncheckedIOException unchecked) {
+                throw unchecked.getCause();
+            }
+            throw new IOException("Failed to read the CSV file: " + e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    private <T> T parse(CsvChunkSplitter.Chunk chunk, CSVFormat chunkFormat,
+                        BiFunction<Iterable<CSVRecord>, ToLongFunction<CSVRecord>, T> parser) throws IOException {
+        // El número del primer registro y la primera línea se indican para que coincidan con los del archivo
+        LineCountingReader reader = new LineCountingReader(
+                new InputStreamReader(new ByteArrayInputStream(chunk.data()), StandardCharsets.UTF_8), chunk.firstLine());
+        try (CSVParser csvParser = new CSVParser(reader, chunkFormat, 0, chunk.firstRecord())) {
+            return parser.apply(csvParser, reader::lineOf);
+        }
+    }
+
+}
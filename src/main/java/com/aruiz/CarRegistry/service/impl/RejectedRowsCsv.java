@@ -0,0 +1,71 @@
+package com.aruiz.CarRegistry.service.impl;
+
+import com.aruiz.CarRegistry.controller.dto.RowError;
+import com.aruiz.CarRegistry.service.CarImportProgress;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVPrinter;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * CSV con las filas rechazadas de una importación: el número de registro, la línea del archivo original
+ * y el motivo seguidos de las columnas de importación con los valores de la fila. Las filas se escriben
+ * según se rechazan, ya que también sirve como seguimiento de la importación, de modo que no hace falta
+ * guardarlas en memoria. El archivo se puede corregir y volver a subir, ya que las columnas row, line y reason
+ * se ignoran al importar.
+ */
+public final class RejectedRowsCsv implements CarImportProgress, Closeable {
+
+    private final CSVPrinter printer;
+
+    /**
+     * Escribe la cabecera del CSV.
+     *
+     * @param writer Destino del CSV; se cierra con close().
+     * @throws IOException Si no se puede escribir.
+     */
+    public RejectedRowsCsv(Writer writer) throws IOException {
+        List<String> header = new ArrayList<>(List.of("row", "line", "reason"));
+        header.addAll(Arrays.asList(CarServiceImpl.HEADERS));
+        header.add(CarServiceImpl.EXTERNAL_REF_HEADER);
+
+        this.printer = new CSVPrinter(writer, CSVFormat.DEFAULT.withHeader(header.toArray(new String[0])));
+    }
+
+    /**
+     * Escribe una fila rechazada.
+     *
+     * @param error Fila rechazada, con sus valores.
+     * @throws IOException Si no se puede escribir.
+     */
+    public void write(RowError error) throws IOException {
+        List<Object> record = new ArrayList<>(List.of(error.getRow(), error.getLine(), error.getReason()));
+        record.addAll(error.getValues());
+        printer.printRecord(record);
+    }
+
+    @Override
+    public void rowRejected(RowError error) {
+        try {
+            write(error);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public void flush() throws IOException {
+        printer.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        printer.close();
+    }
+
+}
@@ -1,15 +1,25 @@
 package com.aruiz.CarRegistry.controller;
 
 import com.aruiz.CarRegistry.controller.dto.BrandRequest;
+import com.aruiz.CarRegistry.controller.dto.BrandResponse;
+import com.aruiz.CarRegistry.controller.dto.LookupResult;
 import com.aruiz.CarRegistry.controller.mapper.BrandMapper;
 import com.aruiz.CarRegistry.domain.Brand;
+import com.aruiz.CarRegistry.repository.BrandView;
 import com.aruiz.CarRegistry.service.BrandService;
+import com.aruiz.CarRegistry.service.concurrent.AdmissionControlledExecutor;
+import com.aruiz.CarRegistry.service.impl.IdempotencyService;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.web.context.request.ServletWebRequest;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -26,6 +36,12 @@ public class BrandControllerTests {
     @Mock
     private BrandMapper brandMapper;
 
+    @Spy
+    private IdempotencyService idempotencyService = new IdempotencyService(new ObjectMapper(), 60, 1_000_000);
+
+    @Mock
+    private AdmissionControlledExecutor taskExecutor;
+
     @InjectMocks
     private BrandController brandController;
 
@@ -43,7 +59,7 @@ public class BrandControllerTests {
         when(brandService.save(any())).thenReturn(new Brand());
         // When
         // Llamo al método addBrand del controlador de marcas
-        ResponseEntity<?> responseEntity = brandController.addBrand(brandRequest);
+        ResponseEntity<?> responseEntity = brandController.addBrand(brandRequest, null);
         // Then
         // Verifico que el código de estado de la respuesta sea 200 (OK)
         assertEquals(200, responseEntity.getStatusCodeValue());
@@ -58,7 +74,7 @@ public class BrandControllerTests {
         when(brandService.saveAll(any())).thenReturn(CompletableFuture.completedFuture(new ArrayList<>()));
         // When
         // Llamamos al método addBrands del controlador de marcas
-        CompletableFuture<?> completableFuture = brandController.addBrands(brandRequestList);
+        CompletableFuture<?> completableFuture = brandController.addBrands(brandRequestList, null);
         // Then
         // Verificamos que el código de estado de la respuesta sea 200 (OK)
         assertEquals(200, ((ResponseEntity<?>) completableFuture.get()).getStatusCodeValue());
@@ -70,15 +86,38 @@ public class BrandControllerTests {
         // Definimos un ID de marca
         int brandId = 1;
         // Mockeamos el comportamiento del servicio para que retorne una nueva instancia de Brand
+        when(brandService.findETagById(brandId)).thenReturn("0");
         when(brandService.findById(brandId)).thenReturn(new Brand());
         // When
         // Llamamos al método getBrandById del controlador de marcas
-        ResponseEntity<?> responseEntity = brandController.getBrandById(brandId);
+        ResponseEntity<?> responseEntity = brandController.getBrandById(brandId,
+                new ServletWebRequest(new MockHttpServletRequest("GET", "/api/brand/getBrand/1")));
         // Then
         // Verificamos que el código de estado de la respuesta sea 200 (OK)
         assertEquals(200, responseEntity.getStatusCodeValue());
     }
 
+    @Test
+    void test_getBrandsByIds() throws Exception {
+        // Given
+        // La marca 2 no existe, por lo que se devuelve marcada como no encontrada
+        List<LookupResult<BrandView>> brands = List.of(
+                new LookupResult<>(1, true, new BrandView(1, "Seat", 3, "Spain")),
+                new LookupResult<>(2, false, null));
+        when(brandService.findByIds(List.of(1, 2))).thenReturn(CompletableFuture.completedFuture(brands));
+        List<LookupResult<BrandResponse>> results = List.of(
+                new LookupResult<>(1, true, new BrandResponse(1, "Seat", 3, "Spain")),
+                new LookupResult<>(2, false, null));
+        when(brandMapper.toBrandLookupResponse(brands)).thenReturn(results);
+        // When
+        // Llamamos al método getBrandsByIds del controlador de marcas
+        ResponseEntity<?> responseEntity = (ResponseEntity<?>) brandController.getBrandsByIds(List.of(1, 2)).get();
+        // Then
+        // Verificamos que se devuelven los resultados del servicio convertidos con estado 200 (OK)
+        assertEquals(200, responseEntity.getStatusCodeValue());
+        assertEquals(results, responseEntity.getBody());
+    }
+
     @Test
     void test_getBrands_notFound() throws Exception {
         // Mockeamos el comportamiento del servicio para que retorne una lista vacía de marcas al buscar todas las marcas
@@ -97,10 +136,10 @@ public class BrandControllerTests {
         // Definimos un ID de marca
         int brandId = 1;
         // Mockeamos el comportamiento del servicio para que retorne true al eliminar la marca con el ID proporcionado
-        when(brandService.delete(brandId)).thenReturn(true);
+        when(brandService.delete(brandId, null)).thenReturn(true);
 
         // Llamamos al método deleteBrandById del controlador de marcas
-        ResponseEntity<?> responseEntity = brandController.deleteBrandById(brandId);
+        ResponseEntity<?> responseEntity = brandController.deleteBrandById(brandId, null);
         // Then
         // Verificamos que el código de estado de la respuesta sea 200 (OK)
         assertEquals(200, responseEntity.getStatusCodeValue());
@@ -113,12 +152,27 @@ public class BrandControllerTests {
         int brandId = 1;
         BrandRequest brandRequest = new BrandRequest();
         // Mockeamos el comportamiento del servicio para que retorne una nueva instancia de Brand al actualizar la marca con el ID proporcionado
-        when(brandService.updateBrand(brandId, new Brand())).thenReturn(new Brand());
+        when(brandService.updateBrand(brandId, new Brand(), null)).thenReturn(new Brand());
         // When
         // Llamamos al método updateBrandByID del controlador de marcas
-        ResponseEntity<?> responseEntity = brandController.updateBrandByID(brandId, brandRequest);
+        ResponseEntity<?> responseEntity = brandController.updateBrandByID(brandId, brandRequest, null);
         // Then
         // Verificamos que el código de estado de la respuesta sea 200 (OK)
         assertEquals(200, responseEntity.getStatusCodeValue());
     }
+
+    @Test
+    void test_patchBrandById() {
+        // Given
+        // Solo se envía la garantía
+        BrandRequest patch = BrandRequest.builder().warranty(5).build();
+        // Mockeamos el servicio para que la marca 1 exista y la 2 no
+        when(brandService.patchBrand(1, patch)).thenReturn(true);
+        when(brandService.patchBrand(2, patch)).thenReturn(false);
+        // When / Then
+        // Verificamos que se responde 204 (No Content) si la marca existe y 404 (Not Found) si no
+        assertEquals(HttpStatus.NO_CONTENT, brandController.patchBrandById(1, patch).getStatusCode());
+        assertEquals(HttpStatus.NOT_FOUND, brandController.patchBrandById(2, patch).getStatusCode());
+    }
+
 }
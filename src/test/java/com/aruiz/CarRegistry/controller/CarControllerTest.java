@@ -1,23 +1,67 @@
 package com.aruiz.CarRegistry.controller;
 
+import com.aruiz.CarRegistry.controller.dto.AffectedRowsResponse;
+import com.aruiz.CarRegistry.controller.dto.BrandResponse;
+import com.aruiz.CarRegistry.controller.dto.BulkImportReport;
+import com.aruiz.CarRegistry.controller.dto.CarPageResponse;
+import com.aruiz.CarRegistry.controller.dto.CarPatchRequest;
+import com.aruiz.CarRegistry.controller.dto.CarPriceUpdateRequest;
 import com.aruiz.CarRegistry.controller.dto.CarRequest;
+import com.aruiz.CarRegistry.controller.dto.CarResponse;
+import com.aruiz.CarRegistry.controller.dto.ImportJobResponse;
+import com.aruiz.CarRegistry.controller.dto.LookupResult;
+import com.aruiz.CarRegistry.controller.dto.RowError;
 import com.aruiz.CarRegistry.controller.mapper.CarMapper;
 import com.aruiz.CarRegistry.domain.Car;
+import com.aruiz.CarRegistry.domain.CarImportMode;
+import com.aruiz.CarRegistry.domain.CarPage;
+import com.aruiz.CarRegistry.domain.ImportJobStatus;
+import com.aruiz.CarRegistry.repository.CarView;
+import com.aruiz.CarRegistry.service.CarImportResult;
 import com.aruiz.CarRegistry.service.CarService;
+import com.aruiz.CarRegistry.service.concurrent.AdmissionControlledExecutor;
+import com.aruiz.CarRegistry.service.concurrent.TooManyRequestsException;
+import com.aruiz.CarRegistry.service.impl.CarImportJobService;
+import com.aruiz.CarRegistry.service.impl.IdempotencyService;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
-
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
 // Utilizamos @ExtendWith(MockitoExtension.class) para habilitar el uso de Mockito en las pruebas
@@ -30,6 +74,18 @@ public class CarControllerTest {
     @Mock
     private CarMapper carMapper;
 
+    @Spy
+    private ObjectMapper objectMapper = new ObjectMapper();
+
+    @Spy
+    private IdempotencyService idempotencyService = new IdempotencyService(new ObjectMapper(), 60, 1_000_000);
+
+    @Mock
+    private AdmissionControlledExecutor taskExecutor;
+
+    @Mock
+    private CarImportJobService carImportJobService;
+
     // Controlador bajo prueba, donde se inyectarán los mocks
     @InjectMocks
     private CarController carController;
@@ -48,7 +104,7 @@ public class CarControllerTest {
 
         // When
         // Llamamos al método que queremos probar en el controlador
-        ResponseEntity<?> responseEntity = carController.addCar(carRequest);
+        ResponseEntity<?> responseEntity = carController.addCar(carRequest, null);
 
         // Then
         // Verificamos que la respuesta tenga un código de estado OK (200)
@@ -68,11 +124,11 @@ public class CarControllerTest {
         // Configuramos el comportamiento esperado del carService
         // para que cuando se llame a saveAll con cualquier lista, devuelva un CompletableFuture
         // completado con una lista vacía
-        when(carService.saveAll(anyList())).thenReturn(CompletableFuture.completedFuture(new ArrayList<>()));
+        when(carService.saveAll(anyList())).thenReturn(CompletableFuture.completedFuture(new BulkImportReport()));
 
         // When
         // Llamamos al método que queremos probar en el controlador, que devuelve un CompletableFuture
-        CompletableFuture<?> completableFuture = carController.addCards(carRequestList);
+        CompletableFuture<?> completableFuture = carController.addCards(carRequestList, null);
 
         // Then
         // Esperamos a que el CompletableFuture se complete
@@ -82,6 +138,213 @@ public class CarControllerTest {
         verify(carService, times(1)).saveAll(anyList());
     }
 
+    @Test
+    void test_addCarsWithRejectedRows() throws Exception {
+        // Mocking behavior
+        // El servicio guarda la primera fila y rechaza la segunda porque su marca no existe
+        BulkImportReport report = new BulkImportReport(new ArrayList<>(List.of(10)),
+                new ArrayList<>(List.of(new RowError(2, "Brand not found for ID: 99"))));
+        when(carService.saveAll(anyList())).thenReturn(CompletableFuture.completedFuture(report));
+
+        // When
+        ResponseEntity<?> responseEntity = (ResponseEntity<?>) carController.addCards(
+                List.of(new CarRequest(), new CarRequest()), null).get();
+
+        // Then: Verificamos que el informe incluye los coches guardados y las filas rechazadas
+        assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
+        assertEquals("{\"accepted_count\":1,\"accepted_ids\":[10],\"rejected_count\":1,"
+                        + "\"rejected\":[{\"row\":2,\"reason\":\"Brand not found for ID: 99\"}]}",
+                objectMapper.writeValueAsString(responseEntity.getBody()));
+    }
+
+    @Test
+    void test_addCarsWithRepeatedIdempotencyKey() throws Exception {
+        // Mocking behavior
+        BulkImportReport report = new BulkImportReport(new ArrayList<>(List.of(10)), new ArrayList<>());
+        when(carService.saveAll(anyList())).thenReturn(CompletableFuture.completedFuture(report));
+        List<CarRequest> carRequestList = List.of(new CarRequest());
+
+        // When: El cliente repite la misma petición con la misma clave
+        ResponseEntity<?> first = (ResponseEntity<?>) carController.addCards(carRequestList, "key-1").get();
+        ResponseEntity<?> retry = (ResponseEntity<?>) carController.addCards(carRequestList, "key-1").get();
+
+        // Then: Los coches solo se guardan una vez y la repetición devuelve el mismo informe, ya serializado
+        verify(carService, times(1)).saveAll(anyList());
+        assertEquals(report, first.getBody());
+        assertEquals(objectMapper.writeValueAsString(report), new String((byte[]) retry.getBody()));
+        assertEquals("true", retry.getHeaders().getFirst(IdempotencyService.REPLAYED_HEADER));
+    }
+
+    @Test
+    void test_addCarsWhenAsyncQueueIsSaturated() {
+        // Mocking behavior
+        // La cola de tareas asíncronas está llena y la espera estimada es de 7 segundos
+        doThrow(new TooManyRequestsException("Too many pending requests, retry later", 7)).when(taskExecutor).admit();
+
+        // When
+        TooManyRequestsException exception = assertThrows(TooManyRequestsException.class,
+                () -> carController.addCards(List.of(new CarRequest()), null));
+
+        // Then
+        // Se responde 429 con Retry-After sin encolar el guardado
+        assertEquals(HttpStatus.TOO_MANY_REQUESTS, exception.getStatusCode());
+        assertEquals("7", exception.getHeaders().getFirst(HttpHeaders.RETRY_AFTER));
+        verifyNoInteractions(carService);
+    }
+
+    @Test
+    void test_addCarsRetryIsReplayedWhenAsyncQueueIsSaturated() throws Exception {
+        // Mocking behavior
+        BulkImportReport report = new BulkImportReport(new ArrayList<>(List.of(10)), new ArrayList<>());
+        when(carService.saveAll(anyList())).thenReturn(CompletableFuture.completedFuture(report));
+        List<CarRequest> carRequestList = List.of(new CarRequest());
+        carController.addCards(carRequestList, "key-1").get();
+        // La cola se satura después de la primera petición; la repetición no debe llegar a comprobarla
+        lenient().doThrow(new TooManyRequestsException("Too many pending requests, retry later", 7)).when(taskExecutor).admit();
+
+        // When: El cliente repite la petición con la misma clave
+        ResponseEntity<?> retry = (ResponseEntity<?>) carController.addCards(carRequestList, "key-1").get();
+
+        // Then: La repetición recibe la respuesta guardada en lugar de 429
+        assertEquals(HttpStatus.OK, retry.getStatusCode());
+        assertEquals(objectMapper.writeValueAsString(report), new String((byte[]) retry.getBody()));
+        verify(taskExecutor, times(1)).admit();
+    }
+
+    @Test
+    void test_readRejectedByFullQueueAnswers429() throws Exception {
+        // Given
+        TaskRejectedExceptionHandler handler = new TaskRejectedExceptionHandler(taskExecutor);
+
+        // Mocking behavior
+        // La cola de tareas asíncronas está llena y rechaza la lectura
+        when(carService.findPage(0, 1)).thenThrow(new TaskRejectedException("Executor queue is full"));
+        when(taskExecutor.rejected()).thenReturn(new TooManyRequestsException("Too many pending requests, retry later", 3));
+
+        // When
+        TaskRejectedException exception = assertThrows(TaskRejectedException.class,
+                () -> carController.getCards(0, 1, null));
+        ResponseEntity<?> responseEntity = handler.handleTaskRejected(exception);
+
+        // Then: Se responde 429 con Retry-After en lugar de 500
+        assertEquals(HttpStatus.TOO_MANY_REQUESTS, responseEntity.getStatusCode());
+        assertEquals("3", responseEntity.getHeaders().getFirst(HttpHeaders.RETRY_AFTER));
+    }
+
+    @Test
+    void test_createImportJobReturnsAcceptedWithLocation() throws Exception {
+        // Given
+        MockMultipartFile file = new MockMultipartFile("file", "cars.csv", "text/csv", "colour\nred\n".getBytes());
+        ImportJobResponse job = new ImportJobResponse();
+        job.setJobId("job-1");
+        job.setStatus(ImportJobStatus.QUEUED);
+
+        // Mocking behavior
+        when(carImportJobService.submit(file, CarImportMode.INSERT)).thenReturn(job);
+
+        // When
+        ResponseEntity<?> responseEntity = carController.createImportJob(file, CarImportMode.INSERT);
+
+        // Then
+        // La respuesta se devuelve al momento con la URL del estado del trabajo
+        assertEquals(HttpStatus.ACCEPTED, responseEntity.getStatusCode());
+        assertEquals("/api/car/importJobs/job-1", responseEntity.getHeaders().getLocation().toString());
+        assertEquals(job, responseEntity.getBody());
+    }
+
+    @Test
+    void test_createImportJobRejectsNonCsvFile() throws Exception {
+        // Given
+        MockMultipartFile file = new MockMultipartFile("file", "cars.txt", "text/plain", "red".getBytes());
+
+        // When
+        ResponseEntity<?> responseEntity = carController.createImportJob(file, CarImportMode.INSERT);
+
+        // Then
+        assertEquals(HttpStatus.BAD_REQUEST, responseEntity.getStatusCode());
+        verifyNoInteractions(carImportJobService);
+    }
+
+    @Test
+    void test_uploadCSVRejectedRowsStreamsEveryRejectedRow(@TempDir Path tempDir) throws Exception {
+        // Given
+        MockMultipartFile file = new MockMultipartFile("file", "cars.csv", "text/csv", "colour\nred\nblue\n".getBytes());
+        // La importación ha guardado la primera fila y ha escrito la segunda en el archivo de filas rechazadas
+        RowError error = new RowError(2, 3, "Brand not found for ID: 99", List.of("blue"));
+        Path rejectedRows = Files.writeString(tempDir.resolve("rejected.csv"),
+                "row,line,reason,colour\r\n2,3,Brand not found for ID: 99,blue\r\n");
+
+        // Mocking behavior
+        when(carService.uploadCarsWithRejectedRows(file, CarImportMode.INSERT))
+                .thenReturn(new CarImportResult(new BulkImportReport(List.of(1), List.of(error)), rejectedRows));
+
+        // When
+        ResponseEntity<?> responseEntity = carController.uploadCSVRejectedRows(file, CarImportMode.INSERT);
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        ((StreamingResponseBody) responseEntity.getBody()).writeTo(outputStream);
+
+        // Then
+        assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
+        assertEquals("1", responseEntity.getHeaders().getFirst("Import-Accepted-Count"));
+        assertEquals("1", responseEntity.getHeaders().getFirst("Import-Rejected-Count"));
+        assertEquals("row,line,reason,colour\r\n2,3,Brand not found for ID: 99,blue\r\n", outputStream.toString());
+        // El archivo temporal se borra al enviar la respuesta
+        assertFalse(Files.exists(rejectedRows));
+    }
+
+    @Test
+    void test_downloadImportJobErrorsStreamsRejectedRows(@TempDir Path tempDir) throws Exception {
+        // Given
+        // El trabajo ha escrito todas las filas rechazadas en su archivo
+        ImportJobResponse job = new ImportJobResponse();
+        job.setStatus(ImportJobStatus.COMPLETED);
+        job.setReport(new BulkImportReport(List.of(1), List.of(new RowError(2, "Brand not found for ID: 99"))));
+        Path rejectedRows = Files.writeString(tempDir.resolve("rejected.csv"), "row,reason\n2,Brand not found for ID: 99\n");
+
+        // Mocking behavior
+        when(carImportJobService.getJob("job-1")).thenReturn(Optional.of(job));
+        when(carImportJobService.getRejectedRowsFile("job-1")).thenReturn(Optional.of(rejectedRows));
+
+        // When
+        ResponseEntity<StreamingResponseBody> responseEntity = carController.downloadImportJobErrors("job-1");
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        responseEntity.getBody().writeTo(outputStream);
+
+        // Then
+        assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
+        assertEquals("attachment; filename=import-job-1-errors.csv",
+                responseEntity.getHeaders().getFirst(HttpHeaders.CONTENT_DISPOSITION));
+        assertEquals("row,reason\n2,Brand not found for ID: 99\n", outputStream.toString());
+    }
+
+    @Test
+    void test_downloadImportJobErrorsConflictWhileRunning() {
+        // Given
+        ImportJobResponse job = new ImportJobResponse();
+        job.setStatus(ImportJobStatus.RUNNING);
+
+        // Mocking behavior
+        when(carImportJobService.getJob("job-1")).thenReturn(Optional.of(job));
+
+        // When
+        ResponseEntity<StreamingResponseBody> responseEntity = carController.downloadImportJobErrors("job-1");
+
+        // Then
+        assertEquals(HttpStatus.CONFLICT, responseEntity.getStatusCode());
+    }
+
+    @Test
+    void test_getUnknownImportJobReturnsNotFound() {
+        // Mocking behavior
+        when(carImportJobService.getJob("unknown")).thenReturn(Optional.empty());
+
+        // When
+        ResponseEntity<ImportJobResponse> responseEntity = carController.getImportJob("unknown");
+
+        // Then
+        assertEquals(HttpStatus.NOT_FOUND, responseEntity.getStatusCode());
+    }
+
     @Test
     void test_findAllCars() throws Exception {
         // Given
@@ -94,7 +357,7 @@ public class CarControllerTest {
         when(carService.findAll()).thenReturn(CompletableFuture.completedFuture(cars));
 
         // When: Llamamos al método que queremos probar en el controlador, que devuelve un CompletableFuture
-        CompletableFuture<?> completableFuture = carController.getCards();
+        CompletableFuture<?> completableFuture = carController.getCards(null, null, null);
 
         // Then
         completableFuture.get(); // Espera a que el futuro se complete
@@ -102,6 +365,273 @@ public class CarControllerTest {
         verify(carService, times(1)).findAll();
     }
 
+    @Test
+    void test_findCarsPage() throws Exception {
+        // Given
+        CarPage<CarView> carPage = new CarPage<>(List.of(carView(7)), 7);
+
+        // Mocking behavior
+        // Configuramos el servicio para que devuelva una página con un coche y el cursor de la siguiente
+        when(carService.findPage(0, 1)).thenReturn(CompletableFuture.completedFuture(carPage));
+        // El mapper convierte la página en la respuesta
+        when(carMapper.toCarPageResponse(eq(carPage), any()))
+                .thenReturn(new CarPageResponse<>(List.of(new CarResponse()), 7));
+
+        // When: Llamamos al endpoint en modo paginado
+        ResponseEntity<?> responseEntity = (ResponseEntity<?>) carController.getCards(0, 1, null).get();
+
+        // Then: Verificamos que la respuesta incluye el cursor de la siguiente página
+        assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
+        assertEquals(7, ((CarPageResponse<?>) responseEntity.getBody()).getNextCursor());
+        // Verificamos que no se recupera la lista completa de coches
+        verify(carService, never()).findAll();
+    }
+
+    @Test
+    void test_streamCars() throws Exception {
+        // Mocking behavior
+        // El servicio entrega los coches uno a uno al consumidor
+        doAnswer(invocation -> {
+            Consumer<CarView> consumer = invocation.getArgument(0);
+            consumer.accept(carView(1));
+            consumer.accept(carView(2));
+            return null;
+        }).when(carService).streamAll(any());
+        // El mapper convierte cada vista en CarResponse
+        when(carMapper.toCarResponse(any(CarView.class))).thenAnswer(invocation -> carResponse(invocation.getArgument(0)));
+
+        // When: Escribimos el cuerpo de la respuesta en memoria
+        ResponseEntity<StreamingResponseBody> responseEntity = carController.streamCars(null);
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        responseEntity.getBody().writeTo(outputStream);
+
+        // Then: Verificamos que se escribe un objeto JSON por línea con el formato de CarResponse
+        String[] lines = outputStream.toString().split("\\n");
+        assertEquals(2, lines.length);
+        assertEquals(1, objectMapper.readValue(lines[0], CarResponse.class).getId());
+        assertEquals("Seat", objectMapper.readValue(lines[1], CarResponse.class).getBrandResponse().getName_brand());
+    }
+
+    @Test
+    void test_streamCarsWithFields() throws Exception {
+        // Mocking behavior
+        // El servicio entrega solo los campos pedidos de cada coche
+        doAnswer(invocation -> {
+            Consumer<Map<String, Object>> consumer = invocation.getArgument(1);
+            consumer.accept(Map.of("id", 1, "model", "Leon"));
+            consumer.accept(Map.of("id", 2, "model", "Ibiza"));
+            return null;
+        }).when(carService).streamFields(eq("model"), any());
+
+        // When: Escribimos el cuerpo de la respuesta en memoria
+        ResponseEntity<StreamingResponseBody> responseEntity = carController.streamCars("model");
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        responseEntity.getBody().writeTo(outputStream);
+
+        // Then: Verificamos que cada línea solo tiene los campos pedidos
+        String[] lines = outputStream.toString().split("\\n");
+        assertEquals(2, lines.length);
+        assertEquals(Map.of("id", 2, "model", "Ibiza"), objectMapper.readValue(lines[1], Map.class));
+        verify(carService, never()).streamAll(any());
+    }
+
+    @Test
+    void test_streamCarsWithUnknownField() {
+        // When
+        ResponseStatusException exception = assertThrows(ResponseStatusException.class,
+                () -> carController.streamCars("engine"));
+
+        // Then: Verificamos que se responde 400 antes de empezar a escribir
+        assertEquals(HttpStatus.BAD_REQUEST, exception.getStatusCode());
+        verify(carService, never()).streamFields(any(), any());
+    }
+
+    @Test
+    void test_downloadFileCarsStreamsCsv() throws Exception {
+        // Mocking behavior
+        // El servicio escribe el CSV directamente en la respuesta
+        doAnswer(invocation -> {
+            invocation.<Writer>getArgument(0).write("id,colour\n1,white\n");
+            return null;
+        }).when(carService).carsDownloadCsv(any());
+
+        // When: Escribimos el cuerpo de la respuesta en memoria
+        ResponseEntity<StreamingResponseBody> responseEntity = carController.downloadFileCars();
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        responseEntity.getBody().writeTo(outputStream);
+
+        // Then
+        assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
+        assertEquals("attachment; filename=\"cars.csv\"", responseEntity.getHeaders().getFirst(HttpHeaders.CONTENT_DISPOSITION));
+        assertEquals("id,colour\n1,white\n", outputStream.toString());
+    }
+
+    @Test
+    void test_searchCars() throws Exception {
+        // Given
+        CarPage<CarView> carPage = new CarPage<>(new ArrayList<>(), null);
+
+        // Mocking behavior
+        // Configuramos el servicio para que devuelva una página vacía para cualquier criterio
+        when(carService.search(any(), any(), any())).thenReturn(CompletableFuture.completedFuture(carPage));
+        when(carMapper.toCarPageResponse(eq(carPage), any())).thenReturn(new CarPageResponse<>(new ArrayList<>(), null));
+
+        // When: Buscamos coches de una marca dentro de un rango de precios
+        ResponseEntity<?> responseEntity = (ResponseEntity<?>) carController.searchCars(1, 10000.0, 20000.0,
+                null, null, null, null, null, null, 20, null).get();
+
+        // Then: Verificamos que la última página no tiene cursor
+        assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
+        assertEquals(null, ((CarPageResponse<?>) responseEntity.getBody()).getNextCursor());
+        // Verificamos que los criterios se pasan al servicio
+        verify(carService, times(1)).search(argThat(criteria -> criteria.getBrandId() == 1
+                && criteria.getMinPrice() == 10000.0 && criteria.getMaxPrice() == 20000.0), eq(null), eq(20));
+    }
+
+    @Test
+    void test_searchCarsWithFields() throws Exception {
+        // Given
+        Map<String, Object> car = new LinkedHashMap<>();
+        car.put("id", 3);
+        car.put("model", "Ibiza");
+        CarPage<Map<String, Object>> carPage = new CarPage<>(List.of(car), null);
+        CarPageResponse<Map<String, Object>> carPageResponse = new CarPageResponse<>(List.of(car), null);
+
+        // Mocking behavior
+        // Configuramos el servicio para que devuelva solo los campos pedidos
+        when(carService.searchFields(any(), eq(null), eq(null), eq("model")))
+                .thenReturn(CompletableFuture.completedFuture(carPage));
+        when(carMapper.<Map<String, Object>, Map<String, Object>>toCarPageResponse(eq(carPage), any()))
+                .thenReturn(carPageResponse);
+
+        // When: Pedimos únicamente el modelo de los coches
+        ResponseEntity<?> responseEntity = (ResponseEntity<?>) carController.searchCars(null, null, null,
+                null, null, null, null, null, null, null, "model").get();
+
+        // Then: Verificamos que no se usa la búsqueda completa
+        assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
+        assertEquals(carPageResponse, responseEntity.getBody());
+        verify(carService, never()).search(any(), any(), any());
+    }
+
+    @Test
+    void test_findCarsWithUnknownField() throws Exception {
+        // Mocking behavior
+        // El servicio rechaza los campos que no existen
+        when(carService.searchFields(any(), any(), any(), eq("engine")))
+                .thenThrow(new IllegalArgumentException("Unknown car field: engine"));
+
+        // When / Then: Verificamos que se responde 400
+        ResponseStatusException exception = assertThrows(ResponseStatusException.class,
+                () -> carController.getCards(null, null, "engine"));
+        assertEquals(HttpStatus.BAD_REQUEST, exception.getStatusCode());
+    }
+
+    @Test
+    void test_getCarsByIds() throws Exception {
+        // Given
+        List<LookupResult<CarView>> cars = List.of(
+                new LookupResult<>(2, true, carView(2)),
+                new LookupResult<>(9, false, null));
+
+        // Mocking behavior
+        // Configuramos el servicio para que devuelva un coche encontrado y otro no encontrado
+        when(carService.findByIds(List.of(2, 9))).thenReturn(CompletableFuture.completedFuture(cars));
+        when(carMapper.toCarLookupResponse(cars)).thenReturn(List.of(
+                new LookupResult<>(2, true, carResponse(carView(2))),
+                new LookupResult<>(9, false, null)));
+
+        // When: Pedimos los dos coches en una sola llamada
+        ResponseEntity<?> responseEntity = (ResponseEntity<?>) carController.getCarsByIds(List.of(2, 9)).get();
+
+        // Then: Verificamos que el ID no encontrado se serializa sin datos
+        assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
+        List<?> results = (List<?>) responseEntity.getBody();
+        assertEquals(2, results.size());
+        assertEquals("{\"id\":9,\"found\":false}", objectMapper.writeValueAsString(results.get(1)));
+        verify(carService, never()).findById(any());
+    }
+
+    @Test
+    void test_getCarsByIdsWithInvalidList() throws Exception {
+        // Mocking behavior
+        // El servicio rechaza una lista vacía
+        when(carService.findByIds(List.of())).thenThrow(new IllegalArgumentException("Between 1 and 500 ids must be requested"));
+
+        // When / Then: Verificamos que se responde 400
+        ResponseStatusException exception = assertThrows(ResponseStatusException.class,
+                () -> carController.getCarsByIds(List.of()));
+        assertEquals(HttpStatus.BAD_REQUEST, exception.getStatusCode());
+    }
+
+    @Test
+    void test_patchCarById() throws Exception {
+        // Given
+        CarPatchRequest patch = CarPatchRequest.builder().price(15000.0).build();
+
+        // Mocking behavior
+        // El coche 1 existe y el 2 no
+        when(carService.patchById(1, patch)).thenReturn(true);
+        when(carService.patchById(2, patch)).thenReturn(false);
+
+        // When / Then
+        assertEquals(HttpStatus.NO_CONTENT, carController.patchCarById(1, patch).getStatusCode());
+        assertEquals(HttpStatus.NOT_FOUND, carController.patchCarById(2, patch).getStatusCode());
+        // Verificamos que no se lee el coche antes de actualizarlo
+        verify(carService, never()).findById(any());
+    }
+
+    @Test
+    void test_updateCarByIdWithStaleETag() throws Exception {
+        // Given
+        CarRequest carRequest = new CarRequest();
+        Car car = new Car();
+
+        // Mocking behavior
+        // El cliente leyó el ETag "4.2" pero otra petición ha modificado el coche después
+        when(carMapper.toCarModel(carRequest)).thenReturn(car);
+        when(carService.updateById(1, car, 4L)).thenThrow(new OptimisticLockingFailureException("Car modified"));
+
+        // When
+        ResponseEntity<?> responseEntity = carController.updateCarByID(1, carRequest, "\"4.2\"");
+
+        // Then
+        // Solo cuenta la versión del coche y el conflicto se responde con 409
+        assertEquals(HttpStatus.CONFLICT, responseEntity.getStatusCode());
+        assertEquals(HttpStatus.BAD_REQUEST, carController.updateCarByID(1, carRequest, "abc").getStatusCode());
+    }
+
+    @Test
+    void test_updateCarsByFilter() {
+        // Given
+        CarPriceUpdateRequest priceUpdate = CarPriceUpdateRequest.builder().percent(5.0).build();
+
+        // Mocking behavior
+        // El servicio modifica tres coches de la marca 1 con el modelo indicado
+        when(carService.updatePrices(argThat(criteria -> criteria.getBrandId() == 1
+                && "Ibiza".equals(criteria.getModel())), eq(priceUpdate))).thenReturn(3L);
+
+        // When
+        ResponseEntity<?> responseEntity = carController.updateCarsByFilter(1, "Ibiza", null, null, priceUpdate);
+
+        // Then
+        assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
+        assertEquals(new AffectedRowsResponse(3), responseEntity.getBody());
+    }
+
+    @Test
+    void test_deleteCarsWithoutFilter() {
+        // Mocking behavior
+        // El servicio rechaza las operaciones masivas sin filtro
+        when(carService.deleteMatching(any())).thenThrow(new IllegalArgumentException("At least one filter is required"));
+
+        // When
+        ResponseEntity<?> responseEntity = carController.deleteCarsByFilter(null, null, null, null);
+
+        // Then
+        assertEquals(HttpStatus.BAD_REQUEST, responseEntity.getStatusCode());
+    }
+
     @Test
     void test_findCarByIdWhenExists() throws Exception {
         // Given
@@ -111,13 +641,18 @@ public class CarControllerTest {
         // Mocking behavior
         // Configuramos el comportamiento esperado del carService
         // para que cuando se llame a findById con el ID proporcionado, devuelva el objeto Car creado
+        when(carService.findETagById(carId)).thenReturn("1.0");
         when(carService.findById(carId)).thenReturn(car);
+        MockHttpServletResponse response = new MockHttpServletResponse();
 
         // When: Llamamos al método que queremos probar en el controlador
-        ResponseEntity<?> responseEntity = carController.getCardById(carId);
+        ResponseEntity<?> responseEntity = carController.getCardById(carId, null,
+                new ServletWebRequest(new MockHttpServletRequest("GET", "/api/car/getCar/1"), response));
 
         // Then: Verificamos que la respuesta sea HttpStatus.OK
         assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
+        // Verificamos que se devuelve el ETag con la versión del coche
+        assertEquals("\"1.0\"", response.getHeader(HttpHeaders.ETAG));
         // Verificamos que el objeto Car devuelto sea el mismo que el creado
         assertEquals(car, responseEntity.getBody());
         // Verificamos que el método findById del carService fue llamado una vez
@@ -125,6 +660,65 @@ public class CarControllerTest {
         verify(carService, times(1)).findById(carId);
     }
 
+    @Test
+    void test_findCarByIdWithFields() throws Exception {
+        // Given
+        int carId = 1;
+        Map<String, Object> car = Map.of("id", carId, "model", "Leon");
+
+        // Mocking behavior
+        // Solo se leen los campos pedidos
+        when(carService.findETagById(carId)).thenReturn("1.0");
+        when(carService.findFieldsById(carId, "model")).thenReturn(car);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        // When: Llamamos al método que queremos probar en el controlador
+        ResponseEntity<?> responseEntity = carController.getCardById(carId, "model",
+                new ServletWebRequest(new MockHttpServletRequest("GET", "/api/car/getCar/1"), response));
+
+        // Then: Verificamos que se devuelven los campos con el ETag y sin cargar el coche completo
+        assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
+        assertEquals(car, responseEntity.getBody());
+        assertEquals("\"1.0\"", response.getHeader(HttpHeaders.ETAG));
+        verify(carService, never()).findById(carId);
+    }
+
+    @Test
+    void test_findCarByIdWhenNotModified() throws Exception {
+        // Given
+        int carId = 1;
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/car/getCar/1");
+        request.addHeader(HttpHeaders.IF_NONE_MATCH, "\"1.0\"");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        // Mocking behavior
+        // La versión actual del coche coincide con la que tiene el cliente
+        when(carService.findETagById(carId)).thenReturn("1.0");
+
+        // When: Llamamos al método que queremos probar en el controlador
+        carController.getCardById(carId, null, new ServletWebRequest(request, response));
+
+        // Then: Verificamos que se responde 304 sin cargar el coche
+        assertEquals(HttpStatus.NOT_MODIFIED.value(), response.getStatus());
+        verify(carService, never()).findById(carId);
+    }
+
+    @Test
+    void test_findCarByIdWithUnknownFieldWhenNotModified() {
+        // Given
+        // El cliente tiene la versión actual pero pide un campo que no existe
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/car/getCar/1");
+        request.addHeader(HttpHeaders.IF_NONE_MATCH, "\"1.0\"");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        // When
+        ResponseEntity<?> responseEntity = carController.getCardById(1, "engine", new ServletWebRequest(request, response));
+
+        // Then: Se responde 400 sin consultar la versión del coche
+        assertEquals(HttpStatus.BAD_REQUEST, responseEntity.getStatusCode());
+        verify(carService, never()).findETagById(any());
+    }
+
     @Test
     void test_deleteCarById() throws Exception {
         // Given
@@ -133,16 +727,16 @@ public class CarControllerTest {
         // Mocking behavior
         // Comportamiento esperado del carService
         // para que cuando se llame a deleteById con el ID proporcionado, devuelva "true"
-        when(carService.deleteById(carId)).thenReturn(String.valueOf(true));
+        when(carService.deleteById(carId, null)).thenReturn(String.valueOf(true));
 
         // When: Llamamos al método que queremos probar en el controlador
-        ResponseEntity<?> responseEntity = carController.deleteCarByID(carId);
+        ResponseEntity<?> responseEntity = carController.deleteCarByID(carId, null);
 
         // Then: Verificamos que la respuesta sea HttpStatus.OK
         assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
         // Verificamos que el método deleteById del carService fue llamado una vez
         // con el ID del coche proporcionado
-        verify(carService, times(1)).deleteById(carId);
+        verify(carService, times(1)).deleteById(carId, null);
     }
 
     @Test
@@ -160,13 +754,25 @@ public class CarControllerTest {
 
         // When
         // When: Llamamos al método que queremos probar en el controlador
-        ResponseEntity<?> responseEntity = carController.updateCarByID(carId, carRequest);
+        ResponseEntity<?> responseEntity = carController.updateCarByID(carId, carRequest, null);
 
         // Then: Verificamos que la respuesta sea HttpStatus.OK
         assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
         // Verificamos que el método updateById del carService fue llamado una vez
         // con los parámetros correctos (carId, car)
-        verify(carService, times(1)).updateById(carId, car);
+        verify(carService, times(1)).updateById(carId, car, null);
+    }
+
+    private CarView carView(Integer id) {
+        return new CarView(id, "Ibiza", 89000, 15000.0, 2017, "", "white", "Gasoline", 5,
+                1, "Seat", 3, "Spain");
+    }
+
+    private CarResponse carResponse(CarView view) {
+        BrandResponse brand = new BrandResponse(view.getBrand().getId(), view.getBrand().getName_brand(),
+                view.getBrand().getWarranty(), view.getBrand().getCountry());
+        return new CarResponse(view.getId(), brand, view.getModel(), view.getMilleage(), view.getPrice(),
+                view.getYear(), view.getDescription(), view.getColour(), view.getFuelType(), view.getNumDoors());
     }
 
 }
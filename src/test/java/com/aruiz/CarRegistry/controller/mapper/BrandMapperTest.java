@@ -2,13 +2,17 @@ package com.aruiz.CarRegistry.controller.mapper;
 
 import com.aruiz.CarRegistry.controller.dto.BrandRequest;
 import com.aruiz.CarRegistry.controller.dto.BrandResponse;
+import com.aruiz.CarRegistry.controller.dto.LookupResult;
 import com.aruiz.CarRegistry.domain.Brand;
+import com.aruiz.CarRegistry.repository.BrandView;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import java.util.List;
+
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.mockito.Mockito.when;
 
@@ -76,4 +80,24 @@ class BrandMapperTest {
         assertEquals(brandRequest.getCountry(), brandResponse.getCountry());
     }
 
-}
\ No newline at end of file
+    // Prueba para verificar la conversión de los resultados por lotes de BrandView a BrandResponse
+    @Test
+    void testToBrandLookupResponse() {
+        // Given
+        List<LookupResult<BrandView>> results = List.of(
+                new LookupResult<>(1, true, new BrandView(1, "Toyota", 2, "Japan")),
+                new LookupResult<>(2, false, null));
+
+        // When
+        List<LookupResult<BrandResponse>> responses = brandMapper.toBrandLookupResponse(results);
+
+        // Then
+        assertEquals(2, responses.size());
+        assertEquals("Toyota", responses.get(0).getData().getName_brand());
+        assertEquals(2, responses.get(0).getData().getWarranty());
+        assertEquals(2, responses.get(1).getId());
+        assertEquals(false, responses.get(1).isFound());
+        assertEquals(null, responses.get(1).getData());
+    }
+
+}
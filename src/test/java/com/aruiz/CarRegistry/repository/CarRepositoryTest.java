@@ -0,0 +1,357 @@
+package com.aruiz.CarRegistry.repository;
+
+import com.aruiz.CarRegistry.controller.dto.CarPatchRequest;
+import com.aruiz.CarRegistry.controller.dto.CarPriceUpdateRequest;
+import com.aruiz.CarRegistry.controller.dto.LookupResult;
+import com.aruiz.CarRegistry.domain.CarSearchCriteria;
+import com.aruiz.CarRegistry.entity.BrandEntity;
+import com.aruiz.CarRegistry.entity.CarEntity;
+import com.aruiz.CarRegistry.service.impl.IdLookups;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Base de datos H2 en memoria con estadísticas de Hibernate para contar las sentencias SQL
+@DataJpaTest(properties = {
+        "spring.jpa.properties.hibernate.generate_statistics=true",
+        "spring.jpa.properties.hibernate.jdbc.batch_size=50",
+        "spring.jpa.properties.hibernate.order_inserts=true"
+})
+class CarRepositoryTest {
+
+    @Autowired
+    private CarRepository carRepository;
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    private Statistics statistics;
+
+    private Integer firstCarId;
+
+    @BeforeEach
+    void setUp() {
+        // Given
+        // Tres marcas con dos coches cada una
+        for (int i = 0; i < 3; i++) {
+            BrandEntity brand = new BrandEntity();
+            brand.setName_brand("Brand " + i);
+            brand.setWarranty(i);
+            brand.setCountry("Spain");
+            entityManager.persist(brand);
+
+            for (int j = 0; j < 2; j++) {
+                CarEntity car = new CarEntity();
+                car.setBrand(brand);
+                car.setModel("Model " + i + j);
+                car.setPrice(10000.0 * (i + 1));
+                car.setYear_car(2020 + j);
+                car.setFuel_type("Gasoline");
+                entityManager.persist(car);
+
+                if (firstCarId == null) {
+                    firstCarId = car.getId();
+                }
+            }
+        }
+
+        // Vaciamos el contexto de persistencia para que las marcas se tengan que leer de la base de datos
+        entityManager.flush();
+        entityManager.clear();
+
+        statistics = entityManager.getEntityManager().getEntityManagerFactory()
+                .unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+    }
+
+    @Test
+    void findAll_loadsCarsAndBrandsInOneStatement() {
+        // When
+        List<CarEntity> cars = carRepository.findAll();
+        cars.forEach(car -> car.getBrand().getName_brand());
+
+        // Then
+        assertEquals(6, cars.size());
+        assertEquals(1, statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    void findById_loadsCarAndBrandInOneStatement() {
+        // When
+        CarEntity car = carRepository.findById(firstCarId).orElseThrow();
+        car.getBrand().getName_brand();
+
+        // Then
+        assertEquals(1, statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    void findVersionById_doesNotLoadEntities() {
+        // When
+        CarVersion version = carRepository.findVersionById(firstCarId).orElseThrow();
+
+        // Then
+        assertEquals(0L, version.getCarVersion());
+        assertEquals(0L, version.getBrandVersion());
+        assertEquals(1, statistics.getPrepareStatementCount());
+        assertEquals(0, statistics.getEntityLoadCount());
+    }
+
+    @Test
+    void findViews_selectsCarsAndBrandsInOneStatement() {
+        // Given
+        CarSearchCriteria criteria = CarSearchCriteria.builder().minPrice(20000.0).fuelType("Gasoline").build();
+
+        // When
+        List<CarView> cars = carRepository.findViews(CarSpecifications.matching(criteria, null), 10);
+
+        // Then
+        assertEquals(4, cars.size());
+        assertEquals("Brand 1", cars.get(0).getBrand().getName_brand());
+        assertEquals(1, statistics.getPrepareStatementCount());
+        // Las vistas no son entidades gestionadas
+        assertEquals(0, statistics.getEntityLoadCount());
+    }
+
+    @Test
+    void findViews_appliesKeysetCursor() {
+        // When
+        List<CarView> firstPage = carRepository.findViews(CarSpecifications.matching(new CarSearchCriteria(), null), 4);
+        List<CarView> secondPage = carRepository.findViews(
+                CarSpecifications.matching(new CarSearchCriteria(), firstPage.get(3).getId()), 4);
+
+        // Then
+        assertEquals(4, firstPage.size());
+        assertEquals(2, secondPage.size());
+        assertEquals(2, statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    void findFields_selectsOnlyRequestedColumns() {
+        // When
+        List<Map<String, Object>> cars = carRepository.findFields(
+                CarSpecifications.matching(new CarSearchCriteria(), null),
+                CarFields.parse("model,id_brand.name_brand"), 10);
+
+        // Then
+        assertEquals(6, cars.size());
+        assertEquals(List.of("id", "model", "id_brand"), List.copyOf(cars.get(0).keySet()));
+        assertEquals(Map.of("name_brand", "Brand 0"), cars.get(0).get("id_brand"));
+        assertEquals(1, statistics.getPrepareStatementCount());
+        assertEquals(0, statistics.getEntityLoadCount());
+    }
+
+    @Test
+    void findFields_rejectsUnknownFields() {
+        assertThrows(IllegalArgumentException.class, () -> CarFields.parse("model,engine"));
+        assertThrows(IllegalArgumentException.class, () -> CarFields.parse("id_brand.owner"));
+    }
+
+    @Test
+    void findViewsByIdIn_returnsRequestOrderInOneStatement() {
+        // Given
+        List<Integer> ids = List.of(firstCarId + 2, -1, firstCarId, firstCarId + 2);
+
+        // When
+        List<LookupResult<CarView>> cars = IdLookups.inRequestOrder(ids,
+                carRepository.findViewsByIdIn(IdLookups.distinctIds(ids)), CarView::getId);
+
+        // Then
+        assertEquals(4, cars.size());
+        assertEquals(firstCarId + 2, cars.get(0).getData().getId());
+        assertFalse(cars.get(1).isFound());
+        assertEquals(firstCarId, cars.get(2).getData().getId());
+        assertEquals(firstCarId + 2, cars.get(3).getData().getId());
+        assertEquals(1, statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    void saveAll_insertsCarsInJdbcBatches() {
+        // Given
+        BrandEntity brand = carRepository.findById(firstCarId).orElseThrow().getBrand();
+        List<CarEntity> cars = new ArrayList<>();
+        for (int i = 0; i < 120; i++) {
+            CarEntity car = new CarEntity();
+            car.setBrand(brand);
+            car.setModel("Batch " + i);
+            cars.add(car);
+        }
+        statistics.clear();
+
+        // When
+        carRepository.saveAll(cars);
+        entityManager.flush();
+
+        // Then
+        assertEquals(120, statistics.getEntityInsertCount());
+        // Una sentencia INSERT reutilizada en todos los lotes más una consulta a la secuencia cada 50 IDs
+        assertTrue(statistics.getPrepareStatementCount() <= 4);
+    }
+
+    @Test
+    void patchById_updatesOnlySuppliedFieldsInOneStatement() {
+        // When
+        int updated = carRepository.patchById(firstCarId, CarPatchRequest.builder().price(12345.0).milleage(100).build());
+        entityManager.clear();
+
+        // Then
+        assertEquals(1, updated);
+        assertEquals(1, statistics.getPrepareStatementCount());
+        CarEntity car = carRepository.findById(firstCarId).orElseThrow();
+        assertEquals(12345.0, car.getPrice());
+        assertEquals(100, car.getMilleage());
+        assertEquals("Model 00", car.getModel());
+        assertEquals(1L, car.getVersion());
+    }
+
+    @Test
+    void patchById_returnsZeroWhenCarDoesNotExist() {
+        // When
+        int updated = carRepository.patchById(-1, CarPatchRequest.builder().price(1.0).build());
+
+        // Then
+        assertEquals(0, updated);
+    }
+
+    @Test
+    void updateById_checksVersionInTheSameStatement() {
+        // Given
+        // Nuevos datos del coche, con la descripción vacía y pasado a la segunda marca
+        CarEntity current = carRepository.findById(firstCarId).orElseThrow();
+        BrandEntity otherBrand = new BrandEntity();
+        otherBrand.setId(current.getBrand().getId() + 1);
+        CarEntity update = new CarEntity();
+        update.setBrand(otherBrand);
+        update.setModel("Leon");
+        update.setPrice(20000.0);
+        entityManager.clear();
+        statistics.clear();
+
+        // When
+        // La primera actualización parte de la versión 0 y la segunda, con la misma versión, llega tarde
+        int updated = carRepository.updateById(firstCarId, update, 0L);
+        int stale = carRepository.updateById(firstCarId, update, 0L);
+        entityManager.clear();
+
+        // Then
+        assertEquals(1, updated);
+        assertEquals(0, stale);
+        assertEquals(2, statistics.getPrepareStatementCount());
+        CarEntity car = carRepository.findById(firstCarId).orElseThrow();
+        assertEquals("Leon", car.getModel());
+        assertEquals(otherBrand.getId(), car.getBrand().getId());
+        assertEquals(null, car.getFuel_type());
+        assertEquals(1L, car.getVersion());
+    }
+
+    @Test
+    void deleteByIdAndVersion_deletesOnlyTheExpectedVersion() {
+        // When
+        int stale = carRepository.deleteByIdAndVersion(firstCarId, 5L);
+        int deleted = carRepository.deleteByIdAndVersion(firstCarId, 0L);
+        int withoutVersion = carRepository.deleteByIdAndVersion(firstCarId + 1, null);
+
+        // Then
+        assertEquals(0, stale);
+        assertEquals(1, deleted);
+        assertEquals(1, withoutVersion);
+        assertEquals(4, carRepository.count());
+    }
+
+    @Test
+    void naturalKeyCandidates_areLoadedWithTheirBrandInOneStatement() {
+        // Given
+        // Dos filas importadas: una coincide con un coche guardado (el color de ambos es null) y la otra no
+        CarEntity current = carRepository.findById(firstCarId).orElseThrow();
+        CarEntity sameCar = new CarEntity();
+        sameCar.setBrand(current.getBrand());
+        sameCar.setModel(current.getModel());
+        sameCar.setYear_car(current.getYear_car());
+        CarEntity newCar = new CarEntity();
+        newCar.setBrand(current.getBrand());
+        newCar.setModel("Model 99");
+        newCar.setYear_car(2020);
+        CarNaturalKey naturalKey = CarNaturalKey.of(List.of("id_brand", "model", "year_car", "colour"));
+        entityManager.clear();
+        statistics.clear();
+
+        // When
+        List<CarEntity> candidates = carRepository.findAll(naturalKey.candidatesFor(List.of(sameCar, newCar)));
+
+        // Then
+        assertEquals(1, statistics.getPrepareStatementCount());
+        assertEquals(1, candidates.size());
+        assertEquals(naturalKey.valueOf(sameCar), naturalKey.valueOf(candidates.get(0)));
+        assertEquals("Brand 0", candidates.get(0).getBrand().getName_brand());
+    }
+
+    @Test
+    void naturalKey_rejectsUnknownFields() {
+        assertThrows(IllegalArgumentException.class, () -> CarNaturalKey.of(List.of("model", "price")));
+        assertThrows(IllegalArgumentException.class, () -> CarNaturalKey.of(List.of(" ")));
+    }
+
+    @Test
+    void updatePrices_adjustsMatchingCarsInOneStatement() {
+        // Given
+        Integer brandId = carRepository.findById(firstCarId).orElseThrow().getBrand().getId();
+        CarSearchCriteria criteria = CarSearchCriteria.builder().brandId(brandId).minYear(2021).build();
+        entityManager.clear();
+        statistics.clear();
+
+        // When
+        int updated = carRepository.updatePrices(CarSpecifications.matching(criteria, null),
+                CarPriceUpdateRequest.builder().percent(-10.0).build());
+        entityManager.clear();
+
+        // Then
+        // Solo el coche de 2021 de la primera marca baja un 10 %
+        assertEquals(1, updated);
+        assertEquals(1, statistics.getPrepareStatementCount());
+        assertEquals(10000.0, carRepository.findById(firstCarId).orElseThrow().getPrice());
+        assertEquals(9000.0, carRepository.findById(firstCarId + 1).orElseThrow().getPrice());
+    }
+
+    @Test
+    void delete_removesMatchingCarsInOneStatement() {
+        // Given
+        CarSearchCriteria criteria = CarSearchCriteria.builder().model("Model 11").build();
+
+        // When
+        long deleted = carRepository.delete(CarSpecifications.matching(criteria, null));
+
+        // Then
+        assertEquals(1, deleted);
+        assertEquals(1, statistics.getPrepareStatementCount());
+        assertEquals(5, carRepository.count());
+    }
+
+    @Test
+    void streamViews_selectsCarsAndBrandsInOneStatement() {
+        // When
+        long count;
+        try (Stream<CarView> cars = carRepository.streamViewsBy()) {
+            count = cars.count();
+        }
+
+        // Then
+        assertEquals(6, count);
+        assertEquals(1, statistics.getPrepareStatementCount());
+        assertEquals(0, statistics.getEntityLoadCount());
+    }
+
+}
@@ -0,0 +1,102 @@
+package com.aruiz.CarRegistry.service.concurrent;
+
+import com.aruiz.CarRegistry.controller.dto.AsyncQueueStatsResponse;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AdmissionControlledExecutorTest {
+
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    private AdmissionControlledExecutor executor;
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        executor.shutdown();
+    }
+
+    @Test
+    void admit_rejectsWhenQueueDepthReachesTheLimit() throws Exception {
+        // Given
+        // Un solo hilo ocupado y dos tareas esperando en la cola, con un límite de dos
+        executor = executor(2, 60_000);
+        CountDownLatch started = new CountDownLatch(1);
+        executor.execute(() -> {
+            started.countDown();
+            await(release);
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        executor.execute(() -> { });
+        executor.execute(() -> { });
+
+        // When
+        TooManyRequestsException exception = assertThrows(TooManyRequestsException.class, executor::admit);
+
+        // Then
+        assertEquals(HttpStatus.TOO_MANY_REQUESTS, exception.getStatusCode());
+        assertEquals("1", exception.getHeaders().getFirst(HttpHeaders.RETRY_AFTER));
+        AsyncQueueStatsResponse stats = executor.getStats();
+        assertEquals(2, stats.getQueueDepth());
+        assertEquals(1, stats.getActiveThreads());
+        assertEquals(1, stats.getRejectedRequests());
+    }
+
+    @Test
+    void admit_rejectsWhenEstimatedWaitIsTooLong() throws Exception {
+        // Given
+        // Las tareas tardan unos 200 ms y solo se admite esperar 100 ms
+        executor = executor(100, 100);
+        CountDownLatch finished = new CountDownLatch(1);
+        executor.execute(() -> {
+            sleep(200);
+            finished.countDown();
+        });
+        assertTrue(finished.await(5, TimeUnit.SECONDS));
+        // La media se registra al terminar la tarea, justo después de liberar el latch
+        Thread.sleep(50);
+        assertDoesNotThrow(executor::admit);
+
+        // When
+        // Con el hilo ocupado, una tarea en cola ya supone esperar más de 100 ms
+        executor.execute(() -> await(release));
+        executor.execute(() -> { });
+
+        // Then
+        assertTrue(executor.estimatedWaitMillis() >= 100);
+        assertThrows(TooManyRequestsException.class, executor::admit);
+    }
+
+    private AdmissionControlledExecutor executor(int maxQueueDepth, long maxWaitMillis) {
+        AdmissionControlledExecutor executor = new AdmissionControlledExecutor(maxQueueDepth, maxWaitMillis);
+        executor.setCorePoolSize(1);
+        executor.setMaxPoolSize(1);
+        executor.setQueueCapacity(10);
+        executor.initialize();
+        return executor;
+    }
+
+    private void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+}
@@ -0,0 +1,87 @@
+package com.aruiz.CarRegistry.service.concurrent;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SingleFlightTest {
+
+    private final SingleFlight<Integer, String> singleFlight = new SingleFlight<>();
+
+    @Test
+    void execute_sharesOneLoadBetweenConcurrentCallers() throws Exception {
+        // Given
+        // La carga se bloquea hasta que todos los hilos han llamado a execute
+        int callers = 8;
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch arrived = new CountDownLatch(callers);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(callers);
+
+        try {
+            // When
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < callers; i++) {
+                results.add(executor.submit(() -> {
+                    arrived.countDown();
+                    return singleFlight.execute(1, () -> {
+                        loads.incrementAndGet();
+                        release.await(5, TimeUnit.SECONDS);
+                        return "car 1";
+                    });
+                }));
+            }
+
+            // Esperamos a que todos los hilos estén esperando a la carga antes de liberarla
+            assertTrue(arrived.await(5, TimeUnit.SECONDS));
+            Thread.sleep(100);
+            release.countDown();
+
+            // Then
+            for (Future<String> result : results) {
+                assertEquals("car 1", result.get(5, TimeUnit.SECONDS));
+            }
+            assertEquals(1, loads.get());
+            assertEquals(0, singleFlight.inFlightCount());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void execute_loadsAgainOnceTheFlightHasFinished() throws Exception {
+        // Given
+        AtomicInteger loads = new AtomicInteger();
+
+        // When
+        singleFlight.execute(1, () -> "load " + loads.incrementAndGet());
+        String second = singleFlight.execute(1, () -> "load " + loads.incrementAndGet());
+
+        // Then
+        // No se guarda ningún resultado una vez terminada la carga
+        assertEquals("load 2", second);
+    }
+
+    @Test
+    void execute_propagatesLoaderException() {
+        // When
+        IllegalStateException exception = assertThrows(IllegalStateException.class,
+                () -> singleFlight.execute(1, () -> {
+                    throw new IllegalStateException("database down");
+                }));
+
+        // Then
+        assertEquals("database down", exception.getMessage());
+        assertEquals(0, singleFlight.inFlightCount());
+    }
+
+}
@@ -9,6 +9,7 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.OptimisticLockingFailureException;
 
 import java.util.Optional;
 
@@ -120,15 +121,14 @@ class BrandServiceImplTest {
         Integer brandId = 1;
 
         // Configuramos el comportamiento del mock brandRepository
-        when(brandRepository.findById(brandId)).thenReturn(Optional.of(new BrandEntity())); // Mock para devolver una entidad válida al buscar por ID
+        when(brandRepository.deleteByIdAndVersion(brandId, null)).thenReturn(1); // La sentencia DELETE elimina la marca
 
         // When
-        boolean isDeleted = brandService.delete(brandId); // Llamada al método a probar
+        boolean isDeleted = brandService.delete(brandId, null); // Llamada al método a probar
 
         // Then
         assertTrue(isDeleted); // Verificar que se eliminó correctamente
-        verify(brandRepository, times(1)).findById(brandId); // Verificar que se llamó a findById en el repositorio
-        verify(brandRepository, times(1)).deleteById(brandId); // Verificar que se llamó a deleteById en el repositorio
+        verify(brandRepository, never()).findById(brandId); // Verificar que no se leyó la marca antes de eliminarla
     }
 
     @Test
@@ -136,16 +136,28 @@ class BrandServiceImplTest {
         // Given
         Integer brandId = 1;
 
-        // Configuramos el comportamiento del mock brandRepository para devolver un Optional vacío al buscar por ID
-        when(brandRepository.findById(brandId)).thenReturn(Optional.empty());
+        // Configuramos el comportamiento del mock brandRepository para que la sentencia DELETE no elimine ninguna fila
+        when(brandRepository.deleteByIdAndVersion(brandId, null)).thenReturn(0);
 
         // When
-        boolean isDeleted = brandService.delete(brandId); // Llamada al método a probar
+        boolean isDeleted = brandService.delete(brandId, null); // Llamada al método a probar
 
         // Then
         assertFalse(isDeleted); // Verificar que no se eliminó porque la entidad no existe
-        verify(brandRepository, times(1)).findById(brandId); // Verificar que se llamó a findById en el repositorio
-        verify(brandRepository, never()).deleteById(brandId); // Verificar que no se llamó a deleteById en el repositorio
+        verify(brandRepository, never()).existsById(brandId); // Sin versión esperada no hay conflicto que comprobar
+    }
+
+    @Test
+    void test_deleteWhenVersionChanged() throws Exception {
+        // Given
+        Integer brandId = 1;
+
+        // La marca existe pero su versión ya no es la 3
+        when(brandRepository.deleteByIdAndVersion(brandId, 3L)).thenReturn(0);
+        when(brandRepository.existsById(brandId)).thenReturn(true);
+
+        // When / Then
+        assertThrows(OptimisticLockingFailureException.class, () -> brandService.delete(brandId, 3L));
     }
 
     @Test
@@ -153,27 +165,21 @@ class BrandServiceImplTest {
         // Given
         Integer brandId = 1;
         Brand brandRequest = new Brand(); // Crea una nueva instancia de Brand para la solicitud de actualización
-        brandRequest.setId(brandId);
-        BrandEntity existingBrandEntity = new BrandEntity(); // Crea una instancia de BrandEntity existente
-        existingBrandEntity.setId(brandId); // Establece el ID en la entidad existente
-
-        // Configuramos el comportamiento del mock brandRepository para devolver la entidad existente al buscar por ID
-        when(brandRepository.findById(brandId)).thenReturn(Optional.of(existingBrandEntity));
+        brandRequest.setName_brand("Seat");
+        brandRequest.setWarranty(3);
+        brandRequest.setCountry("Spain");
 
-        // Mock para el objeto de entidad resultante después de la actualización
-        BrandEntity updatedBrandEntity = new BrandEntity();
-        updatedBrandEntity.setId(brandId);
-        when(brandConverter.toBrandEntity(brandRequest)).thenReturn(updatedBrandEntity);
+        // Configuramos el comportamiento del mock brandRepository para que la sentencia UPDATE modifique la marca
+        when(brandRepository.updateById(brandId, "Seat", 3, "Spain", 2L)).thenReturn(1);
 
         // When
-        Brand updatedBrand = brandService.updateBrand(brandId, brandRequest); // Llamada al método a probar
-        updatedBrand.setId(brandId);
+        Brand updatedBrand = brandService.updateBrand(brandId, brandRequest, 2L); // Llamada al método a probar
 
         // Then
         assertNotNull(updatedBrand); // Verifica que se devuelve un objeto de marca actualizado
         assertEquals(brandId, updatedBrand.getId()); // Verifica que el ID del objeto de marca actualizado sea el mismo que el ID proporcionado
-        verify(brandRepository, times(1)).findById(brandId); // Verifica que se llamó a findById en el repositorio
-        verify(brandRepository, times(1)).save(updatedBrandEntity); // Verifica que se llamó a save en el repositorio con la entidad actualizada
+        verify(brandRepository, never()).findById(brandId); // Verifica que no se leyó la marca antes de actualizarla
+        verify(brandRepository, never()).save(any()); // Verifica que la actualización se hizo con una sola sentencia
     }
 
     @Test
@@ -182,17 +188,30 @@ class BrandServiceImplTest {
         Integer brandId = 1;
         Brand brandRequest = new Brand(); // Crea una nueva instancia de Brand para la solicitud de actualización
 
-        // Configuramos el comportamiento del mock brandRepository para devolver un Optional vacío al buscar por ID
-        when(brandRepository.findById(brandId)).thenReturn(Optional.empty());
+        // Configuramos el comportamiento del mock brandRepository para que la marca no exista
+        when(brandRepository.updateById(brandId, null, null, null, 2L)).thenReturn(0);
+        when(brandRepository.existsById(brandId)).thenReturn(false);
 
         // When
-        Brand updatedBrand = brandService.updateBrand(brandId, brandRequest); // Llamada al método a probar
+        Brand updatedBrand = brandService.updateBrand(brandId, brandRequest, 2L); // Llamada al método a probar
 
         // Then
         assertNull(updatedBrand); // Verifica que no se devuelve ningún objeto de marca, ya que no existe la marca a actualizar
-        verify(brandRepository, times(1)).findById(brandId); // Verifica que se llamó a findById en el repositorio
-        verify(brandRepository, never()).save(any()); // Verifica que no se llamó a save en el repositorio (ya que la marca no existe)
+    }
+
+    @Test
+    void test_updateBrandWhenVersionChanged() {
+        // Given
+        Integer brandId = 1;
+        Brand brandRequest = new Brand();
+
+        // La marca existe pero otra petición la ha modificado después de que el cliente leyera la versión 2
+        when(brandRepository.updateById(brandId, null, null, null, 2L)).thenReturn(0);
+        when(brandRepository.existsById(brandId)).thenReturn(true);
+
+        // When / Then
+        assertThrows(OptimisticLockingFailureException.class, () -> brandService.updateBrand(brandId, brandRequest, 2L));
     }
 
 
-}
\ No newline at end of file
+}
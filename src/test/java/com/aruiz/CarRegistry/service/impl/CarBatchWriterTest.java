@@ -0,0 +1,184 @@
+package com.aruiz.CarRegistry.service.impl;
+
+import com.aruiz.CarRegistry.controller.dto.BulkImportReport;
+import com.aruiz.CarRegistry.entity.CarEntity;
+import com.aruiz.CarRegistry.repository.CarNaturalKey;
+import com.aruiz.CarRegistry.repository.CarRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentMatchers;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class CarBatchWriterTest {
+
+    @InjectMocks
+    private CarBatchWriter carBatchWriter;
+
+    @Mock
+    private CarRepository carRepository;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private final Map<Long, CarEntity> rows = new LinkedHashMap<>();
+
+    @BeforeEach
+    void setUp() {
+        // Given
+        // Cinco coches guardados en bloques de dos
+        carBatchWriter.chunkSize = 2;
+        for (long row = 1; row <= 5; row++) {
+            CarEntity car = new CarEntity();
+            car.setModel("Model " + row);
+            rows.put(row, car);
+        }
+    }
+
+    @Test
+    void write_savesEachChunkInItsOwnTransaction() {
+        // Mocking behavior
+        // El repositorio asigna a cada coche el número de su modelo como ID
+        when(carRepository.saveAll(anyList())).thenAnswer(invocation -> {
+            List<CarEntity> cars = invocation.getArgument(0);
+            cars.forEach(car -> car.setId(Integer.valueOf(car.getModel().substring(6))));
+            return cars;
+        });
+
+        // When
+        BulkImportReport report = new BulkImportReport();
+        carBatchWriter.write(rows, report);
+
+        // Then
+        assertEquals(List.of(1, 2, 3, 4, 5), report.getAcceptedIds());
+        assertEquals(0, report.getRejected().size());
+        verify(carRepository, times(3)).saveAll(anyList());
+        verify(transactionManager, times(3)).commit(any());
+    }
+
+    @Test
+    void write_retriesFailedChunkRowByRow() {
+        // Mocking behavior
+        // El segundo bloque falla por el coche de la fila 4, que tampoco se puede guardar solo
+        when(carRepository.saveAll(anyList())).thenAnswer(invocation -> {
+            List<CarEntity> cars = invocation.getArgument(0);
+            if (cars.contains(rows.get(4L))) {
+                throw new DataIntegrityViolationException("Duplicate entry");
+            }
+            cars.forEach(car -> car.setId(Integer.valueOf(car.getModel().substring(6))));
+            return cars;
+        });
+        when(carRepository.save(any())).thenAnswer(invocation -> {
+            CarEntity car = invocation.getArgument(0);
+            if (car == rows.get(4L)) {
+                throw new DataIntegrityViolationException("Duplicate entry");
+            }
+            car.setId(Integer.valueOf(car.getModel().substring(6)));
+            return car;
+        });
+
+        // When
+        BulkImportReport report = new BulkImportReport();
+        carBatchWriter.write(rows, report);
+
+        // Then
+        // Las filas válidas del bloque que falló se guardan y la fila 4 se rechaza con el motivo
+        assertEquals(List.of(1, 2, 3, 5), report.getAcceptedIds());
+        assertEquals(1, report.getRejected().size());
+        assertEquals(4, report.getRejected().get(0).getRow());
+        assertEquals("Duplicate entry", report.getRejected().get(0).getReason());
+        verify(transactionManager, times(2)).rollback(any());
+    }
+
+    @Test
+    void upsert_insertsNewRowsUpdatesChangedRowsAndSkipsUnchangedRows() {
+        // Given
+        // Ya están guardados el coche de la fila 1 sin cambios y el de la fila 2 con otro precio
+        carBatchWriter.naturalKey = CarNaturalKey.of(List.of("model"));
+        rows.values().forEach(car -> car.setPrice(1000.0));
+        CarEntity unchanged = storedCar(11, "Model 1", 1000.0);
+        CarEntity changed = storedCar(12, "Model 2", 900.0);
+
+        // Mocking behavior
+        when(carRepository.findAll(ArgumentMatchers.<Specification<CarEntity>>any()))
+                .thenReturn(List.of(unchanged, changed), List.of());
+        when(carRepository.saveAll(anyCollection())).thenAnswer(invocation -> {
+            Collection<CarEntity> cars = invocation.getArgument(0);
+            cars.forEach(car -> car.setId(Integer.valueOf(car.getModel().substring(6))));
+            return new ArrayList<>(cars);
+        });
+
+        // When
+        BulkImportReport report = new BulkImportReport();
+        carBatchWriter.upsert(rows, report);
+
+        // Then
+        // Solo se insertan las filas 3, 4 y 5; el coche de la fila 2 se actualiza en la transacción de su bloque
+        assertEquals(List.of(3, 4, 5), report.getAcceptedIds());
+        assertEquals(List.of(12), report.getUpdatedIds());
+        assertEquals(1, report.getUnchanged());
+        assertEquals(1000.0, changed.getPrice());
+        verify(carRepository, times(3)).findAll(ArgumentMatchers.<Specification<CarEntity>>any());
+        verify(transactionManager, times(3)).commit(any());
+    }
+
+    @Test
+    void upsert_rejectsRowsMatchingSeveralStoredCars() {
+        // Given
+        // Hay dos coches guardados con la clave de la fila 1 y ninguno con la de las demás
+        carBatchWriter.naturalKey = CarNaturalKey.of(List.of("model"));
+        CarEntity first = storedCar(11, "Model 1", 900.0);
+        CarEntity second = storedCar(21, "Model 1", 800.0);
+
+        // Mocking behavior
+        when(carRepository.findAll(ArgumentMatchers.<Specification<CarEntity>>any()))
+                .thenReturn(List.of(first, second), List.of());
+        when(carRepository.saveAll(anyCollection())).thenAnswer(invocation -> {
+            Collection<CarEntity> cars = invocation.getArgument(0);
+            cars.forEach(car -> car.setId(Integer.valueOf(car.getModel().substring(6))));
+            return new ArrayList<>(cars);
+        });
+
+        // When
+        BulkImportReport report = new BulkImportReport();
+        carBatchWriter.upsert(rows, report);
+
+        // Then
+        // La fila 1 se rechaza sin tocar ninguno de los dos coches y el resto se inserta
+        assertEquals(List.of(2, 3, 4, 5), report.getAcceptedIds());
+        assertEquals(List.of(), report.getUpdatedIds());
+        assertEquals(1, report.getRejected().size());
+        assertEquals(1, report.getRejected().get(0).getRow());
+        assertTrue(report.getRejected().get(0).getReason().startsWith("Ambiguous natural key"));
+        assertEquals(900.0, first.getPrice());
+        assertEquals(800.0, second.getPrice());
+    }
+
+    private CarEntity storedCar(Integer id, String model, Double price) {
+        CarEntity car = new CarEntity();
+        car.setId(id);
+        car.setModel(model);
+        car.setPrice(price);
+        return car;
+    }
+
+}
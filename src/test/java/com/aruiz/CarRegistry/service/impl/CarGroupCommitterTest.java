@@ -0,0 +1,139 @@
+package com.aruiz.CarRegistry.service.impl;
+
+import com.aruiz.CarRegistry.entity.CarEntity;
+import com.aruiz.CarRegistry.repository.CarRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class CarGroupCommitterTest {
+
+    @InjectMocks
+    private CarGroupCommitter carGroupCommitter;
+
+    @Mock
+    private CarRepository carRepository;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @BeforeEach
+    void setUp() {
+        // Given
+        // Lotes de hasta diez coches, con margen suficiente para que se agrupen todas las altas del test
+        carGroupCommitter.enabled = true;
+        carGroupCommitter.maxBatch = 10;
+        carGroupCommitter.maxDelayMs = 200;
+        carGroupCommitter.queueCapacity = 100;
+        carGroupCommitter.timeoutMs = 5000;
+        carGroupCommitter.start();
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        carGroupCommitter.stop();
+    }
+
+    @Test
+    void submit_savesConcurrentCarsInOneTransaction() throws Exception {
+        // Mocking behavior
+        // El repositorio asigna a cada coche el número de su modelo como ID
+        when(carRepository.saveAll(anyList())).thenAnswer(invocation -> {
+            List<CarEntity> cars = invocation.getArgument(0);
+            cars.forEach(car -> car.setId(Integer.valueOf(car.getModel().substring(6))));
+            return cars;
+        });
+
+        // When
+        List<CompletableFuture<CarEntity>> results = new ArrayList<>();
+        for (int i = 1; i <= 5; i++) {
+            results.add(carGroupCommitter.submit(car(i)));
+        }
+
+        // Then
+        // Cada llamada recibe su propio coche y todos se confirman en una sola transacción
+        for (int i = 1; i <= 5; i++) {
+            assertEquals(i, results.get(i - 1).get(5, TimeUnit.SECONDS).getId());
+        }
+        verify(carRepository, times(1)).saveAll(anyList());
+        verify(transactionManager, times(1)).commit(any());
+    }
+
+    @Test
+    void submit_failsOnlyTheCarThatCannotBeSaved() throws Exception {
+        // Mocking behavior
+        // El lote falla por el coche 2, que tampoco se puede guardar solo
+        when(carRepository.saveAll(anyList())).thenThrow(new DataIntegrityViolationException("Duplicate entry"));
+        when(carRepository.save(any())).thenAnswer(invocation -> {
+            CarEntity car = invocation.getArgument(0);
+            if (car.getModel().equals("Model 2")) {
+                throw new DataIntegrityViolationException("Duplicate entry");
+            }
+            car.setId(Integer.valueOf(car.getModel().substring(6)));
+            return car;
+        });
+
+        // When
+        CompletableFuture<CarEntity> first = carGroupCommitter.submit(car(1));
+        CompletableFuture<CarEntity> second = carGroupCommitter.submit(car(2));
+
+        // Then
+        assertEquals(1, first.get(5, TimeUnit.SECONDS).getId());
+        ExecutionException exception = assertThrows(ExecutionException.class, () -> second.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(DataIntegrityViolationException.class, exception.getCause());
+    }
+
+    @Test
+    void submit_keepsFlushingAfterAnError() throws Exception {
+        // Mocking behavior
+        // El primer lote falla con un Error, que no se puede reintentar coche a coche
+        when(carRepository.saveAll(anyList()))
+                .thenThrow(new LinkageError("Broken driver"))
+                .thenAnswer(invocation -> invocation.getArgument(0));
+
+        // When
+        CompletableFuture<CarEntity> first = carGroupCommitter.submit(car(1));
+        ExecutionException exception = assertThrows(ExecutionException.class, () -> first.get(5, TimeUnit.SECONDS));
+        CompletableFuture<CarEntity> second = carGroupCommitter.submit(car(2));
+
+        // Then
+        // Solo falla la llamada del lote afectado y el hilo sigue guardando los siguientes lotes
+        assertInstanceOf(LinkageError.class, exception.getCause());
+        assertEquals("Model 2", second.get(5, TimeUnit.SECONDS).getModel());
+    }
+
+    @Test
+    void submit_failsAfterStop() throws Exception {
+        // When
+        carGroupCommitter.stop();
+
+        // Then
+        // Las llamadas posteriores fallan al momento en lugar de quedarse esperando
+        assertThrows(IllegalStateException.class, () -> carGroupCommitter.submit(car(1)));
+    }
+
+    private CarEntity car(int number) {
+        CarEntity car = new CarEntity();
+        car.setModel("Model " + number);
+        return car;
+    }
+
+}
@@ -0,0 +1,207 @@
+package com.aruiz.CarRegistry.service.impl;
+
+import com.aruiz.CarRegistry.controller.dto.BulkImportReport;
+import com.aruiz.CarRegistry.controller.dto.ImportJobResponse;
+import com.aruiz.CarRegistry.controller.dto.RowError;
+import com.aruiz.CarRegistry.domain.CarImportMode;
+import com.aruiz.CarRegistry.domain.ImportJobStatus;
+import com.aruiz.CarRegistry.service.CarImportProgress;
+import com.aruiz.CarRegistry.service.CarService;
+import com.aruiz.CarRegistry.service.concurrent.TooManyRequestsException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class CarImportJobServiceTest {
+
+    @Mock
+    private CarService carService;
+
+    @Spy
+    private ThreadPoolTaskExecutor importJobExecutor = new ThreadPoolTaskExecutor();
+
+    @InjectMocks
+    private CarImportJobService carImportJobService;
+
+    @TempDir
+    Path spoolDir;
+
+    private final MockMultipartFile file = new MockMultipartFile("file", "cars.csv", "text/csv",
+            "colour,model\nred,Leon\n".getBytes(StandardCharsets.UTF_8));
+
+    @BeforeEach
+    void setUp() {
+        // Given
+        // Un solo hilo para las importaciones y una cola de un trabajo
+        importJobExecutor.setCorePoolSize(1);
+        importJobExecutor.setMaxPoolSize(1);
+        importJobExecutor.setQueueCapacity(1);
+        importJobExecutor.initialize();
+        carImportJobService.spoolDir = spoolDir.toString();
+        carImportJobService.retentionMinutes = 60;
+    }
+
+    @AfterEach
+    void tearDown() {
+        importJobExecutor.shutdown();
+    }
+
+    @Test
+    void submit_importsSpooledFileInBackground() throws Exception {
+        // Mocking behavior
+        // La importación lee el archivo guardado en disco, guarda un bloque y rechaza una fila
+        when(carService.importCars(any(InputStream.class), eq(CarImportMode.UPSERT), any())).thenAnswer(invocation -> {
+            InputStream input = invocation.getArgument(0);
+            assertEquals("colour,model\nred,Leon\n", new String(input.readAllBytes(), StandardCharsets.UTF_8));
+
+            CarImportProgress progress = invocation.getArgument(2);
+            BulkImportReport report = new BulkImportReport(List.of(1), List.of());
+            progress.rowRejected(new RowError(2, 3, "Brand not found for ID: 99", List.of("blue")));
+            progress.batchWritten(report);
+            return report;
+        });
+
+        // When
+        ImportJobResponse queued = carImportJobService.submit(file, CarImportMode.UPSERT);
+        ImportJobResponse finished = awaitFinished(queued.getJobId());
+
+        // Then
+        assertEquals("cars.csv", queued.getFileName());
+        assertEquals(file.getSize(), queued.getTotalBytes());
+        assertEquals(ImportJobStatus.COMPLETED, finished.getStatus());
+        assertEquals(1, finished.getInserted());
+        assertEquals(1, finished.getRowsParsed());
+        assertEquals(100.0, finished.getProgress());
+        assertEquals(List.of(1), finished.getReport().getAcceptedIds());
+        assertNull(finished.getEtaSeconds());
+        // Las filas rechazadas se guardan en el archivo del trabajo
+        Path rejectedRows = carImportJobService.getRejectedRowsFile(queued.getJobId()).orElseThrow();
+        assertTrue(Files.readString(rejectedRows).endsWith("\r\n2,3,Brand not found for ID: 99,blue\r\n"));
+        // El archivo subido se borra al terminar y solo queda el de filas rechazadas
+        try (var files = Files.list(spoolDir)) {
+            assertEquals(List.of(rejectedRows), files.toList());
+        }
+    }
+
+    @Test
+    void cancel_stopsRunningJobAfterCurrentBatch() throws Exception {
+        // Given
+        CountDownLatch running = new CountDownLatch(1);
+
+        // Mocking behavior
+        // La importación guarda bloques hasta que se cancela, como CarServiceImpl.importCars
+        when(carService.importCars(any(InputStream.class), any(), any())).thenAnswer(invocation -> {
+            CarImportProgress progress = invocation.getArgument(2);
+            BulkImportReport report = new BulkImportReport();
+            while (true) {
+                report.addAccepted(report.getAcceptedIds().size() + 1);
+                progress.batchWritten(report);
+                running.countDown();
+                if (progress.isCancelled()) {
+                    throw new CancellationException("Import cancelled");
+                }
+                Thread.sleep(5);
+            }
+        });
+        String jobId = carImportJobService.submit(file, CarImportMode.INSERT).getJobId();
+        assertTrue(running.await(5, TimeUnit.SECONDS));
+
+        // When
+        ImportJobResponse cancelling = carImportJobService.cancel(jobId).orElseThrow();
+        ImportJobResponse finished = awaitFinished(jobId);
+
+        // Then
+        assertEquals(ImportJobStatus.RUNNING, cancelling.getStatus());
+        assertEquals(ImportJobStatus.CANCELLED, finished.getStatus());
+        // Los bloques guardados antes de cancelar se conservan en el estado
+        assertTrue(finished.getInserted() > 0);
+        assertTrue(carImportJobService.getJob("unknown").isEmpty());
+    }
+
+    @Test
+    void submit_rejectsWhenQueueIsFull() throws Exception {
+        // Given
+        CountDownLatch release = new CountDownLatch(1);
+
+        // Mocking behavior
+        // El primer trabajo ocupa el único hilo y el segundo ocupa la cola
+        when(carService.importCars(any(InputStream.class), any(), any())).thenAnswer(invocation -> {
+            release.await(5, TimeUnit.SECONDS);
+            return new BulkImportReport();
+        });
+        carImportJobService.submit(file, CarImportMode.INSERT);
+        String queuedId = carImportJobService.submit(file, CarImportMode.INSERT).getJobId();
+
+        // When
+        TooManyRequestsException exception = assertThrows(TooManyRequestsException.class,
+                () -> carImportJobService.submit(file, CarImportMode.INSERT));
+
+        // Then
+        assertEquals(60, exception.getRetryAfterSeconds());
+        // Un trabajo en cola se cancela al momento y su archivo se borra
+        assertEquals(ImportJobStatus.CANCELLED, carImportJobService.cancel(queuedId).orElseThrow().getStatus());
+        try (var files = Files.list(spoolDir)) {
+            assertEquals(1, files.filter(file -> !file.toString().endsWith("-rejected.csv")).count());
+        }
+        release.countDown();
+    }
+
+    @Test
+    void purgeFinishedJobs_removesExpiredJobsAndRejectedRowsFile() throws Exception {
+        // Given
+        // Los trabajos terminados no se conservan
+        carImportJobService.retentionMinutes = 0;
+
+        // Mocking behavior
+        when(carService.importCars(any(InputStream.class), any(), any())).thenReturn(new BulkImportReport());
+        String jobId = carImportJobService.submit(file, CarImportMode.INSERT).getJobId();
+        awaitFinished(jobId);
+        Thread.sleep(5);
+
+        // When
+        carImportJobService.purgeFinishedJobs();
+
+        // Then
+        // Se eliminan sin necesidad de subir otra importación, junto con el archivo de filas rechazadas
+        assertTrue(carImportJobService.getJob(jobId).isEmpty());
+        try (var files = Files.list(spoolDir)) {
+            assertEquals(0, files.count());
+        }
+    }
+
+    private ImportJobResponse awaitFinished(String jobId) throws InterruptedException {
+        for (int i = 0; i < 500; i++) {
+            ImportJobResponse job = carImportJobService.getJob(jobId).orElseThrow();
+            if (job.getStatus().isFinished()) {
+                return job;
+            }
+            Thread.sleep(10);
+        }
+        fail("Import job did not finish");
+        return null;
+    }
+
+}
@@ -1,12 +1,24 @@
 package com.aruiz.CarRegistry.service.impl;
 
+import com.aruiz.CarRegistry.config.CacheConfig;
+import com.aruiz.CarRegistry.controller.dto.BulkImportReport;
+import com.aruiz.CarRegistry.controller.dto.CarPriceUpdateRequest;
 import com.aruiz.CarRegistry.controller.dto.CarRequest;
+import com.aruiz.CarRegistry.controller.dto.RowError;
+import com.aruiz.CarRegistry.domain.Brand;
 import com.aruiz.CarRegistry.domain.Car;
+import com.aruiz.CarRegistry.domain.CarImportMode;
+import com.aruiz.CarRegistry.domain.CarSearchCriteria;
 import com.aruiz.CarRegistry.entity.BrandEntity;
 import com.aruiz.CarRegistry.entity.CarEntity;
 import com.aruiz.CarRegistry.repository.BrandRepository;
 import com.aruiz.CarRegistry.repository.CarRepository;
+import com.aruiz.CarRegistry.repository.CarVersion;
+import com.aruiz.CarRegistry.repository.CarView;
+import com.aruiz.CarRegistry.service.CarImportProgress;
+import com.aruiz.CarRegistry.service.CarImportResult;
 import com.aruiz.CarRegistry.service.converter.CarConverter;
+import org.apache.commons.csv.CSVFormat;
 import org.apache.commons.csv.CSVRecord;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -14,18 +26,37 @@ import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.concurrent.ConcurrentMapCache;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.mock.web.MockMultipartFile;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.ByteArrayInputStream;
-import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.StringWriter;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.function.BiFunction;
+import java.util.function.ToLongFunction;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.ArgumentMatchers.anyList;
 import static org.mockito.Mockito.*;
 
@@ -41,6 +72,18 @@ class CarServiceImplTest {
     @Mock
     BrandRepository brandRepository;
 
+    @Mock
+    CacheManager cacheManager;
+
+    @Mock
+    CarBatchWriter carBatchWriter;
+
+    @Mock
+    CarGroupCommitter carGroupCommitter;
+
+    @Mock
+    ParallelCsvReader parallelCsvReader;
+
     @InjectMocks
     private CarServiceImpl carService;
 
@@ -71,23 +114,247 @@ class CarServiceImplTest {
         // Given
         List<CarRequest> carRequestsList = new ArrayList<>();
         CarRequest carRequest = new CarRequest();
+        carRequest.setIdBrand(1);
+        carRequestsList.add(carRequest);
         carRequestsList.add(carRequest);
 
+        BrandEntity brandEntity = new BrandEntity();
+        brandEntity.setId(1);
         CarEntity carEntity = new CarEntity();
-        List<Car> cars = new ArrayList<>();
-        cars.add(new Car());
 
+        // Configuramos el repositorio de marcas para que devuelva la marca de todo el lote
+        when(brandRepository.findAllById(Set.of(1))).thenReturn(List.of(brandEntity));
         // Configuramos el comportamiento del convertidor para que devuelva la entidad de automóvil creada
-        when(carConverter.toCarEntity(carRequest)).thenReturn(carEntity);
-        // Configuramos el comportamiento del repositorio para que devuelva la misma entidad de automóvil
-        when(carRepository.save(carEntity)).thenReturn(carEntity);
-        // Configuramos el comportamiento del convertidor para que devuelva null cuando no haya entidades de automóvil para convertir
-        when(carConverter.toCar(null)).thenReturn(null);
+        when(carConverter.toCarEntity(carRequest, brandEntity)).thenReturn(carEntity);
+        // Configuramos el escritor por bloques para que acepte todas las filas
+        doAnswer(invocation -> {
+            Map<Long, CarEntity> rows = invocation.getArgument(0);
+            BulkImportReport report = invocation.getArgument(1);
+            rows.keySet().forEach(row -> report.addAccepted(row.intValue()));
+            return null;
+        }).when(carBatchWriter).write(anyMap(), any());
+        // El informe solo guarda un ID, pero la caché se invalida para todos los coches guardados
+        carService.reportSampleSize = 1;
+        Cache cache = mock(Cache.class);
+        when(cacheManager.getCache(CacheConfig.CARS_CACHE)).thenReturn(cache);
 
         // When
-        CompletableFuture<List<Car>> completableFuture = carService.saveAll(carRequestsList);
+        CompletableFuture<BulkImportReport> completableFuture = carService.saveAll(carRequestsList);
         // Then
-        assertEquals(cars.size(), completableFuture.get().size());
+        assertEquals(2, completableFuture.get().getAcceptedCount());
+        assertEquals(List.of(1), completableFuture.get().getAcceptedIds());
+        assertTrue(completableFuture.get().isTruncated());
+        assertTrue(completableFuture.get().getRejected().isEmpty());
+        verify(cache).evict(1);
+        verify(cache).evict(2);
+    }
+
+    @Test
+    void saveAllWithUnknownBrand() throws Exception {
+        // Given
+        // La segunda fila hace referencia a una marca que no existe
+        CarRequest validCar = new CarRequest();
+        validCar.setIdBrand(1);
+        CarRequest invalidCar = new CarRequest();
+        invalidCar.setIdBrand(99);
+
+        BrandEntity brandEntity = new BrandEntity();
+        brandEntity.setId(1);
+        CarEntity carEntity = new CarEntity();
+        when(brandRepository.findAllById(Set.of(1, 99))).thenReturn(List.of(brandEntity));
+        when(carConverter.toCarEntity(validCar, brandEntity)).thenReturn(carEntity);
+
+        // When
+        BulkImportReport report = carService.saveAll(List.of(validCar, invalidCar)).get();
+
+        // Then
+        // Se informa de la fila no válida y solo se envía a guardar la válida
+        assertEquals(1, report.getRejected().size());
+        assertEquals(2, report.getRejected().get(0).getRow());
+        verify(carBatchWriter).write(eq(Map.of(1L, carEntity)), any());
+    }
+
+    @Test
+    void uploadCarsStreamsFixedSizeBatches() {
+        // Given
+        // Bloques de dos filas; la fila 3 no tiene un formato válido y la 4 es de una marca que no existe
+        String csv = "colour,description_car,fuel_type,milleage,model,num_doors,price,year_car,id_brand\n"
+                + "white,,Gasoline,1000,Ibiza,5,15000,2020,1\n"
+                + "red,,Gasoline,2000,Leon,5,20000,2021,1\n"
+                + "blue,,Gasoline,many,Arona,5,18000,2022,1\n"
+                + "black,,Diesel,3000,Ateca,5,25000,2022,99\n"
+                + "grey,,Diesel,4000,Tarraco,5,30000,2023,1\n";
+        MockMultipartFile file = new MockMultipartFile("file", "cars.csv", "text/csv", csv.getBytes(StandardCharsets.UTF_8));
+
+        BrandEntity brandEntity = new BrandEntity();
+        brandEntity.setId(1);
+        when(carBatchWriter.getChunkSize()).thenReturn(2);
+        when(brandRepository.findAllById(Set.of(1))).thenReturn(List.of(brandEntity));
+        when(brandRepository.findAllById(Set.of(99))).thenReturn(List.of());
+
+        // El escritor registra las filas de cada bloque en el momento de guardarlo
+        List<Set<Long>> batches = new ArrayList<>();
+        doAnswer(invocation -> {
+            Map<Long, CarEntity> rows = invocation.getArgument(0);
+            batches.add(Set.copyOf(rows.keySet()));
+            return null;
+        }).when(carBatchWriter).write(anyMap(), any());
+
+        // When
+        BulkImportReport report = carService.uploadCars(file, CarImportMode.INSERT);
+
+        // Then
+        // Se guardan dos bloques y cada marca se consulta una sola vez
+        assertEquals(List.of(Set.of(1L, 2L), Set.of(5L)), batches);
+        assertEquals(List.of(3L, 4L), report.getRejected().stream().map(RowError::getRow).toList());
+        verify(brandRepository, times(1)).findAllById(Set.of(1));
+        verify(brandRepository, times(1)).findAllById(Set.of(99));
+    }
+
+    @Test
+    void uploadCarsWithRejectedRowsWritesEveryRejectedRow() throws Exception {
+        // Given
+        // La segunda fila es de una marca que no existe
+        String csv = "colour,description_car,fuel_type,milleage,model,num_doors,price,year_car,id_brand\n"
+                + "white,,Gasoline,1000,Ibiza,5,15000,2020,1\n"
+                + "black,,Diesel,3000,Ateca,5,25000,2022,99\n";
+        MockMultipartFile file = new MockMultipartFile("file", "cars.csv", "text/csv", csv.getBytes(StandardCharsets.UTF_8));
+
+        BrandEntity brandEntity = new BrandEntity();
+        brandEntity.setId(1);
+        when(carBatchWriter.getChunkSize()).thenReturn(2);
+        when(brandRepository.findAllById(Set.of(1, 99))).thenReturn(List.of(brandEntity));
+
+        // When
+        CarImportResult result = carService.uploadCarsWithRejectedRows(file, CarImportMode.INSERT);
+
+        // Then
+        // El CSV de filas rechazadas lleva la fila con su línea, el motivo y sus valores
+        try {
+            String rejectedRows = Files.readString(result.getRejectedRowsFile());
+            assertEquals(1, result.getReport().getRejectedCount());
+            assertTrue(rejectedRows.startsWith("row,line,reason,colour,"));
+            assertTrue(rejectedRows.contains("\r\n2,3,Brand not found for ID: 99,black,"));
+        } finally {
+            Files.deleteIfExists(result.getRejectedRowsFile());
+        }
+    }
+
+    @Test
+    void importCarsSplitsParallelChunksIntoBatches() throws Exception {
+        // Given
+        // Un solo bloque leído en paralelo con cinco filas y bloques de guardado de dos filas
+        String csv = "colour,description_car,fuel_type,milleage,model,num_doors,price,year_car,id_brand\n"
+                + "white,,Gasoline,1000,Ibiza,5,15000,2020,1\n"
+                + "red,,Gasoline,2000,Leon,5,20000,2021,1\n"
+                + "blue,,Gasoline,3000,Arona,5,18000,2022,1\n"
+                + "black,,Diesel,4000,Ateca,5,25000,2022,1\n"
+                + "grey,,Diesel,5000,Tarraco,5,30000,2023,1\n";
+
+        BrandEntity brandEntity = new BrandEntity();
+        brandEntity.setId(1);
+        when(carBatchWriter.getChunkSize()).thenReturn(2);
+        when(brandRepository.findAllById(Set.of(1))).thenReturn(List.of(brandEntity));
+        when(parallelCsvReader.isEnabled()).thenReturn(true);
+        doAnswer(invocation -> {
+            CSVFormat format = invocation.getArgument(1);
+            BiFunction<Iterable<CSVRecord>, ToLongFunction<CSVRecord>, Object> parse = invocation.getArgument(2);
+            Consumer<Object> consumer = invocation.getArgument(3);
+            consumer.accept(parse.apply(format.parse(new InputStreamReader(invocation.<InputStream>getArgument(0))),
+                    record -> record.getRecordNumber() + 1));
+            return null;
+        }).when(parallelCsvReader).read(any(), any(), any(), any());
+
+        List<Set<Long>> batches = new ArrayList<>();
+        doAnswer(invocation -> {
+            Map<Long, CarEntity> rows = invocation.getArgument(0);
+            batches.add(Set.copyOf(rows.keySet()));
+            return null;
+        }).when(carBatchWriter).write(anyMap(), any());
+        List<Long> progress = new ArrayList<>();
+
+        // When
+        carService.importCars(new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)), CarImportMode.INSERT,
+                new CarImportProgress() {
+                    @Override
+                    public void batchWritten(BulkImportReport report) {
+                        progress.add((long) batches.size());
+                    }
+                });
+
+        // Then
+        // El bloque leído se guarda en tres transacciones y se informa del progreso después de cada una
+        assertEquals(List.of(Set.of(1L, 2L), Set.of(3L, 4L), Set.of(5L)), batches);
+        assertEquals(List.of(1L, 2L, 3L), progress);
+    }
+
+    @Test
+    void rejectedRowsProduceResubmittableCsv() throws Exception {
+        // Given
+        // La fila 1 no tiene un formato válido, la 2 es de una marca que no existe y la 3 la rechaza la base de datos;
+        // la fila 3 está en la línea 5 del archivo por la línea vacía anterior
+        String csv = "colour,description_car,fuel_type,milleage,model,num_doors,price,year_car,id_brand,external_ref\n"
+                + "blue,\"Roof, black\",Gasoline,many,Arona,5,18000,2022,1,A-1\n"
+                + "black,,Diesel,3000,Ateca,5,25000,2022,99,\n"
+                + "\n"
+                + "grey,,Diesel,4000,Tarraco,5,30000,2023,1,A-3\n";
+
+        BrandEntity brandEntity = new BrandEntity();
+        brandEntity.setId(1);
+        when(carBatchWriter.getChunkSize()).thenReturn(10);
+        when(brandRepository.findAllById(any())).thenAnswer(invocation ->
+                Set.copyOf(invocation.getArgument(0)).contains(1) ? List.of(brandEntity) : List.of());
+        doAnswer(invocation -> {
+            BulkImportReport batchReport = invocation.getArgument(1);
+            batchReport.addRejected(new RowError(3, "Duplicate entry"));
+            return null;
+        }).when(carBatchWriter).write(anyMap(), any());
+        // El informe solo guarda una fila rechazada
+        carService.reportSampleSize = 1;
+        StringWriter writer = new StringWriter();
+        RejectedRowsCsv rejectedRows = new RejectedRowsCsv(writer);
+
+        // When
+        // Cada fila rechazada se escribe en el CSV según se rechaza
+        BulkImportReport report = carService.importCars(new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)),
+                CarImportMode.INSERT, rejectedRows);
+        rejectedRows.flush();
+
+        // Then
+        // El informe cuenta las tres filas pero solo guarda la primera
+        assertEquals(3, report.getRejectedCount());
+        assertEquals(1, report.getRejected().size());
+        assertTrue(report.isTruncated());
+        assertEquals(2, report.getRejected().get(0).getLine());
+        // Cada fila lleva su número, su línea en el archivo, el motivo y sus valores, por lo que el archivo
+        // se puede corregir y volver a subir
+        String[] lines = writer.toString().split("\r\n");
+        assertEquals(4, lines.length);
+        assertEquals("row,line,reason,colour,description_car,fuel_type,milleage,model,num_doors,price,year_car,id_brand,external_ref", lines[0]);
+        assertTrue(lines[1].startsWith("1,2,\"Invalid row: For input string: \"\"many\"\"\","));
+        assertTrue(lines[1].endsWith(",blue,\"Roof, black\",Gasoline,many,Arona,5,18000,2022,1,A-1"));
+        assertEquals("2,3,Brand not found for ID: 99,black,,Diesel,3000,Ateca,5,25000.0,2022,99,", lines[2]);
+        assertEquals("3,5,Duplicate entry,grey,,Diesel,4000,Tarraco,5,30000.0,2023,1,A-3", lines[3]);
+    }
+
+    @Test
+    void carsDownloadCsvWritesExportSchema() throws Exception {
+        // Given
+        CarView car = new CarView(7, "Leon", 1000, 20000.0, 2021, "Roof, black", "red", "Gasoline", 5,
+                1, "Seat", 3, "Spain");
+
+        // Mocking behavior
+        when(carRepository.streamViewsBy()).thenReturn(Stream.of(car));
+
+        // When
+        StringWriter writer = new StringWriter();
+        carService.carsDownloadCsv(writer);
+
+        // Then
+        // Una columna por campo del coche y de su marca, con los valores entre comillas cuando hace falta
+        assertEquals("id,colour,description_car,fuel_type,milleage,model,num_doors,price,year_car,id_brand,country,name_brand,warranty\r\n"
+                + "7,red,\"Roof, black\",Gasoline,1000,Leon,5,20000.0,2021,1,Spain,Seat,3\r\n", writer.toString());
+        verify(carRepository, never()).findAll();
     }
 
     @Test
@@ -136,16 +403,60 @@ class CarServiceImplTest {
     }
 
     @Test
-    void deleteById() throws Exception {
+    void findByIdReturnsCopiesOfTheCachedCar() throws Exception {
         // Given
         Integer id = 1;
         CarEntity carEntity = new CarEntity();
+        Cache cache = new ConcurrentMapCache(CacheConfig.CARS_CACHE);
         // Mocking behavior
+        when(cacheManager.getCache(CacheConfig.CARS_CACHE)).thenReturn(cache);
         when(carRepository.findById(id)).thenReturn(Optional.of(carEntity));
+        when(carConverter.toCar(carEntity)).thenReturn(new Car(id, new Brand(3, "Seat", 2, "Spain"), "Leon",
+                1000, 20000.0, 2021, null, "red", "Gasoline", 5));
+        // When
+        // Quien recibe el coche lo modifica
+        Car first = carService.findById(id);
+        first.setModel("Ibiza");
+        first.getBrand().setName_brand("Cupra");
+        Car second = carService.findById(id);
+        // Then
+        // La segunda llamada sale de la caché y no ve los cambios de la primera
+        assertEquals("Leon", second.getModel());
+        assertEquals("Seat", second.getBrand().getName_brand());
+        verify(carRepository, times(1)).findById(id);
+    }
+
+    @Test
+    void streamFieldsPagesByKeyUntilShortPage() {
+        // Given
+        // Una página completa de 500 coches y una última con uno solo
+        List<Map<String, Object>> fullPage = new ArrayList<>();
+        for (int id = 1; id <= 500; id++) {
+            fullPage.add(Map.of("id", id, "model", "M" + id));
+        }
+        List<Map<String, Object>> lastPage = List.of(Map.of("id", 501, "model", "M501"));
+        // Mocking behavior
+        when(carRepository.findFields(any(), eq(List.of("id", "model")), eq(500))).thenReturn(fullPage, lastPage);
+        List<Map<String, Object>> streamed = new ArrayList<>();
         // When
-        String result = carService.deleteById(id);
+        carService.streamFields("model", streamed::add);
+        // Then
+        assertEquals(501, streamed.size());
+        assertEquals(501, streamed.get(500).get("id"));
+        verify(carRepository, times(2)).findFields(any(), anyList(), eq(500));
+    }
+
+    @Test
+    void deleteById() throws Exception {
+        // Given
+        Integer id = 1;
+        // Mocking behavior
+        when(carRepository.deleteByIdAndVersion(id, null)).thenReturn(1);
+        // When
+        String result = carService.deleteById(id, null);
         // Then
         assertEquals("Car successfully eliminated", result);
+        verify(carRepository, never()).findById(id);
     }
 
     @Test
@@ -155,14 +466,92 @@ class CarServiceImplTest {
         Car car = new Car();
         CarEntity carEntity = new CarEntity();
         // Mocking behavior
-        when(carRepository.findById(id)).thenReturn(Optional.of(carEntity));
         when(carConverter.toCarEntity(car)).thenReturn(carEntity);
-        when(carRepository.save(carEntity)).thenReturn(carEntity);
+        when(carRepository.updateById(id, carEntity, 4L)).thenReturn(1);
         when(carConverter.toCar(carEntity)).thenReturn(car);
         // When
-        Car updatedCar = carService.updateById(id, car);
+        Car updatedCar = carService.updateById(id, car, 4L);
         // Then
         assertEquals(car, updatedCar);
+        assertEquals(id, carEntity.getId());
+        verify(carRepository, never()).findById(id);
+    }
+
+    @Test
+    void findETagByIdHandlesCarWithoutBrand() {
+        // Given
+        CarVersion withBrand = mock(CarVersion.class);
+        when(withBrand.getCarVersion()).thenReturn(2L);
+        when(withBrand.getBrandVersion()).thenReturn(1L);
+        // Un coche sin marca no tiene versión de marca
+        CarVersion withoutBrand = mock(CarVersion.class);
+        when(withoutBrand.getCarVersion()).thenReturn(3L);
+        when(withoutBrand.getBrandVersion()).thenReturn(null);
+        when(carRepository.findVersionById(1)).thenReturn(Optional.of(withBrand));
+        when(carRepository.findVersionById(2)).thenReturn(Optional.of(withoutBrand));
+        when(carRepository.findVersionById(3)).thenReturn(Optional.empty());
+
+        // When / Then
+        assertEquals("2.1", carService.findETagById(1));
+        assertEquals("3", carService.findETagById(2));
+        assertNull(carService.findETagById(3));
+    }
+
+    @Test
+    void updateByIdReturnsStoredBrand() throws Exception {
+        // Given
+        // La petición solo trae el ID de la marca
+        Integer id = 1;
+        Car car = new Car();
+        CarEntity carEntity = new CarEntity();
+        BrandEntity requestBrand = new BrandEntity();
+        requestBrand.setId(3);
+        carEntity.setBrand(requestBrand);
+        BrandEntity storedBrand = new BrandEntity();
+        storedBrand.setId(3);
+        storedBrand.setName_brand("Seat");
+        when(carConverter.toCarEntity(car)).thenReturn(carEntity);
+        when(carRepository.updateById(id, carEntity, null)).thenReturn(1);
+        when(brandRepository.findById(3)).thenReturn(Optional.of(storedBrand));
+        when(carConverter.toCar(carEntity)).thenReturn(car);
+
+        // When
+        carService.updateById(id, car, null);
+
+        // Then
+        // El coche devuelto se construye con la marca guardada
+        assertEquals(storedBrand, carEntity.getBrand());
+    }
+
+    @Test
+    void updateByIdWithStaleVersion() throws Exception {
+        // Given
+        // El coche existe pero su versión ya no es la 4
+        Integer id = 1;
+        Car car = new Car();
+        CarEntity carEntity = new CarEntity();
+        when(carConverter.toCarEntity(car)).thenReturn(carEntity);
+        when(carRepository.updateById(id, carEntity, 4L)).thenReturn(0);
+        when(carRepository.existsById(id)).thenReturn(true);
+
+        // When / Then
+        assertThrows(OptimisticLockingFailureException.class, () -> carService.updateById(id, car, 4L));
+    }
+
+    @Test
+    void updatePricesRequiresFilterAndSingleChange() {
+        // Given
+        CarSearchCriteria noFilter = new CarSearchCriteria();
+        CarSearchCriteria byBrand = CarSearchCriteria.builder().brandId(1).build();
+        CarPriceUpdateRequest both = CarPriceUpdateRequest.builder().price(1000.0).percent(5.0).build();
+        CarPriceUpdateRequest percent = CarPriceUpdateRequest.builder().percent(5.0).build();
+
+        // When / Then
+        // Sin filtro o con precio y porcentaje a la vez no se ejecuta ninguna sentencia
+        assertThrows(IllegalArgumentException.class, () -> carService.updatePrices(noFilter, percent));
+        assertThrows(IllegalArgumentException.class, () -> carService.updatePrices(byBrand, both));
+        assertThrows(IllegalArgumentException.class, () -> carService.deleteMatching(noFilter));
+        verifyNoInteractions(carRepository);
     }
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,127 @@
+package com.aruiz.CarRegistry.service.impl;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IdempotencyServiceTest {
+
+    private final IdempotencyService idempotencyService = new IdempotencyService(new ObjectMapper(), 60, 1_000_000);
+
+    private final AtomicInteger executions = new AtomicInteger();
+
+    @Test
+    void execute_runsEachKeyOnce() throws Exception {
+        // When
+        ResponseEntity<?> first = idempotencyService.execute("addCars", "key-1", List.of(1, 2), this::created);
+        ResponseEntity<?> retry = idempotencyService.execute("addCars", "key-1", List.of(1, 2), this::created);
+
+        // Then
+        // La repetición recibe el cuerpo guardado ya serializado
+        assertEquals(1, executions.get());
+        assertEquals(first.getBody(), new String((byte[]) retry.getBody(), StandardCharsets.UTF_8));
+        assertNull(first.getHeaders().getFirst(IdempotencyService.REPLAYED_HEADER));
+        assertEquals("true", retry.getHeaders().getFirst(IdempotencyService.REPLAYED_HEADER));
+    }
+
+    @Test
+    void execute_storesObjectBodiesAsJson() throws Exception {
+        // When
+        idempotencyService.execute("addCars", "key-1", List.of(1), () -> ResponseEntity.ok(Map.of("accepted_count", 1)));
+        ResponseEntity<?> retry = idempotencyService.execute("addCars", "key-1", List.of(1), this::created);
+
+        // Then
+        // Solo se guarda el estado y el JSON de la respuesta, que se devuelve tal cual
+        assertEquals(0, executions.get());
+        assertEquals(HttpStatus.OK, retry.getStatusCode());
+        assertEquals(MediaType.APPLICATION_JSON, retry.getHeaders().getContentType());
+        assertEquals("{\"accepted_count\":1}", new String((byte[]) retry.getBody(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void execute_withoutKeyAlwaysRuns() throws Exception {
+        // When
+        idempotencyService.execute("addCars", null, List.of(1), this::created);
+        idempotencyService.execute("addCars", null, List.of(1), this::created);
+
+        // Then
+        assertEquals(2, executions.get());
+    }
+
+    @Test
+    void execute_keysAreScopedByEndpoint() throws Exception {
+        // When
+        idempotencyService.execute("addCars", "key-1", List.of(1), this::created);
+        idempotencyService.execute("addBrands", "key-1", List.of(1), this::created);
+
+        // Then
+        assertEquals(2, executions.get());
+    }
+
+    @Test
+    void execute_keysAreScopedByUser() throws Exception {
+        try {
+            // When
+            // Dos usuarios envían la misma clave con el mismo cuerpo
+            SecurityContextHolder.getContext().setAuthentication(new TestingAuthenticationToken("vendor1@mail.com", null));
+            idempotencyService.execute("addCars", "key-1", List.of(1), this::created);
+            SecurityContextHolder.getContext().setAuthentication(new TestingAuthenticationToken("vendor2@mail.com", null));
+            ResponseEntity<?> other = idempotencyService.execute("addCars", "key-1", List.of(1), this::created);
+
+            // Then
+            // La petición del segundo usuario se ejecuta y no recibe la respuesta del primero
+            assertEquals(2, executions.get());
+            assertNull(other.getHeaders().getFirst(IdempotencyService.REPLAYED_HEADER));
+        } finally {
+            SecurityContextHolder.clearContext();
+        }
+    }
+
+    @Test
+    void execute_rejectsKeyReusedWithDifferentRequest() throws Exception {
+        // Given
+        idempotencyService.execute("addCars", "key-1", List.of(1), this::created);
+
+        // When
+        ResponseStatusException exception = assertThrows(ResponseStatusException.class,
+                () -> idempotencyService.execute("addCars", "key-1", List.of(2), this::created));
+
+        // Then
+        assertEquals(HttpStatus.UNPROCESSABLE_ENTITY, exception.getStatusCode());
+        assertEquals(1, executions.get());
+    }
+
+    @Test
+    void execute_doesNotStoreFailedResponses() throws Exception {
+        // Given
+        // La primera ejecución falla y el cliente la reintenta con la misma clave
+        idempotencyService.execute("addCars", "key-1", List.of(1), () -> {
+            executions.incrementAndGet();
+            return ResponseEntity.internalServerError().build();
+        });
+
+        // When
+        ResponseEntity<?> retry = idempotencyService.execute("addCars", "key-1", List.of(1), this::created);
+
+        // Then
+        assertEquals(HttpStatus.OK, retry.getStatusCode());
+        assertEquals(2, executions.get());
+    }
+
+    private ResponseEntity<?> created() {
+        return ResponseEntity.ok("saved " + executions.incrementAndGet());
+    }
+
+}
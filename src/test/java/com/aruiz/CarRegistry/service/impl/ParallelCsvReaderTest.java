@@ -0,0 +1,170 @@
+package com.aruiz.CarRegistry.service.impl;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVRecord;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.ToLongFunction;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ParallelCsvReaderTest {
+
+    private static final CSVFormat FORMAT = CSVFormat.DEFAULT.withFirstRecordAsHeader().withIgnoreHeaderCase().withTrim();
+
+    // Campos entre comillas con saltos de línea, comillas escapadas, líneas vacías y fin de línea \r\n
+    private static final String CSV = "model,description_car\r\n"
+            + "A1,\"line one\nline two\"\r\n"
+            + "\r\n"
+            + "B2,\"say \"\"hi\"\"\nand, bye\"\r\n"
+            + "C3,plain\r\n"
+            + "D4,\"x\n\ny\"\r\n"
+            + "E5,last";
+
+    private ParallelCsvReader reader;
+
+    @AfterEach
+    void tearDown() {
+        reader.stop();
+    }
+
+    @Test
+    void read_ordered_keepsQuotedLineBreaksAndFileRecordNumbers() throws IOException {
+        // Given
+        // Bloques de un byte: cada bloque tiene un solo registro
+        reader = reader(true, 1);
+        List<Map<Long, String>> chunks = new ArrayList<>();
+
+        // When
+        reader.read(input(CSV), FORMAT, (records, lines) -> descriptions(records), chunks::add);
+
+        // Then
+        assertEquals(5, chunks.size());
+        assertEquals(List.of(Map.of(1L, "line one\nline two"), Map.of(2L, "say \"hi\"\nand, bye"),
+                Map.of(3L, "plain"), Map.of(4L, "x\n\ny"), Map.of(5L, "last")), chunks);
+    }
+
+    @Test
+    void read_unordered_deliversEveryRecordOnce() throws IOException {
+        // Given
+        // Bloques de 20 bytes con varios registros cada uno
+        reader = reader(false, 20);
+        List<Map<Long, String>> chunks = new ArrayList<>();
+
+        // When
+        reader.read(input(CSV), FORMAT, (records, lines) -> descriptions(records), chunks::add);
+
+        // Then
+        Map<Long, String> records = chunks.stream().flatMap(chunk -> chunk.entrySet().stream())
+                .sorted(Map.Entry.comparingByKey())
+                .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
+        assertEquals(Map.of(1L, "line one\nline two", 2L, "say \"hi\"\nand, bye", 3L, "plain", 4L, "x\n\ny",
+                5L, "last"), records);
+        assertTrue(chunks.size() > 1);
+    }
+
+    @Test
+    void read_matchesSequentialParser() throws IOException {
+        // Given
+        StringBuilder csv = new StringBuilder("model,description_car\n");
+        for (int i = 1; i <= 1000; i++) {
+            csv.append("M").append(i).append(i % 3 == 0 ? ",\"multi\nline " + i + "\"\n" : ",single " + i + "\n");
+        }
+        reader = reader(true, 256);
+        List<Map<Long, String>> chunks = new ArrayList<>();
+
+        // When
+        reader.read(input(csv.toString()), FORMAT, (records, lines) -> descriptions(records), chunks::add);
+
+        // Then
+        List<Map.Entry<Long, String>> parallel = chunks.stream().flatMap(chunk -> chunk.entrySet().stream())
+                .sorted(Map.Entry.comparingByKey()).toList();
+        List<Map.Entry<Long, String>> sequential = descriptions(FORMAT.parse(new StringReader(csv.toString())))
+                .entrySet().stream().sorted(Map.Entry.comparingByKey()).toList();
+        assertEquals(sequential, parallel);
+        assertTrue(chunks.size() > 10);
+    }
+
+    @Test
+    void read_reportsFileLineWhereEachRecordStarts() throws IOException {
+        // Given
+        // La cabecera es la línea 1; los saltos de línea entre comillas y las líneas vacías también cuentan
+        reader = reader(true, 20);
+        Map<Long, Long> lines = new TreeMap<>();
+
+        // When
+        reader.read(input(CSV), FORMAT, this::lines, lines::putAll);
+
+        // Then
+        assertEquals(Map.of(1L, 2L, 2L, 5L, 3L, 7L, 4L, 8L, 5L, 11L), lines);
+    }
+
+    @Test
+    void read_reportsSameLinesAsSequentialReader() throws IOException {
+        // Given
+        StringBuilder csv = new StringBuilder("model,description_car\n");
+        for (int i = 1; i <= 1000; i++) {
+            csv.append(i % 7 == 0 ? "\n" : "")
+                    .append("M").append(i).append(i % 3 == 0 ? ",\"multi\r\nline " + i + "\"\r\n" : ",single " + i + "\n");
+        }
+        reader = reader(false, 256);
+        Map<Long, Long> parallel = new TreeMap<>();
+
+        // When
+        reader.read(input(csv.toString()), FORMAT, this::lines, parallel::putAll);
+
+        // Then
+        LineCountingReader sequentialReader = new LineCountingReader(new StringReader(csv.toString()), 1);
+        assertEquals(lines(FORMAT.parse(sequentialReader), sequentialReader::lineOf), parallel);
+        // Registro 7: 1 de cabecera + 6 registros + 2 saltos entre comillas + 1 línea vacía
+        assertEquals(11L, parallel.get(7L));
+    }
+
+    @Test
+    void read_failsOnUnterminatedQuote() {
+        // Given
+        reader = reader(true, 1);
+
+        // When / Then
+        assertThrows(IOException.class,
+                () -> reader.read(input("model,description_car\nA1,\"never closed\n"), FORMAT, (records, lines) -> descriptions(records), chunk -> { }));
+    }
+
+    private Map<Long, String> descriptions(Iterable<CSVRecord> records) {
+        Map<Long, String> descriptions = new TreeMap<>();
+        records.forEach(record -> descriptions.put(record.getRecordNumber(), record.get("description_car")));
+        return descriptions;
+    }
+
+    private Map<Long, Long> lines(Iterable<CSVRecord> records, ToLongFunction<CSVRecord> lines) {
+        Map<Long, Long> recordLines = new TreeMap<>();
+        records.forEach(record -> recordLines.put(record.getRecordNumber(), lines.applyAsLong(record)));
+        return recordLines;
+    }
+
+    private ParallelCsvReader reader(boolean ordered, int chunkBytes) {
+        ParallelCsvReader reader = new ParallelCsvReader();
+        reader.enabled = true;
+        reader.ordered = ordered;
+        reader.threads = 4;
+        reader.chunkBytes = chunkBytes;
+        reader.start();
+        return reader;
+    }
+
+    private InputStream input(String csv) {
+        return new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8));
+    }
+
+}